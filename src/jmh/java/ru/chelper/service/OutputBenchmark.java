@@ -0,0 +1,68 @@
+package ru.chelper.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нормализация и сравнение вывода теста: сравнение после завершения процесса
+ * ({@code normalizeOutput} + {@code equals}) против потокового {@link StreamingOutputComparator}
+ * блоками по 8 КБ, как их читает {@link ProcessOutputPump}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OutputBenchmark {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"1000", "1000000"})
+    public int outputBytes;
+
+    @Param({"LF", "CRLF"})
+    public String lineEnding;
+
+    /** match — вывод совпадает с ожидаемым, early-mismatch — отличается первый символ. */
+    @Param({"match", "early-mismatch"})
+    public String answer;
+
+    private String expected;
+    private String actual;
+    private byte[] actualBytes;
+
+    @Setup
+    public void setUp() {
+        String eol = "CRLF".equals(lineEnding) ? "\r\n" : "\n";
+        StringBuilder sb = new StringBuilder(outputBytes + 32);
+        for (int i = 0; sb.length() < outputBytes; i++) {
+            sb.append("Строка ").append(i).append(eol);
+        }
+        String raw = sb.toString();
+        expected = LocalProcessCodeRunner.normalizeOutput(raw);
+        actual = "match".equals(answer) ? raw : "X" + raw.substring(1);
+        actualBytes = actual.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String normalize() {
+        return LocalProcessCodeRunner.normalizeOutput(actual);
+    }
+
+    @Benchmark
+    public boolean compareAfterExit() {
+        return expected.equals(LocalProcessCodeRunner.normalizeOutput(actual));
+    }
+
+    @Benchmark
+    public boolean compareStreaming() {
+        StreamingOutputComparator comparator = new StreamingOutputComparator(expected);
+        for (int off = 0; off < actualBytes.length && !comparator.isAborted(); off += CHUNK_SIZE) {
+            comparator.accept(actualBytes, off, Math.min(CHUNK_SIZE, actualBytes.length - off));
+        }
+        return !comparator.isAborted();
+    }
+}
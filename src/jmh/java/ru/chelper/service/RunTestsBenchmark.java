@@ -0,0 +1,169 @@
+package ru.chelper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.ReflectionUtils;
+import ru.chelper.entity.Task;
+import ru.chelper.entity.TestCase;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полная проверка отправки ({@link LocalProcessCodeRunner#run}) против детерминированной замены oscript
+ * из {@code tools/fake-oscript} — для сравнения режимов fresh, pooled и batched, а также встроенного
+ * интерпретатора {@link BslInterpreter} (interpreted, без процессов). Кэш вердиктов
+ * {@link CodeExecutionService} здесь не участвует: иначе повторные прогоны одного кода ничего бы не запускали.
+ * <p>
+ * Входы тестов пустые, потому что в режиме pooled тесты со входом всё равно идут отдельными процессами.
+ * Поэтому тесты одинаковые, и по умолчанию их повторы выполняются ({@code deduplicate=false}); с
+ * {@code -p deduplicate=true} выполняется один тест, а результат раздаётся остальным.
+ * Путь к замене oscript — свойство {@code fake.oscript} (по умолчанию относительно корня проекта).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class RunTestsBenchmark {
+
+    private static final String CODE = "Сообщить(Консоль.ПрочитатьСтроку());";
+
+    @Param({"fresh", "pooled", "batched", "interpreted"})
+    public String mode;
+
+    /** Задержка запуска процесса oscript (холодный старт .NET). */
+    @Param({"0", "200"})
+    public int startupMillis;
+
+    /** Вывод каждого теста, байт. */
+    @Param({"0", "100000"})
+    public int outputBytes;
+
+    @Param({"10"})
+    public int tests;
+
+    @Param({"4"})
+    public int parallelTests;
+
+    @Param({"false"})
+    public boolean deduplicate;
+
+    private Path tempDir;
+    private WorkDirPool workDirPool;
+    private OscriptHostPool hostPool;
+    private LocalProcessCodeRunner runner;
+    private TestSuite suite;
+    private String code;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("1c-bench-");
+        Path command = writeFakeCommand();
+        Path workDir = Files.createDirectories(tempDir.resolve("run"));
+
+        JudgeMetrics metrics = new JudgeMetrics(new SimpleMeterRegistry());
+        boolean interpreted = mode.equals("interpreted");
+        String processMode = interpreted ? "fresh" : mode;
+        workDirPool = new WorkDirPool();
+        set(workDirPool, "workDirPath", workDir.toString());
+        set(workDirPool, "size", parallelTests);
+        workDirPool.init();
+
+        ProcessSlots processSlots = new ProcessSlots();
+        set(processSlots, "maxProcesses", parallelTests);
+        processSlots.init();
+
+        hostPool = new OscriptHostPool(metrics, workDirPool, processSlots);
+        set(hostPool, "oscriptCommand", command.toString());
+        set(hostPool, "workDirPath", workDir.toString());
+        set(hostPool, "mode", processMode);
+        set(hostPool, "size", parallelTests);
+        set(hostPool, "maxRunsPerHost", 50);
+        set(hostPool, "maxOutputBytes", 1024 * 1024);
+        hostPool.init();
+        hostPool.warmUp();
+
+        BslInterpreter interpreter = new BslInterpreter();
+        set(interpreter, "enabled", interpreted);
+        set(interpreter, "maxSteps", 10_000_000L);
+        set(interpreter, "maxMemoryBytes", 64L * 1024 * 1024);
+        set(interpreter, "maxCallDepth", 500);
+
+        // Тесты бенчмарка не ссылаются на файлы хранилища — репозиторий для проверки при старте не нужен
+        runner = new LocalProcessCodeRunner(hostPool, workDirPool, metrics, interpreter, new TestDataStore(null),
+                processSlots);
+        set(runner, "timeoutSeconds", 30);
+        set(runner, "oscriptCommand", command.toString());
+        set(runner, "mode", processMode);
+        set(runner, "parallelTests", parallelTests);
+        set(runner, "maxOutputBytes", 1024 * 1024);
+        set(runner, "streamingCompare", true);
+        set(runner, "deduplicateTests", deduplicate);
+        set(runner, "resourceSampleMillis", 20L);
+        runner.init();
+
+        String expected = "x".repeat(outputBytes);
+        // Замена oscript добавляет вывод сама, интерпретатору его нужно выписать в коде
+        code = interpreted ? CODE + "\nСообщить(\"" + expected + "\");" : CODE;
+        List<TestCase> cases = new ArrayList<>(tests);
+        for (int i = 0; i < tests; i++) {
+            TestCase tc = new TestCase();
+            tc.setInput("");
+            tc.setExpectedOutput(expected);
+            tc.setIsolated(false);
+            cases.add(tc);
+        }
+        // Набор тестов готовится один раз, как в TestSuiteCache
+        suite = TestSuite.compile(1L, 0, cases);
+        CodeExecutionService.RunResult check = run();
+        if (!check.isAllPassed()) {
+            throw new IllegalStateException("Замена oscript дала неверный результат: " + check.getMessage());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        runner.shutdown();
+        hostPool.shutdown();
+        workDirPool.shutdown();
+        WorkDirPool.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public CodeExecutionService.RunResult run() {
+        return runner.run(suite, code, Task.EvaluationMode.FULL);
+    }
+
+    /** Обёртка, передающая параметры бенчмарка замене oscript через окружение. */
+    private Path writeFakeCommand() throws IOException {
+        Path fake = Paths.get(System.getProperty("fake.oscript", "tools/fake-oscript/oscript")).toAbsolutePath();
+        if (!Files.isExecutable(fake)) {
+            throw new IllegalStateException("Не найдена замена oscript: " + fake + " (задайте -Dfake.oscript=...)");
+        }
+        Path wrapper = tempDir.resolve("oscript");
+        Files.writeString(wrapper, "#!/bin/sh\n"
+                + "FAKE_OSCRIPT_STARTUP_MS=" + startupMillis + " FAKE_OSCRIPT_OUTPUT_BYTES=" + outputBytes
+                + " exec '" + fake + "' \"$@\"\n", StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(wrapper, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return wrapper;
+    }
+
+    private static void set(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        if (field == null) {
+            throw new IllegalStateException("Нет поля " + name + " в " + target.getClass().getSimpleName());
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
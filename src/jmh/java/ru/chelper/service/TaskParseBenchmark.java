@@ -0,0 +1,48 @@
+package ru.chelper.service;
+
+import org.openjdk.jmh.annotations.*;
+import ru.chelper.dto.TestCaseDto;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Разбор файла тестов ({@code POST /api/admin/tasks/tests/upload}) в формате «Ввод: … Вывод: …». */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TaskParseBenchmark {
+
+    @Param({"100", "10000"})
+    public int tests;
+
+    /** Размер входа и вывода каждого теста, в строках. */
+    @Param({"1", "100"})
+    public int linesPerTest;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < tests; t++) {
+            sb.append("Ввод:\n");
+            for (int i = 0; i < linesPerTest; i++) {
+                sb.append(t).append(' ').append(i).append('\n');
+            }
+            sb.append("Вывод:\n");
+            for (int i = 0; i < linesPerTest; i++) {
+                sb.append(t + i).append('\n');
+            }
+            sb.append('\n');
+        }
+        text = sb.toString();
+    }
+
+    @Benchmark
+    public List<TestCaseDto> parse() {
+        return TaskService.parse(text);
+    }
+}
@@ -62,7 +62,8 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.GET, "/api/topics", "/api/topics/search", "/api/topics/*").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/topics/*/tasks").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/tasks/*").permitAll()
-                        .requestMatchers("/api/admin/**").hasRole("ADMIN")
+                        .requestMatchers("/api/judge/**", "/api/health/**").permitAll()
+                        .requestMatchers("/api/admin/**", "/actuator/**").hasRole("ADMIN")
                         .requestMatchers("/api/profile/**", "/api/attempts/**").authenticated()
                         .requestMatchers(HttpMethod.POST, "/api/tasks/*/submit").authenticated()
                         .anyRequest().authenticated()
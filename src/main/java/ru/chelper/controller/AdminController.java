@@ -2,14 +2,20 @@ package ru.chelper.controller;
 
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import ru.chelper.dto.TestCaseDto;
 import ru.chelper.dto.TestPreviewResponse;
 import ru.chelper.dto.TopicDto;
 import ru.chelper.dto.TaskDto;
+import ru.chelper.security.UserPrincipal;
+import ru.chelper.service.IdempotencyStore;
 import ru.chelper.service.TaskService;
 import ru.chelper.service.TopicService;
+import ru.chelper.service.RemoteCodeRunner;
+import ru.chelper.service.TaskCostEstimator;
+import ru.chelper.service.VerdictCache;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -21,10 +27,20 @@ public class AdminController {
 
     private final TopicService topicService;
     private final TaskService taskService;
-
-    public AdminController(TopicService topicService, TaskService taskService) {
+    private final VerdictCache verdictCache;
+    private final RemoteCodeRunner remoteCodeRunner;
+    private final TaskCostEstimator taskCostEstimator;
+    private final IdempotencyStore idempotencyStore;
+
+    public AdminController(TopicService topicService, TaskService taskService, VerdictCache verdictCache,
+                           RemoteCodeRunner remoteCodeRunner, TaskCostEstimator taskCostEstimator,
+                           IdempotencyStore idempotencyStore) {
         this.topicService = topicService;
         this.taskService = taskService;
+        this.verdictCache = verdictCache;
+        this.remoteCodeRunner = remoteCodeRunner;
+        this.taskCostEstimator = taskCostEstimator;
+        this.idempotencyStore = idempotencyStore;
     }
 
     // Topics
@@ -94,23 +110,38 @@ public class AdminController {
             return ResponseEntity.badRequest().body(Map.of("error", "expectedOutput обязателен"));
         }
         try {
-            taskService.addTestCase(taskId, input != null ? input : "", expectedOutput);
+            boolean isolated = Boolean.parseBoolean(body.get("isolated"));
+            taskService.addTestCase(taskId, input != null ? input : "", expectedOutput, isolated);
             return ResponseEntity.ok(Map.of("message", "Тест добавлен"));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
+    /** С заголовком {@code Idempotency-Key} повтор запроса не заменяет тесты ещё раз. */
     @PostMapping("/tasks/{taskId}/tests/bulk")
     public ResponseEntity<?> addTestsBulk(
+            @AuthenticationPrincipal UserPrincipal principal,
             @PathVariable Long taskId,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
             @RequestBody List<TestCaseDto> tests
     ) {
+        return idempotencyStore.execute(principal.getId(), idempotencyKey, "POST /api/admin/tasks/" + taskId + "/tests/bulk", tests, () -> {
+            try {
+                taskService.addTestCasesBulk(taskId, tests);
+                return ResponseEntity.ok(Map.of("message", "Тесты добавлены"));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", e.getMessage()));
+            }
+        });
+    }
+
+    @GetMapping("/tasks/{taskId}/resource-stats")
+    public ResponseEntity<?> resourceStats(@PathVariable Long taskId) {
         try {
-            taskService.addTestCasesBulk(taskId, tests);
-            return ResponseEntity.ok(Map.of("message", "Тесты добавлены"));
+            return ResponseEntity.ok(taskService.getResourceStats(taskId));
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("error", e.getMessage()));
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
@@ -140,4 +171,20 @@ public class AdminController {
                     .body(Map.of("error", e.getMessage()));
         }
     }
+
+    // Judge
+    @GetMapping("/judge/verdict-cache")
+    public Map<String, Object> verdictCacheStats() {
+        return verdictCache.getStats();
+    }
+
+    @GetMapping("/judge/workers")
+    public List<Map<String, Object>> judgeWorkers() {
+        return remoteCodeRunner.getWorkers();
+    }
+
+    @GetMapping("/judge/estimates")
+    public List<Map<String, Object>> judgeEstimates() {
+        return taskCostEstimator.getEstimates();
+    }
 }
@@ -0,0 +1,30 @@
+package ru.chelper.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.chelper.service.JudgeQueueService;
+
+import java.util.Map;
+
+/** Проверки готовности для балансировщика. */
+@RestController
+@RequestMapping("/api/health")
+public class HealthController {
+
+    private final JudgeQueueService judgeQueueService;
+
+    public HealthController(JudgeQueueService judgeQueueService) {
+        this.judgeQueueService = judgeQueueService;
+    }
+
+    /** 200 — узел принимает отправки, 503 — перегружен и отправки на него направлять не стоит. */
+    @GetMapping("/judge")
+    public ResponseEntity<Map<String, Object>> judge() {
+        Map<String, Object> state = judgeQueueService.getAdmissionState();
+        HttpStatus status = Boolean.TRUE.equals(state.get("accepting")) ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(state);
+    }
+}
@@ -0,0 +1,45 @@
+package ru.chelper.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.chelper.dto.JudgeRunRequest;
+import ru.chelper.service.JudgeWorkerService;
+
+import java.util.Map;
+
+/** API узла проверки для {@code code-runner.runner: remote}. Доступ — по общему токену в заголовке X-Judge-Token. */
+@RestController
+@RequestMapping("/api/judge")
+public class JudgeWorkerController {
+
+    private final JudgeWorkerService judgeWorkerService;
+
+    public JudgeWorkerController(JudgeWorkerService judgeWorkerService) {
+        this.judgeWorkerService = judgeWorkerService;
+    }
+
+    @GetMapping("/health")
+    public ResponseEntity<?> health() {
+        if (!judgeWorkerService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("status", "UP"));
+    }
+
+    @PostMapping("/run")
+    public ResponseEntity<?> run(@RequestHeader(value = "X-Judge-Token", required = false) String token,
+                                 @RequestBody JudgeRunRequest request) {
+        if (!judgeWorkerService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!judgeWorkerService.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Неверный токен узла проверки"));
+        }
+        try {
+            return ResponseEntity.ok(judgeWorkerService.run(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package ru.chelper.controller;
 
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
@@ -9,6 +11,8 @@ import ru.chelper.dto.SubmitResultDto;
 import ru.chelper.dto.TaskDto;
 import ru.chelper.security.UserPrincipal;
 import ru.chelper.service.AttemptService;
+import ru.chelper.service.IdempotencyStore;
+import ru.chelper.service.SubmissionRejectedException;
 import ru.chelper.service.TaskService;
 
 import java.util.List;
@@ -20,10 +24,12 @@ public class TaskController {
 
     private final TaskService taskService;
     private final AttemptService attemptService;
+    private final IdempotencyStore idempotencyStore;
 
-    public TaskController(TaskService taskService, AttemptService attemptService) {
+    public TaskController(TaskService taskService, AttemptService attemptService, IdempotencyStore idempotencyStore) {
         this.taskService = taskService;
         this.attemptService = attemptService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @GetMapping("/topics/{topicId}/tasks")
@@ -40,9 +46,11 @@ public class TaskController {
         }
     }
 
+    /** С заголовком {@code Idempotency-Key} повтор запроса возвращает ответ исходного, не создавая попытку. */
     @PostMapping("/tasks/{taskId}/submit")
     public ResponseEntity<?> submit(@AuthenticationPrincipal UserPrincipal principal,
                                     @PathVariable Long taskId,
+                                    @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
                                     @Valid @RequestBody SubmitRequest request) {
         if (principal == null) {
             return ResponseEntity.status(401).body(Map.of("error", "Требуется авторизация"));
@@ -50,11 +58,23 @@ public class TaskController {
         if (!request.getTaskId().equals(taskId)) {
             return ResponseEntity.badRequest().body(Map.of("error", "Неверный taskId"));
         }
+        return idempotencyStore.execute(principal.getId(), idempotencyKey, "POST /api/tasks/" + taskId + "/submit",
+                request, () -> doSubmit(principal.getId(), taskId, request.getCode()));
+    }
+
+    private ResponseEntity<?> doSubmit(Long userId, Long taskId, String code) {
         try {
-            SubmitResultDto result = attemptService.submit(principal.getId(), taskId, request.getCode());
-            return ResponseEntity.ok(result);
+            SubmitResultDto result = attemptService.submit(userId, taskId, code);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (SubmissionRejectedException e) {
+            HttpStatus status = e.getReason() == SubmissionRejectedException.Reason.USER_LIMIT
+                    ? HttpStatus.TOO_MANY_REQUESTS
+                    : HttpStatus.SERVICE_UNAVAILABLE;
+            return ResponseEntity.status(status)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage(), "retryAfterSeconds", e.getRetryAfterSeconds()));
         }
     }
 
@@ -88,6 +108,19 @@ public class TaskController {
         }
     }
 
+    @GetMapping("/attempts/{id}/status")
+    public ResponseEntity<?> getAttemptStatus(@AuthenticationPrincipal UserPrincipal principal,
+                                              @PathVariable Long id) {
+        if (principal == null) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            return ResponseEntity.ok(attemptService.getStatus(id, principal.getId()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @GetMapping("/tasks/{taskId}/tests")
     public ResponseEntity<?> getTests(
             @PathVariable Long taskId
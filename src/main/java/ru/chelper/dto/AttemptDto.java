@@ -1,6 +1,7 @@
 package ru.chelper.dto;
 
 import java.time.Instant;
+import java.util.List;
 
 public class AttemptDto {
 
@@ -14,7 +15,9 @@ public class AttemptDto {
     private Integer passedTests;
     private Integer totalTests;
     private String message;
+    private String status;
     private Instant createdAt;
+    private List<AttemptTestResultDto> testResults;
 
     public Long getId() {
         return id;
@@ -96,6 +99,14 @@ public class AttemptDto {
         this.message = message;
     }
 
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -103,4 +114,12 @@ public class AttemptDto {
     public void setCreatedAt(Instant createdAt) {
         this.createdAt = createdAt;
     }
+
+    public List<AttemptTestResultDto> getTestResults() {
+        return testResults;
+    }
+
+    public void setTestResults(List<AttemptTestResultDto> testResults) {
+        this.testResults = testResults;
+    }
 }
@@ -0,0 +1,59 @@
+package ru.chelper.dto;
+
+public class AttemptTestResultDto {
+
+    private Integer testIndex;
+    private Boolean passed;
+    private Boolean skipped;
+    private Long wallMillis;
+    private Long cpuMillis;
+    private Long peakRssKb;
+
+    public Integer getTestIndex() {
+        return testIndex;
+    }
+
+    public void setTestIndex(Integer testIndex) {
+        this.testIndex = testIndex;
+    }
+
+    public Boolean getPassed() {
+        return passed;
+    }
+
+    public void setPassed(Boolean passed) {
+        this.passed = passed;
+    }
+
+    public Boolean getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(Boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    public Long getWallMillis() {
+        return wallMillis;
+    }
+
+    public void setWallMillis(Long wallMillis) {
+        this.wallMillis = wallMillis;
+    }
+
+    public Long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public void setCpuMillis(Long cpuMillis) {
+        this.cpuMillis = cpuMillis;
+    }
+
+    public Long getPeakRssKb() {
+        return peakRssKb;
+    }
+
+    public void setPeakRssKb(Long peakRssKb) {
+        this.peakRssKb = peakRssKb;
+    }
+}
@@ -0,0 +1,35 @@
+package ru.chelper.dto;
+
+import java.util.List;
+
+/** Задание для узла проверки: код и тесты отправки. */
+public class JudgeRunRequest {
+
+    private String code;
+    private String evaluationMode;
+    private List<TestCaseDto> tests;
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getEvaluationMode() {
+        return evaluationMode;
+    }
+
+    public void setEvaluationMode(String evaluationMode) {
+        this.evaluationMode = evaluationMode;
+    }
+
+    public List<TestCaseDto> getTests() {
+        return tests;
+    }
+
+    public void setTests(List<TestCaseDto> tests) {
+        this.tests = tests;
+    }
+}
@@ -0,0 +1,146 @@
+package ru.chelper.dto;
+
+import java.util.List;
+
+/** Результат проверки, возвращаемый узлом проверки. */
+public class JudgeRunResultDto {
+
+    private boolean allPassed;
+    private int passedCount;
+    private int totalCount;
+    private String message;
+    private List<TestResult> testResults;
+    private boolean timedOut;
+    private boolean interpreted;
+
+    public boolean isAllPassed() {
+        return allPassed;
+    }
+
+    public void setAllPassed(boolean allPassed) {
+        this.allPassed = allPassed;
+    }
+
+    public int getPassedCount() {
+        return passedCount;
+    }
+
+    public void setPassedCount(int passedCount) {
+        this.passedCount = passedCount;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(int totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public List<TestResult> getTestResults() {
+        return testResults;
+    }
+
+    public void setTestResults(List<TestResult> testResults) {
+        this.testResults = testResults;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public void setTimedOut(boolean timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    public boolean isInterpreted() {
+        return interpreted;
+    }
+
+    public void setInterpreted(boolean interpreted) {
+        this.interpreted = interpreted;
+    }
+
+    public static class TestResult {
+        private boolean passed;
+        private boolean skipped;
+        private boolean error;
+        private String message;
+        private Integer mismatchOffset;
+        private Long wallMillis;
+        private Long cpuMillis;
+        private Long peakRssKb;
+
+        public boolean isPassed() {
+            return passed;
+        }
+
+        public void setPassed(boolean passed) {
+            this.passed = passed;
+        }
+
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        public void setSkipped(boolean skipped) {
+            this.skipped = skipped;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+
+        public void setError(boolean error) {
+            this.error = error;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+
+        public Integer getMismatchOffset() {
+            return mismatchOffset;
+        }
+
+        public void setMismatchOffset(Integer mismatchOffset) {
+            this.mismatchOffset = mismatchOffset;
+        }
+
+        public Long getWallMillis() {
+            return wallMillis;
+        }
+
+        public void setWallMillis(Long wallMillis) {
+            this.wallMillis = wallMillis;
+        }
+
+        public Long getCpuMillis() {
+            return cpuMillis;
+        }
+
+        public void setCpuMillis(Long cpuMillis) {
+            this.cpuMillis = cpuMillis;
+        }
+
+        public Long getPeakRssKb() {
+            return peakRssKb;
+        }
+
+        public void setPeakRssKb(Long peakRssKb) {
+            this.peakRssKb = peakRssKb;
+        }
+    }
+}
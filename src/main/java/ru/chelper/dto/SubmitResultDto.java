@@ -5,11 +5,13 @@ import java.time.Instant;
 public class SubmitResultDto {
 
     private Long attemptId;
+    private String status;
     private Boolean passed;
     private Integer passedTests;
     private Integer totalTests;
     private String message;
     private Instant createdAt;
+    private Integer queuePosition;
 
     public Long getAttemptId() {
         return attemptId;
@@ -51,6 +53,14 @@ public class SubmitResultDto {
         this.message = message;
     }
 
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -58,4 +68,12 @@ public class SubmitResultDto {
     public void setCreatedAt(Instant createdAt) {
         this.createdAt = createdAt;
     }
+
+    public Integer getQueuePosition() {
+        return queuePosition;
+    }
+
+    public void setQueuePosition(Integer queuePosition) {
+        this.queuePosition = queuePosition;
+    }
 }
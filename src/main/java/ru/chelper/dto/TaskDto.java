@@ -7,6 +7,7 @@ public class TaskDto {
     private String condition;
     private Long topicId;
     private Integer sortOrder;
+    private String evaluationMode;
 
     public Long getId() {
         return id;
@@ -47,4 +48,12 @@ public class TaskDto {
     public void setSortOrder(Integer sortOrder) {
         this.sortOrder = sortOrder;
     }
+
+    public String getEvaluationMode() {
+        return evaluationMode;
+    }
+
+    public void setEvaluationMode(String evaluationMode) {
+        this.evaluationMode = evaluationMode;
+    }
 }
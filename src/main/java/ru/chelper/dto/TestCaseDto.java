@@ -3,6 +3,7 @@ package ru.chelper.dto;
 public class TestCaseDto {
     private String input;
     private String expectedOutput;
+    private Boolean isolated;
 
     public String getInput() {
         return input;
@@ -19,4 +20,12 @@ public class TestCaseDto {
     public void setExpectedOutput(String expectedOutput) {
         this.expectedOutput = expectedOutput;
     }
+
+    public Boolean getIsolated() {
+        return isolated;
+    }
+
+    public void setIsolated(Boolean isolated) {
+        this.isolated = isolated;
+    }
 }
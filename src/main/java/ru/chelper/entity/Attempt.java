@@ -4,6 +4,8 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
 @Table(name = "attempts")
@@ -38,9 +40,22 @@ public class Attempt {
     @Column(columnDefinition = "TEXT")
     private String message;
 
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Status status = Status.QUEUED;
+
     @Column(nullable = false, updatable = false)
     private Instant createdAt = Instant.now();
 
+    /** Когда узел взял попытку на проверку; с {@code finishedAt} даёт время самой проверки, без ожидания в очереди. */
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    @OneToMany(mappedBy = "attempt", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("testIndex ASC")
+    private List<AttemptTestResult> testResults = new ArrayList<>();
+
     public Long getId() {
         return id;
     }
@@ -105,6 +120,14 @@ public class Attempt {
         this.message = message;
     }
 
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -112,4 +135,33 @@ public class Attempt {
     public void setCreatedAt(Instant createdAt) {
         this.createdAt = createdAt;
     }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public List<AttemptTestResult> getTestResults() {
+        return testResults;
+    }
+
+    public void setTestResults(List<AttemptTestResult> testResults) {
+        this.testResults = testResults;
+    }
+
+    /** Жизненный цикл проверки: в очереди → выполняется → завершена. */
+    public enum Status {
+        QUEUED, RUNNING, DONE
+    }
 }
@@ -0,0 +1,113 @@
+package ru.chelper.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Результат одного теста попытки вместе с ресурсами, которые затратил его процесс.
+ * Ресурсы неизвестны ({@code null}) для пропущенных тестов, тестов пакетного прогона
+ * и — кроме времени — тестов на тёплых хостах.
+ */
+@Entity
+@Table(name = "attempt_test_results", indexes = @Index(columnList = "attempt_id"))
+public class AttemptTestResult {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "attempt_id", nullable = false)
+    private Attempt attempt;
+
+    /** Номер теста в наборе задачи, начиная с 0. */
+    @Column(nullable = false)
+    private Integer testIndex;
+
+    @Column(nullable = false)
+    private Boolean passed;
+
+    @Column(nullable = false)
+    private Boolean skipped;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    private Long wallMillis;
+
+    /** Процессорное время user + sys. */
+    private Long cpuMillis;
+
+    private Long peakRssKb;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Attempt getAttempt() {
+        return attempt;
+    }
+
+    public void setAttempt(Attempt attempt) {
+        this.attempt = attempt;
+    }
+
+    public Integer getTestIndex() {
+        return testIndex;
+    }
+
+    public void setTestIndex(Integer testIndex) {
+        this.testIndex = testIndex;
+    }
+
+    public Boolean getPassed() {
+        return passed;
+    }
+
+    public void setPassed(Boolean passed) {
+        this.passed = passed;
+    }
+
+    public Boolean getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(Boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Long getWallMillis() {
+        return wallMillis;
+    }
+
+    public void setWallMillis(Long wallMillis) {
+        this.wallMillis = wallMillis;
+    }
+
+    public Long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public void setCpuMillis(Long cpuMillis) {
+        this.cpuMillis = cpuMillis;
+    }
+
+    public Long getPeakRssKb() {
+        return peakRssKb;
+    }
+
+    public void setPeakRssKb(Long peakRssKb) {
+        this.peakRssKb = peakRssKb;
+    }
+}
@@ -0,0 +1,116 @@
+package ru.chelper.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Задание очереди проверки, общей для всех экземпляров приложения. Создаётся в одной транзакции
+ * с попыткой и удаляется вместе с записью результата. Пока {@code leasedUntil} в будущем,
+ * задание принадлежит узлу {@code leasedBy}; просроченная аренда означает, что узел упал,
+ * и задание может забрать любой другой.
+ */
+@Entity
+@Table(name = "submission_jobs")
+public class SubmissionJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private Long attemptId;
+
+    /** Автор попытки — по нему задания распределяются поровну между пользователями. */
+    private Long userId;
+
+    /** Задача попытки: задания одного пользователя по одной задаче выдаются строго по одному, в порядке отправки. */
+    private Long taskId;
+
+    /** Ожидаемое время проверки на момент постановки в очередь; дешёвые задания выдаются раньше. */
+    private Long expectedCostMillis;
+
+    private Instant leasedUntil;
+
+    @Column(length = 128)
+    private String leasedBy;
+
+    /** Сколько раз задание забирали; растёт, если узлы падают на нём. */
+    @Column(nullable = false)
+    private Integer claims = 0;
+
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt = Instant.now();
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getAttemptId() {
+        return attemptId;
+    }
+
+    public void setAttemptId(Long attemptId) {
+        this.attemptId = attemptId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(Long taskId) {
+        this.taskId = taskId;
+    }
+
+    public Long getExpectedCostMillis() {
+        return expectedCostMillis;
+    }
+
+    public void setExpectedCostMillis(Long expectedCostMillis) {
+        this.expectedCostMillis = expectedCostMillis;
+    }
+
+    public Instant getLeasedUntil() {
+        return leasedUntil;
+    }
+
+    public void setLeasedUntil(Instant leasedUntil) {
+        this.leasedUntil = leasedUntil;
+    }
+
+    public String getLeasedBy() {
+        return leasedBy;
+    }
+
+    public void setLeasedBy(String leasedBy) {
+        this.leasedBy = leasedBy;
+    }
+
+    public Integer getClaims() {
+        return claims;
+    }
+
+    public void setClaims(Integer claims) {
+        this.claims = claims;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
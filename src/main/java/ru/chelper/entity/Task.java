@@ -30,6 +30,17 @@ public class Task {
     @Column(nullable = false)
     private Integer sortOrder = 0;
 
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private EvaluationMode evaluationMode = EvaluationMode.FULL;
+
+    /**
+     * Версия набора тестов: увеличивается при каждом изменении тестов, по ней узлы проверки узнают,
+     * что подготовленный набор устарел. У задач, созданных до её появления, — {@code null} (то же, что 0).
+     */
+    @Column
+    private Long testsVersion;
+
     @OneToMany(mappedBy = "task", cascade = CascadeType.ALL, orphanRemoval = true)
     @OrderBy("id ASC")
     private List<TestCase> testCases = new ArrayList<>();
@@ -77,6 +88,24 @@ public class Task {
         this.sortOrder = sortOrder;
     }
 
+    /** Режим оценки; у задач, созданных до его появления, — {@code null}, что означает FULL. */
+    public EvaluationMode getEvaluationMode() {
+        return evaluationMode;
+    }
+
+    public void setEvaluationMode(EvaluationMode evaluationMode) {
+        this.evaluationMode = evaluationMode;
+    }
+
+    public long getTestsVersion() {
+        return testsVersion != null ? testsVersion : 0;
+    }
+
+    /** Отмечает изменение тестов задачи. */
+    public void bumpTestsVersion() {
+        testsVersion = getTestsVersion() + 1;
+    }
+
     public List<TestCase> getTestCases() {
         return testCases;
     }
@@ -92,4 +121,12 @@ public class Task {
     public void setAttempts(List<Attempt> attempts) {
         this.attempts = attempts;
     }
+
+    /**
+     * FULL — выполняются все тесты и считается число пройденных;
+     * FAIL_FAST — проверка останавливается на первом непройденном тесте, остальные помечаются пропущенными.
+     */
+    public enum EvaluationMode {
+        FULL, FAIL_FAST
+    }
 }
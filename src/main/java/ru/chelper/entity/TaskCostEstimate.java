@@ -0,0 +1,58 @@
+package ru.chelper.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Оценка стоимости проверки задачи: экспоненциально сглаженное время одного теста
+ * по недавним проверкам. По ней очередь выдаёт сначала дешёвые задания.
+ */
+@Entity
+@Table(name = "task_cost_estimates")
+public class TaskCostEstimate {
+
+    @Id
+    private Long taskId;
+
+    @Column(nullable = false)
+    private Double perTestMillis;
+
+    @Column(nullable = false)
+    private Long samples;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(Long taskId) {
+        this.taskId = taskId;
+    }
+
+    public Double getPerTestMillis() {
+        return perTestMillis;
+    }
+
+    public void setPerTestMillis(Double perTestMillis) {
+        this.perTestMillis = perTestMillis;
+    }
+
+    public Long getSamples() {
+        return samples;
+    }
+
+    public void setSamples(Long samples) {
+        this.samples = samples;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
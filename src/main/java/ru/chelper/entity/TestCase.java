@@ -18,6 +18,24 @@ public class TestCase {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String expectedOutput;
 
+    /** Тест требует отдельного процесса и не попадает в пакетный прогон. */
+    @Column
+    private Boolean isolated = false;
+
+    /** Большой вход хранится файлом {@code TestDataStore}: путь в хранилище и SHA-256; {@code input} тогда пуст. */
+    @Column
+    private String inputPath;
+
+    @Column(length = 64)
+    private String inputChecksum;
+
+    /** То же для ожидаемого вывода; {@code expectedOutput} тогда — пустая строка. */
+    @Column
+    private String expectedOutputPath;
+
+    @Column(length = 64)
+    private String expectedOutputChecksum;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "task_id", nullable = false)
     private Task task;
@@ -46,6 +64,46 @@ public class TestCase {
         this.expectedOutput = expectedOutput;
     }
 
+    public Boolean getIsolated() {
+        return isolated;
+    }
+
+    public void setIsolated(Boolean isolated) {
+        this.isolated = isolated;
+    }
+
+    public String getInputPath() {
+        return inputPath;
+    }
+
+    public void setInputPath(String inputPath) {
+        this.inputPath = inputPath;
+    }
+
+    public String getInputChecksum() {
+        return inputChecksum;
+    }
+
+    public void setInputChecksum(String inputChecksum) {
+        this.inputChecksum = inputChecksum;
+    }
+
+    public String getExpectedOutputPath() {
+        return expectedOutputPath;
+    }
+
+    public void setExpectedOutputPath(String expectedOutputPath) {
+        this.expectedOutputPath = expectedOutputPath;
+    }
+
+    public String getExpectedOutputChecksum() {
+        return expectedOutputChecksum;
+    }
+
+    public void setExpectedOutputChecksum(String expectedOutputChecksum) {
+        this.expectedOutputChecksum = expectedOutputChecksum;
+    }
+
     public Task getTask() {
         return task;
     }
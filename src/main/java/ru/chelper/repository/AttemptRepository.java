@@ -1,9 +1,13 @@
 package ru.chelper.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.chelper.entity.Attempt;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface AttemptRepository extends JpaRepository<Attempt, Long> {
 
@@ -12,4 +16,26 @@ public interface AttemptRepository extends JpaRepository<Attempt, Long> {
     List<Attempt> findByTaskIdAndUserIdOrderByCreatedAtDesc(Long taskId, Long userId);
 
     boolean existsByTaskIdAndUserIdAndPassedTrue(Long taskId, Long userId);
+
+    Optional<Attempt> findFirstByTaskIdAndUserIdAndCodeAndStatusInOrderByIdDesc(Long taskId, Long userId, String code,
+                                                                               Collection<Attempt.Status> statuses);
+
+    /**
+     * p95 времени проверки последних {@code window} завершённых попыток на всех узлах — от начала проверки
+     * до записи результата, включая таймауты тестов, без ожидания в очереди.
+     */
+    @Query(value = """
+            SELECT count(*) AS "samples",
+                   percentile_cont(0.95) WITHIN GROUP (ORDER BY extract(epoch FROM a.finished_at - a.started_at) * 1000) AS "p95Millis"
+            FROM (SELECT started_at, finished_at FROM attempts
+                  WHERE status = 'DONE' AND started_at IS NOT NULL AND finished_at IS NOT NULL
+                  ORDER BY id DESC LIMIT :window) a
+            """, nativeQuery = true)
+    RecentRuns recentRuns(@Param("window") int window);
+
+    interface RecentRuns {
+        Long getSamples();
+
+        Double getP95Millis();
+    }
 }
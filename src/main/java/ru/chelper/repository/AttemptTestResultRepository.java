@@ -0,0 +1,50 @@
+package ru.chelper.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.chelper.entity.AttemptTestResult;
+
+import java.util.List;
+
+public interface AttemptTestResultRepository extends JpaRepository<AttemptTestResult, Long> {
+
+    /** Сводка ресурсов по каждому тесту задачи за все проверки; пропущенные тесты и вердикты из кэша не учитываются. */
+    @Query(value = """
+            SELECT r.test_index AS "testIndex",
+                   count(*) AS "runs",
+                   avg(r.wall_millis) AS "avgWallMillis",
+                   percentile_cont(0.95) WITHIN GROUP (ORDER BY r.wall_millis) AS "p95WallMillis",
+                   max(r.wall_millis) AS "maxWallMillis",
+                   avg(r.cpu_millis) AS "avgCpuMillis",
+                   max(r.cpu_millis) AS "maxCpuMillis",
+                   avg(r.peak_rss_kb) AS "avgPeakRssKb",
+                   max(r.peak_rss_kb) AS "maxPeakRssKb"
+            FROM attempt_test_results r
+            JOIN attempts a ON a.id = r.attempt_id
+            WHERE a.task_id = :taskId AND r.skipped = false AND r.wall_millis IS NOT NULL
+            GROUP BY r.test_index
+            ORDER BY r.test_index
+            """, nativeQuery = true)
+    List<TestResourceStats> aggregateByTask(@Param("taskId") Long taskId);
+
+    interface TestResourceStats {
+        Integer getTestIndex();
+
+        Long getRuns();
+
+        Double getAvgWallMillis();
+
+        Double getP95WallMillis();
+
+        Long getMaxWallMillis();
+
+        Double getAvgCpuMillis();
+
+        Long getMaxCpuMillis();
+
+        Double getAvgPeakRssKb();
+
+        Long getMaxPeakRssKb();
+    }
+}
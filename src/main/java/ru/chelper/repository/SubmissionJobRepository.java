@@ -0,0 +1,85 @@
+package ru.chelper.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.chelper.entity.SubmissionJob;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+
+public interface SubmissionJobRepository extends JpaRepository<SubmissionJob, Long> {
+
+    /**
+     * Следующее свободное задание (новое или с просроченной арендой) с блокировкой строки.
+     * Сначала — справедливость между пользователями: ранг задания — его номер среди свободных заданий
+     * пользователя плюс число заданий пользователя в работе. При равном ранге — наибольшее отношение
+     * (ожидание + ожидаемое время) / ожидаемое время (HRRN): дешёвые задания идут раньше дорогих,
+     * а дорогое со временем поднимается и не голодает.
+     * Задание не выдаётся, пока есть более раннее задание того же пользователя по той же задаче (в очереди
+     * или на проверке): следующее решение проверяется после записи результата предыдущего и видит, сдана ли задача.
+     * SKIP LOCKED пропускает строки, которые в этот момент забирают другие узлы.
+     */
+    @Query(value = """
+            SELECT j.* FROM submission_jobs j
+            JOIN (""" + RANKED_FREE_JOBS + """
+            ) p ON p.id = j.id
+            WHERE (j.leased_until IS NULL OR j.leased_until < :now)
+              AND NOT EXISTS (SELECT 1 FROM submission_jobs e
+                              WHERE e.user_id = j.user_id AND e.task_id = j.task_id AND e.id < j.id)
+            ORDER BY p.rank, p.response_ratio DESC, j.id
+            LIMIT 1
+            FOR UPDATE OF j SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<SubmissionJob> lockNextAvailable(@Param("now") Instant now);
+
+    /** Сколько свободных заданий будет выдано раньше задания попытки; {@code null}, если оно уже не в очереди. */
+    @Query(value = """
+            WITH p AS (""" + RANKED_FREE_JOBS + """
+            )
+            SELECT (SELECT count(*) FROM p
+                    WHERE p.rank < me.rank
+                       OR (p.rank = me.rank AND p.response_ratio > me.response_ratio)
+                       OR (p.rank = me.rank AND p.response_ratio = me.response_ratio AND p.id < me.id))
+            FROM p me WHERE me.attempt_id = :attemptId
+            """, nativeQuery = true)
+    Long countAhead(@Param("attemptId") Long attemptId, @Param("now") Instant now);
+
+    String RANKED_FREE_JOBS = """
+            SELECT f.id, f.attempt_id,
+                   row_number() OVER (PARTITION BY f.user_id ORDER BY f.id)
+                     + (SELECT count(*) FROM submission_jobs r WHERE r.user_id = f.user_id AND r.leased_until >= :now) AS rank,
+                   (EXTRACT(EPOCH FROM (:now - f.created_at)) * 1000 + GREATEST(COALESCE(f.expected_cost_millis, 1000), 1))
+                     / GREATEST(COALESCE(f.expected_cost_millis, 1000), 1) AS response_ratio
+            FROM submission_jobs f
+            WHERE f.leased_until IS NULL OR f.leased_until < :now""";
+
+    long countByUserId(Long userId);
+
+    long countByLeasedUntilIsNull();
+
+    @Modifying
+    @Query("UPDATE SubmissionJob j SET j.leasedUntil = :until WHERE j.leasedBy = :node AND j.attemptId IN :attemptIds")
+    int extendLeases(@Param("node") String node, @Param("attemptIds") Collection<Long> attemptIds, @Param("until") Instant until);
+
+    @Modifying
+    @Query("UPDATE SubmissionJob j SET j.leasedUntil = NULL, j.leasedBy = NULL WHERE j.leasedBy = :node AND j.attemptId = :attemptId")
+    int releaseLease(@Param("node") String node, @Param("attemptId") Long attemptId);
+
+    @Modifying
+    @Query("DELETE FROM SubmissionJob j WHERE j.attemptId = :attemptId")
+    int deleteByAttemptId(@Param("attemptId") Long attemptId);
+
+    /** Попытки, оставшиеся в очереди без задания (поставлены до появления таблицы заданий). */
+    @Modifying
+    @Query(value = """
+            INSERT INTO submission_jobs (attempt_id, user_id, task_id, claims, created_at)
+            SELECT a.id, a.user_id, a.task_id, 0, a.created_at FROM attempts a
+            WHERE a.status IN ('QUEUED', 'RUNNING')
+              AND NOT EXISTS (SELECT 1 FROM submission_jobs j WHERE j.attempt_id = a.id)
+            ON CONFLICT (attempt_id) DO NOTHING
+            """, nativeQuery = true)
+    int enqueueOrphanedAttempts();
+}
@@ -0,0 +1,23 @@
+package ru.chelper.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.chelper.entity.TaskCostEstimate;
+
+public interface TaskCostEstimateRepository extends JpaRepository<TaskCostEstimate, Long> {
+
+    /** Добавляет наблюдение одним запросом, чтобы параллельные проверки одной задачи не теряли обновления. */
+    @Modifying
+    @Query(value = """
+            INSERT INTO task_cost_estimates (task_id, per_test_millis, samples, updated_at)
+            VALUES (:taskId, :observed, 1, now())
+            ON CONFLICT (task_id) DO UPDATE
+            SET per_test_millis = task_cost_estimates.per_test_millis * (1 - :alpha) + :observed * :alpha,
+                samples = task_cost_estimates.samples + 1,
+                updated_at = now()
+            """, nativeQuery = true)
+    int addObservation(@Param("taskId") Long taskId, @Param("observed") double observedPerTestMillis, @Param("alpha") double alpha);
+
+}
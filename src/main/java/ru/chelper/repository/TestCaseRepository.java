@@ -1,6 +1,7 @@
 package ru.chelper.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import ru.chelper.entity.TestCase;
 
 import java.util.List;
@@ -9,4 +10,13 @@ public interface TestCaseRepository extends JpaRepository<TestCase, Long> {
 
     void deleteByTaskId(Long taskId);
     List<TestCase> findByTaskIdOrderByIdAsc(Long taskId);
+
+    long countByTaskId(Long taskId);
+
+    /** Файлы хранилища тестовых данных, на которые ссылаются тесты (вход и ожидаемый вывод). */
+    @Query("""
+            SELECT t.inputPath FROM TestCase t WHERE t.inputPath IS NOT NULL
+            UNION SELECT t.expectedOutputPath FROM TestCase t WHERE t.expectedOutputPath IS NOT NULL
+            """)
+    List<String> findStoredDataPaths();
 }
@@ -0,0 +1,153 @@
+package ru.chelper.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Приём отправок под нагрузкой. По глубине очереди и p95 времени недавних проверок оценивает,
+ * через сколько будет готов результат новой отправки; если оценка больше {@code latency-target-seconds},
+ * отправка отклоняется сразу, а не ждёт в очереди, пока все проверки не начнут выходить за таймауты.
+ * <p>
+ * Очередь общая для всех узлов, поэтому и оценка строится по общим данным: p95 — по реальному времени
+ * последних проверок из БД (проверка, прерванная таймаутом, длится не меньше таймаута), а очередь делится
+ * на {@code fleet-workers} — воркеров на всех узлах. Так решение принимают и узлы, которые только принимают
+ * отправки ({@code judge.workers: 0}).
+ * <p>
+ * Кроме оценки учитываются процессы oscript этого узла: если все они заняты тестами, а в очереди уже
+ * не меньше задания на каждый воркер, очередь не убывает, и отправка отклоняется, даже пока p95 неизвестен.
+ */
+@Service
+public class AdmissionControlService {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControlService.class);
+    /** Сколько последних проверок учитывается в p95. */
+    private static final int WINDOW = 200;
+    /** До стольких проверок оценка считается ненадёжной и отправки не отклоняются. */
+    private static final int MIN_SAMPLES = 20;
+    private static final int MAX_RETRY_AFTER_SECONDS = 60;
+    /** Как долго используется прочитанный из БД p95, чтобы не запрашивать его на каждую отправку. */
+    private static final long P95_REFRESH_MILLIS = 5000;
+
+    @Value("${code-runner.admission.enabled:true}")
+    private boolean enabled;
+
+    /** Целевое время от отправки до результата. */
+    @Value("${code-runner.admission.latency-target-seconds:60}")
+    private int latencyTargetSeconds;
+
+    /** Воркеров очереди на всех узлах вместе. */
+    @Value("${code-runner.admission.fleet-workers:${code-runner.judge.workers:4}}")
+    private int fleetWorkers;
+
+    private final LocalProcessCodeRunner localRunner;
+    private final JudgeService judgeService;
+    private long p95;
+    private long p95ReadAt;
+    private boolean p95Known = true;
+
+    public AdmissionControlService(LocalProcessCodeRunner localRunner, JudgeService judgeService) {
+        this.localRunner = localRunner;
+        this.judgeService = judgeService;
+    }
+
+    /**
+     * @param queueDepth число заданий, ожидающих проверки
+     * @throws SubmissionRejectedException если новая отправка не уложится в целевое время
+     */
+    public void check(long queueDepth) {
+        if (!enabled) {
+            return;
+        }
+        int retryAfter = retryAfterSeconds(queueDepth);
+        if (retryAfter > 0) {
+            throw new SubmissionRejectedException(SubmissionRejectedException.Reason.OVERLOADED,
+                    "Сервер проверки перегружен. Повторите отправку через " + retryAfter + " с.", retryAfter);
+        }
+    }
+
+    /** Через сколько секунд повторить отправку; 0 — её можно принять. */
+    private int retryAfterSeconds(long queueDepth) {
+        long estimate = estimateMillis(queueDepth);
+        long target = latencyTargetSeconds * 1000L;
+        if (estimate > target) {
+            return clampRetryAfter((estimate - target) / 1000);
+        }
+        if (isSaturated() && queueDepth >= Math.max(fleetWorkers, 1)) {
+            // Освободится процесс не раньше, чем закончится типичная проверка
+            return clampRetryAfter(p95Millis() / 1000);
+        }
+        return 0;
+    }
+
+    /** Все процессы oscript узла выполняют тесты; простаивающие тёплые хосты не в счёт. */
+    private boolean isSaturated() {
+        int limit = localRunner.getProcessLimit();
+        return limit > 0 && localRunner.getBusyProcesses() >= limit;
+    }
+
+    private static int clampRetryAfter(long seconds) {
+        return (int) Math.min(Math.max(seconds, 1), MAX_RETRY_AFTER_SECONDS);
+    }
+
+    /**
+     * Оценка времени до результата новой отправки: ей предстоит дождаться своей доли очереди
+     * (очередь делится между воркерами всех узлов) и пройти проверку, каждая — по p95.
+     * 0 — p95 неизвестен: данных ещё мало, и отправки принимаются без ограничения.
+     */
+    public long estimateMillis(long queueDepth) {
+        long p95 = p95Millis();
+        if (p95 < 0) {
+            return 0;
+        }
+        return (queueDepth / Math.max(fleetWorkers, 1) + 1) * p95;
+    }
+
+    /**
+     * p95 времени последних проверок на всех узлах; -1, если их меньше {@link #MIN_SAMPLES} или БД недоступна —
+     * тогда отправки принимаются без оценки, о чём пишется в журнал.
+     */
+    public synchronized long p95Millis() {
+        long now = System.currentTimeMillis();
+        if (p95ReadAt == 0 || now - p95ReadAt >= P95_REFRESH_MILLIS) {
+            boolean failed = false;
+            try {
+                p95 = judgeService.recentRunP95Millis(WINDOW, MIN_SAMPLES);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось прочитать время недавних проверок, отправки принимаются без контроля нагрузки: {}",
+                        e.getMessage());
+                p95 = -1;
+                failed = true;
+            }
+            p95ReadAt = now;
+            if (p95 < 0 && p95Known && !failed) {
+                log.info("Время проверки неизвестно (проверок меньше {}): отправки принимаются без контроля нагрузки",
+                        MIN_SAMPLES);
+            } else if (p95 >= 0 && !p95Known) {
+                log.info("Контроль нагрузки включён: p95 времени проверки {} мс", p95);
+            }
+            p95Known = p95 >= 0;
+        }
+        return p95;
+    }
+
+    /** Состояние для балансировщика: {@code accepting = false}, если новые отправки сейчас отклонялись бы. */
+    public Map<String, Object> getState(long queueDepth) {
+        long estimate = estimateMillis(queueDepth);
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("accepting", !enabled || retryAfterSeconds(queueDepth) == 0);
+        state.put("queueDepth", queueDepth);
+        state.put("p95RunMillis", p95Millis());
+        state.put("fleetWorkers", fleetWorkers);
+        state.put("estimatedLatencyMillis", estimate);
+        state.put("latencyTargetMillis", latencyTargetSeconds * 1000L);
+        state.put("activeProcesses", localRunner.getActiveProcesses());
+        state.put("busyProcesses", localRunner.getBusyProcesses());
+        state.put("maxProcesses", localRunner.getProcessLimit());
+        return state;
+    }
+}
@@ -3,8 +3,10 @@ package ru.chelper.service;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.chelper.dto.AttemptDto;
+import ru.chelper.dto.AttemptTestResultDto;
 import ru.chelper.dto.SubmitResultDto;
 import ru.chelper.entity.Attempt;
+import ru.chelper.entity.AttemptTestResult;
 import ru.chelper.entity.Task;
 import ru.chelper.entity.User;
 import ru.chelper.repository.AttemptRepository;
@@ -12,61 +14,87 @@ import ru.chelper.repository.TaskRepository;
 import ru.chelper.repository.UserRepository;
 import ru.chelper.security.UserPrincipal;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
 public class AttemptService {
 
     private static final int MIN_TESTS_PER_TASK = 4;
+    private static final EnumSet<Attempt.Status> IN_FLIGHT = EnumSet.of(Attempt.Status.QUEUED, Attempt.Status.RUNNING);
 
     private final AttemptRepository attemptRepository;
     private final TaskRepository taskRepository;
     private final UserRepository userRepository;
-    private final CodeExecutionService codeExecutionService;
+    private final JudgeQueueService judgeQueueService;
     private final TaskService taskService;
+    private final JudgeMetrics metrics;
 
     public AttemptService(AttemptRepository attemptRepository,
                           TaskRepository taskRepository,
                           UserRepository userRepository,
-                          CodeExecutionService codeExecutionService,
-                          TaskService taskService) {
+                          JudgeQueueService judgeQueueService,
+                          TaskService taskService,
+                          JudgeMetrics metrics) {
         this.attemptRepository = attemptRepository;
         this.taskRepository = taskRepository;
         this.userRepository = userRepository;
-        this.codeExecutionService = codeExecutionService;
+        this.judgeQueueService = judgeQueueService;
         this.taskService = taskService;
+        this.metrics = metrics;
     }
 
+    /**
+     * Сохраняет попытку в статусе QUEUED и ставит её в очередь проверки.
+     * Результат забирается опросом {@link #getStatus(Long, Long)}.
+     * <p>
+     * Отправки пользователя выполняются по одной (строка пользователя блокируется). Если тот же код по той же
+     * задаче ещё ждёт проверки или проверяется — повторное нажатие, повтор запроса клиентом, — новая попытка
+     * не создаётся: возвращается уже идущая, и её результат получат обе отправки. Другой код ставится в очередь
+     * за ней и проверяется после записи её результата (см. {@code SubmissionJobRepository.lockNextAvailable}),
+     * так что проверка «задача уже сдана» видит свежее состояние.
+     */
     @Transactional
     public SubmitResultDto submit(Long userId, Long taskId, String code) {
-        User user = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Пользователь не найден"));
+        User user = userRepository.findByIdForUpdate(userId).orElseThrow(() -> new IllegalArgumentException("Пользователь не найден"));
         Task task = taskRepository.findById(taskId).orElseThrow(() -> new IllegalArgumentException("Задача не найдена"));
         if (attemptRepository.existsByTaskIdAndUserIdAndPassedTrue(taskId, userId)) {
             throw new IllegalArgumentException("Задача уже сдана. Повторная отправка недоступна.");
         }
+        Optional<Attempt> inFlight = attemptRepository
+                .findFirstByTaskIdAndUserIdAndCodeAndStatusInOrderByIdDesc(taskId, userId, code, IN_FLIGHT);
+        if (inFlight.isPresent()) {
+            metrics.submissionCoalesced();
+            return withQueuePosition(toResultDto(inFlight.get()));
+        }
         int testCount = taskService.getTestCaseCount(taskId);
         if (testCount < MIN_TESTS_PER_TASK) {
             throw new IllegalArgumentException("У задачи должно быть минимум " + MIN_TESTS_PER_TASK + " теста. Сейчас: " + testCount);
         }
-        CodeExecutionService.RunResult result = codeExecutionService.runTests(task, code);
         Attempt attempt = new Attempt();
         attempt.setUser(user);
         attempt.setTask(task);
         attempt.setCode(code);
-        attempt.setPassed(result.isAllPassed());
-        attempt.setPassedTests(result.getPassedCount());
-        attempt.setTotalTests(result.getTotalCount());
-        attempt.setMessage(result.getMessage());
+        attempt.setPassed(false);
+        attempt.setPassedTests(0);
+        attempt.setTotalTests(testCount);
+        attempt.setMessage("Решение в очереди на проверку.");
+        attempt.setStatus(Attempt.Status.QUEUED);
         attempt = attemptRepository.save(attempt);
-        SubmitResultDto dto = new SubmitResultDto();
-        dto.setAttemptId(attempt.getId());
-        dto.setPassed(attempt.getPassed());
-        dto.setPassedTests(attempt.getPassedTests());
-        dto.setTotalTests(attempt.getTotalTests());
-        dto.setMessage(attempt.getMessage());
-        dto.setCreatedAt(attempt.getCreatedAt());
-        return dto;
+        judgeQueueService.enqueue(attempt.getId(), userId, taskId, testCount);
+        return withQueuePosition(toResultDto(attempt));
+    }
+
+    @Transactional(readOnly = true)
+    public SubmitResultDto getStatus(Long attemptId, Long userId) {
+        Attempt attempt = attemptRepository.findById(attemptId)
+                .orElseThrow(() -> new IllegalArgumentException("Попытка не найдена"));
+        if (!attempt.getUser().getId().equals(userId)) {
+            throw new IllegalArgumentException("Доступ запрещён");
+        }
+        return withQueuePosition(toResultDto(attempt));
     }
 
     @Transactional(readOnly = true)
@@ -90,7 +118,11 @@ public class AttemptService {
         if (!attempt.getUser().getId().equals(userId)) {
             throw new IllegalArgumentException("Доступ запрещён");
         }
-        return toDto(attempt);
+        AttemptDto dto = toDto(attempt);
+        // Результаты по тестам — только в карточке попытки, чтобы списки не загружали их для каждой.
+        // Сообщения тестов не отдаём: в них ожидаемый вывод скрытых тестов
+        dto.setTestResults(attempt.getTestResults().stream().map(AttemptService::toTestResultDto).toList());
+        return dto;
     }
 
     private AttemptDto toDto(Attempt a) {
@@ -105,7 +137,43 @@ public class AttemptService {
         dto.setPassedTests(a.getPassedTests());
         dto.setTotalTests(a.getTotalTests());
         dto.setMessage(a.getMessage());
+        dto.setStatus(statusOf(a).name());
+        dto.setCreatedAt(a.getCreatedAt());
+        return dto;
+    }
+
+    private static AttemptTestResultDto toTestResultDto(AttemptTestResult r) {
+        AttemptTestResultDto dto = new AttemptTestResultDto();
+        dto.setTestIndex(r.getTestIndex());
+        dto.setPassed(r.getPassed());
+        dto.setSkipped(r.getSkipped());
+        dto.setWallMillis(r.getWallMillis());
+        dto.setCpuMillis(r.getCpuMillis());
+        dto.setPeakRssKb(r.getPeakRssKb());
+        return dto;
+    }
+
+    private SubmitResultDto toResultDto(Attempt a) {
+        SubmitResultDto dto = new SubmitResultDto();
+        dto.setAttemptId(a.getId());
+        dto.setStatus(statusOf(a).name());
+        dto.setPassed(a.getPassed());
+        dto.setPassedTests(a.getPassedTests());
+        dto.setTotalTests(a.getTotalTests());
+        dto.setMessage(a.getMessage());
         dto.setCreatedAt(a.getCreatedAt());
         return dto;
     }
+
+    private SubmitResultDto withQueuePosition(SubmitResultDto dto) {
+        if (Attempt.Status.QUEUED.name().equals(dto.getStatus())) {
+            dto.setQueuePosition(judgeQueueService.getQueuePosition(dto.getAttemptId()));
+        }
+        return dto;
+    }
+
+    // Попытки, сохранённые до появления очереди, не имеют статуса — они уже проверены
+    private static Attempt.Status statusOf(Attempt a) {
+        return a.getStatus() != null ? a.getStatus() : Attempt.Status.DONE;
+    }
 }
@@ -0,0 +1,124 @@
+package ru.chelper.service;
+
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Пакетный прогон (режим {@code code-runner.mode: batched}): тесты задачи без входа выполняются
+ * одним процессом oscript. Обёртка Batch.bsl загружает Main.bsl {@code count} раз и отделяет
+ * вывод тестов строками-метками.
+ * <p>
+ * Метка вывода — единственная строка stdin, и читается обёрткой до запуска кода пользователя,
+ * поэтому код не может её узнать и подделать границу теста. Дальше stdin пуст, и чтение из кода
+ * пользователя даёт {@code Неопределено}, как у отдельного процесса с пустым входом. Тесты со входом
+ * в пакет не попадают: общий stdin позволил бы одному выполнению прочитать вход следующего.
+ * <p>
+ * В завершающей метке обёртка сообщает время выполнения теста — по нему тест, превысивший таймаут,
+ * перезапускается отдельно и получает тот же вердикт, что в режиме fresh.
+ */
+final class BatchHarness {
+
+    static final String SCRIPT_FILENAME = "Batch.bsl";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String outputMarker = randomToken();
+    private final int count;
+
+    BatchHarness(int count) {
+        this.count = count;
+    }
+
+    /** Текст обёртки, которая запускает {@code mainScript} {@code count} раз. */
+    String script(Path mainScript) {
+        String path = mainScript.toAbsolutePath().toString().replace("\"", "\"\"");
+        return "// Пакетный прогон тестов: сформировано автоматически\n"
+                + "Метка = Консоль.ПрочитатьСтроку();\n"
+                + "Для Номер = 1 По " + count + " Цикл\n"
+                + "    Сообщить(Символы.ПС + Метка + Символы.Таб + \"BEGIN\" + Символы.Таб + Формат(Номер, \"ЧГ=0\"));\n"
+                + "    Начало = ТекущаяУниверсальнаяДатаВМиллисекундах();\n"
+                + "    Попытка\n"
+                + "        ЗагрузитьСценарий(\"" + path + "\");\n"
+                + "        Код = \"0\";\n"
+                + "        Описание = \"\";\n"
+                + "    Исключение\n"
+                + "        Код = \"1\";\n"
+                + "        Описание = СтрЗаменить(ОписаниеОшибки(), Символы.ПС, \" \");\n"
+                + "    КонецПопытки;\n"
+                + "    Прошло = Формат(ТекущаяУниверсальнаяДатаВМиллисекундах() - Начало, \"ЧН=0; ЧГ=0\");\n"
+                + "    Сообщить(Символы.ПС + Метка + Символы.Таб + \"END\" + Символы.Таб + Код + Символы.Таб + Прошло + Символы.Таб + Описание);\n"
+                + "КонецЦикла;\n";
+    }
+
+    /** Поток stdin: только метка вывода — у тестов пакета входа нет. */
+    String stdin() {
+        return outputMarker + "\n";
+    }
+
+    /**
+     * Делит вывод процесса на результаты тестов. Тест, для которого нет завершающей метки
+     * (процесс упал или завершился из кода пользователя) или который выполнялся дольше
+     * {@code timeoutMillis}, остаётся {@code null} — его нужно перезапустить отдельно.
+     * При нарушении порядка меток весь пакет считается недостоверным.
+     */
+    List<LocalProcessCodeRunner.ProcessResult> parse(String output, long timeoutMillis) {
+        List<LocalProcessCodeRunner.ProcessResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) results.add(null);
+        if (output == null) return results;
+
+        String prefix = outputMarker + "\t";
+        int current = -1;
+        int expectedNext = 0;
+        StringBuilder buf = new StringBuilder();
+        for (String line : output.split("\n", -1)) {
+            if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+            if (!line.startsWith(prefix)) {
+                if (current >= 0) buf.append(line).append('\n');
+                continue;
+            }
+            String[] parts = line.split("\t", 5);
+            Long millis = parts.length > 3 ? parseMillis(parts[3]) : null;
+            if ("BEGIN".equals(parts[1]) && parts.length > 2 && current < 0
+                    && String.valueOf(expectedNext + 1).equals(parts[2])) {
+                current = expectedNext++;
+                buf.setLength(0);
+            } else if ("END".equals(parts[1]) && millis != null && current >= 0) {
+                if (millis <= timeoutMillis) {
+                    boolean failed = !"0".equals(parts[2]);
+                    String err = failed && parts.length > 4 ? parts[4] : "";
+                    LocalProcessCodeRunner.ProcessResult result =
+                            new LocalProcessCodeRunner.ProcessResult(failed ? 1 : 0, buf.toString(), err, failed);
+                    // Процесс общий — процессорное время и память тесту не припишешь
+                    result.usage = new CodeExecutionService.ResourceUsage(millis, null, null);
+                    results.set(current, result);
+                }
+                current = -1;
+            } else {
+                for (int i = 0; i < count; i++) results.set(i, null);
+                return results;
+            }
+        }
+        return results;
+    }
+
+    private static Long parseMillis(String s) {
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    boolean containsMarker(String output) {
+        return output != null && output.contains(outputMarker + "\t");
+    }
+
+    private static String randomToken() {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+}
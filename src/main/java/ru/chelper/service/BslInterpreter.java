@@ -0,0 +1,106 @@
+package ru.chelper.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Встроенный интерпретатор подмножества языка 1С: выполняет тесты в JVM, без запуска процесса oscript.
+ * Поддерживаются переменные, Если/Для/Для Каждого/Пока, процедуры и функции (параметры по ссылке и Знач),
+ * числа, строки, массивы, Сообщить(), Консоль.ПрочитатьСтроку() и распространённые строковые и числовые функции.
+ * <p>
+ * Программа за пределами подмножества, с ошибкой выполнения или превысившая пределы шагов, памяти
+ * и глубины вызовов выполняется как обычно через oscript ({@link Unsupported}) — поэтому вердикты
+ * и тексты ошибок остаются такими же, как у OneScript.
+ * <p>
+ * Предел шагов привязан к таймауту теста: программа, которой oscript не успел бы закончить за таймаут,
+ * интерпретатором не засчитывается — она уходит в oscript, и вердикт выносит настоящий таймаут.
+ */
+@Component
+public class BslInterpreter {
+
+    @Value("${code-runner.interpreter.enabled:true}")
+    private boolean enabled;
+
+    /** Доля таймаута, которую программа может занять в oscript, чтобы её результат засчитал интерпретатор. */
+    private static final int TIMEOUT_BUDGET_PERCENT = 50;
+
+    /** Сколько операторов и итераций может выполнить один тест. */
+    @Value("${code-runner.interpreter.max-steps:10000000}")
+    private long maxSteps;
+
+    /**
+     * Сколько шагов в секунду выполняет oscript на узле проверки. Оценка нарочно занижена: меньшее значение
+     * только чаще отправляет программы в oscript. 0 — не ограничивать шаги таймаутом.
+     */
+    @Value("${code-runner.interpreter.oscript-steps-per-second:1000000}")
+    private long oscriptStepsPerSecond;
+
+    @Value("${code-runner.timeout-seconds:10}")
+    private int timeoutSeconds;
+
+    /** Оценка памяти, выделенной за один тест под строки, массивы и вывод. */
+    @Value("${code-runner.interpreter.max-memory-bytes:67108864}")
+    private long maxMemoryBytes;
+
+    @Value("${code-runner.interpreter.max-call-depth:500}")
+    private int maxCallDepth;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Разбирает программу; {@link Unsupported}, если она выходит за поддерживаемое подмножество. */
+    BslProgram compile(String code) {
+        try {
+            return BslParser.parse(code);
+        } catch (StackOverflowError e) {
+            throw new Unsupported(Unsupported.Reason.UNSUPPORTED, "слишком глубокая вложенность выражений");
+        }
+    }
+
+    /** Выполняет программу над входом теста и возвращает её вывод. */
+    String execute(BslProgram program, String input, long maxOutputBytes) {
+        try {
+            return program.run(input, new BslProgram.Limits(stepBudget(), maxMemoryBytes, maxCallDepth, maxOutputBytes));
+        } catch (StackOverflowError e) {
+            throw new Unsupported(Unsupported.Reason.CALL_DEPTH, "переполнение стека");
+        }
+    }
+
+    /**
+     * Предел шагов на тест: {@code max-steps}, но не больше, чем oscript выполнил бы за половину таймаута теста.
+     * Остаток таймаута — запас на запуск процесса и на операции, которые в oscript дороже одного шага.
+     */
+    long stepBudget() {
+        if (oscriptStepsPerSecond <= 0) {
+            return maxSteps;
+        }
+        return Math.min(maxSteps, timeoutSeconds * oscriptStepsPerSecond * TIMEOUT_BUDGET_PERCENT / 100);
+    }
+
+    /** Программу нельзя проверить интерпретатором — её нужно выполнить через oscript. */
+    static class Unsupported extends RuntimeException {
+
+        enum Reason {
+            /** Конструкция или поведение, которое интерпретатор не воспроизводит. */
+            UNSUPPORTED,
+            /** Ошибка выполнения: её текст должен быть таким, как у OneScript. */
+            RUNTIME_ERROR,
+            STEP_LIMIT,
+            MEMORY_LIMIT,
+            OUTPUT_LIMIT,
+            CALL_DEPTH
+        }
+
+        private final Reason reason;
+
+        Unsupported(Reason reason, String message) {
+            super(message, null, false, false);
+            this.reason = reason;
+        }
+
+        Reason getReason() {
+            return reason;
+        }
+    }
+}
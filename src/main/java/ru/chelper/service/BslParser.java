@@ -0,0 +1,654 @@
+package ru.chelper.service;
+
+import ru.chelper.service.BslInterpreter.Unsupported;
+import ru.chelper.service.BslProgram.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Разбор программы на подмножестве языка 1С в {@link BslProgram}. Имена и ключевые слова
+ * не зависят от регистра. Переменные связываются со слотами при разборе: в процедурах и функциях
+ * видны параметры, локальные переменные и переменные модуля из «Перем». Всё, что разбор не понимает,
+ * включая синтаксические ошибки, — {@link Unsupported}: такую программу проверит oscript с его сообщением об ошибке.
+ */
+final class BslParser {
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "если", "тогда", "иначеесли", "иначе", "конецесли", "для", "каждого", "из", "по", "пока", "цикл",
+            "конеццикла", "процедура", "конецпроцедуры", "функция", "конецфункции", "перем", "знач", "экспорт",
+            "возврат", "прервать", "продолжить", "истина", "ложь", "неопределено", "и", "или", "не", "новый",
+            "вызватьисключение", "попытка", "исключение", "конецпопытки", "перейти", "выполнить", "null",
+            "добавитьобработчик", "удалитьобработчик", "асинх", "ждать",
+            // Английский синтаксис OneScript не поддерживается — такие слова не должны стать именами переменных
+            "if", "then", "elsif", "else", "endif", "for", "each", "in", "to", "while", "do", "enddo", "procedure",
+            "endprocedure", "function", "endfunction", "var", "val", "export", "return", "break", "continue", "true",
+            "false", "undefined", "and", "or", "not", "new", "raise", "try", "except", "endtry", "goto", "execute");
+
+    /** Ключевые слова, которыми заканчивается блок операторов. */
+    private static final Set<String> BLOCK_END = Set.of(
+            "иначеесли", "иначе", "конецесли", "конеццикла", "конецпроцедуры", "конецфункции");
+
+    private static final Map<String, String> SYMBOLS = Map.of(
+            "пс", "\n", "вк", "\r", "таб", "\t", "нпп", "\u00A0", "втаб", "\u000B", "пф", "\u000C");
+
+    private enum Kind { IDENT, NUMBER, STRING, OP, EOF }
+
+    private record Token(Kind kind, String text, String lower, int line) {
+        boolean is(Kind k, String s) {
+            return kind == k && (k == Kind.IDENT ? lower : text).equals(s);
+        }
+    }
+
+    private final List<Token> tokens;
+    private int pos;
+
+    private final Map<String, Integer> moduleVars = new HashMap<>();
+    private final Map<String, Method> methods = new HashMap<>();
+    private final List<Call> calls = new ArrayList<>();
+    /** Переменные текущей процедуры или функции; {@code null} — разбирается тело модуля. */
+    private Map<String, Integer> locals;
+    private Method method;
+    private int loopDepth;
+
+    private BslParser(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    static BslProgram parse(String code) {
+        return new BslParser(tokenize(code)).module();
+    }
+
+    // --- Лексемы ---
+
+    private static List<Token> tokenize(String src) {
+        List<Token> tokens = new ArrayList<>();
+        int n = src.length();
+        int i = 0;
+        int line = 1;
+        while (i < n) {
+            char c = src.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (Character.isWhitespace(c) || c == '\uFEFF' || c == '\u00A0') {
+                i++;
+            } else if (c == '/' && i + 1 < n && src.charAt(i + 1) == '/') {
+                while (i < n && src.charAt(i) != '\n') i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(src.charAt(i)) || src.charAt(i) == '_')) i++;
+                String text = src.substring(start, i);
+                tokens.add(new Token(Kind.IDENT, text, text.toLowerCase(Locale.ROOT), line));
+            } else if (c >= '0' && c <= '9') {
+                int start = i;
+                while (i < n && Character.isDigit(src.charAt(i))) i++;
+                if (i + 1 < n && src.charAt(i) == '.' && Character.isDigit(src.charAt(i + 1))) {
+                    i++;
+                    while (i < n && Character.isDigit(src.charAt(i))) i++;
+                }
+                tokens.add(new Token(Kind.NUMBER, src.substring(start, i), null, line));
+            } else if (c == '"') {
+                int startLine = line;
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= n) throw syntax(startLine, "незакрытая строка");
+                    char s = src.charAt(i);
+                    if (s == '"') {
+                        if (i + 1 < n && src.charAt(i + 1) == '"') {
+                            sb.append('"');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    if (s == '\n') {
+                        // Многострочная строка: продолжение начинается с «|»
+                        line++;
+                        i++;
+                        while (i < n && (src.charAt(i) == ' ' || src.charAt(i) == '\t' || src.charAt(i) == '\r')) i++;
+                        if (i >= n || src.charAt(i) != '|') throw syntax(line, "продолжение строки без «|»");
+                        sb.append('\n');
+                        i++;
+                        continue;
+                    }
+                    if (s != '\r') sb.append(s);
+                    i++;
+                }
+                tokens.add(new Token(Kind.STRING, sb.toString(), null, startLine));
+            } else {
+                String op = i + 1 < n ? src.substring(i, i + 2) : "";
+                if (op.equals("<>") || op.equals("<=") || op.equals(">=")) {
+                    i += 2;
+                } else if ("+-*/%=<>()[],;.?".indexOf(c) >= 0) {
+                    op = String.valueOf(c);
+                    i++;
+                } else {
+                    throw syntax(line, "символ «" + c + "»");
+                }
+                tokens.add(new Token(Kind.OP, op, null, line));
+            }
+        }
+        tokens.add(new Token(Kind.EOF, "", null, line));
+        return tokens;
+    }
+
+    private static Unsupported syntax(int line, String what) {
+        return new Unsupported(Unsupported.Reason.UNSUPPORTED, "строка " + line + ": " + what);
+    }
+
+    private Unsupported syntax(Token t) {
+        return syntax(t.line(), t.kind() == Kind.EOF ? "неожиданный конец модуля" : "неожиданное «" + t.text() + "»");
+    }
+
+    private Token peek() {
+        return tokens.get(pos);
+    }
+
+    private Token peek(int ahead) {
+        return tokens.get(Math.min(pos + ahead, tokens.size() - 1));
+    }
+
+    private Token advance() {
+        Token t = tokens.get(pos);
+        if (t.kind() != Kind.EOF) pos++;
+        return t;
+    }
+
+    private boolean isKw(String kw) {
+        return peek().is(Kind.IDENT, kw);
+    }
+
+    private boolean isOp(String op) {
+        return peek().is(Kind.OP, op);
+    }
+
+    private boolean acceptOp(String op) {
+        if (!isOp(op)) return false;
+        pos++;
+        return true;
+    }
+
+    private void expectOp(String op) {
+        if (!acceptOp(op)) throw syntax(peek());
+    }
+
+    private void expectKw(String kw) {
+        if (!isKw(kw)) throw syntax(peek());
+        pos++;
+    }
+
+    private Token name() {
+        Token t = advance();
+        if (t.kind() != Kind.IDENT || KEYWORDS.contains(t.lower())) throw syntax(t);
+        return t;
+    }
+
+    private boolean isBlockEnd(Token t) {
+        return t.kind() == Kind.EOF || t.kind() == Kind.IDENT && BLOCK_END.contains(t.lower());
+    }
+
+    // --- Модуль, процедуры и функции ---
+
+    /** Порядок модуля: объявления «Перем», затем процедуры и функции, затем тело. */
+    private BslProgram module() {
+        while (isKw("перем")) {
+            pos++;
+            declare(moduleVars);
+        }
+        while (isKw("процедура") || isKw("функция")) {
+            method();
+        }
+        Block body = block();
+        if (peek().kind() != Kind.EOF) throw syntax(peek());
+        link();
+        return new BslProgram(body, moduleVars.size());
+    }
+
+    private void declare(Map<String, Integer> scope) {
+        do {
+            Token t = name();
+            if (scope.containsKey(t.lower()) || scope != moduleVars && moduleVars.containsKey(t.lower())) {
+                throw syntax(t.line(), "повторное объявление " + t.text());
+            }
+            scope.put(t.lower(), scope.size());
+            if (isKw("экспорт")) pos++;
+        } while (acceptOp(","));
+        expectOp(";");
+    }
+
+    private void method() {
+        boolean function = isKw("функция");
+        pos++;
+        Token t = name();
+        if (methods.containsKey(t.lower()) || Builtin.find(t.lower()) != null) {
+            throw syntax(t.line(), "повторное объявление метода " + t.text());
+        }
+        locals = new HashMap<>();
+        List<Boolean> byValue = new ArrayList<>();
+        List<Object> defaults = new ArrayList<>();
+        expectOp("(");
+        if (!acceptOp(")")) {
+            do {
+                boolean value = isKw("знач");
+                if (value) pos++;
+                Token p = name();
+                if (locals.put(p.lower(), locals.size()) != null) throw syntax(p.line(), "повторный параметр " + p.text());
+                byValue.add(value);
+                defaults.add(acceptOp("=") ? defaultValue() : null);
+            } while (acceptOp(","));
+            expectOp(")");
+        }
+        if (isKw("экспорт")) pos++;
+
+        boolean[] flags = new boolean[byValue.size()];
+        for (int i = 0; i < flags.length; i++) flags[i] = byValue.get(i);
+        method = new Method(t.lower(), function, flags, defaults.toArray());
+        methods.put(method.name, method);
+        while (isKw("перем")) {
+            pos++;
+            declare(locals);
+        }
+        method.body = block();
+        expectKw(function ? "конецфункции" : "конецпроцедуры");
+        acceptOp(";");
+        method.locals = locals.size();
+        locals = null;
+        method = null;
+    }
+
+    /** Значение параметра по умолчанию — только литерал. */
+    private Object defaultValue() {
+        boolean negative = acceptOp("-");
+        Token t = advance();
+        if (t.kind() == Kind.NUMBER) {
+            BigDecimal d = new BigDecimal(t.text());
+            return negative ? d.negate() : d;
+        }
+        if (!negative && t.kind() == Kind.STRING) return t.text();
+        if (!negative && t.is(Kind.IDENT, "истина")) return true;
+        if (!negative && t.is(Kind.IDENT, "ложь")) return false;
+        if (!negative && t.is(Kind.IDENT, "неопределено")) return BslProgram.UNDEFINED;
+        throw syntax(t);
+    }
+
+    /** Связывает вызовы с процедурами, функциями и встроенными функциями после разбора всего модуля. */
+    private void link() {
+        for (Call c : calls) {
+            Method m = methods.get(c.name);
+            if (m != null) {
+                if (c.args.length > m.params || c.args.length < m.required()) {
+                    throw syntax(c.line, "неверное число параметров " + m.name);
+                }
+                if (!c.statement && !m.function) throw syntax(c.line, "процедура " + m.name + " в выражении");
+                for (int i = 0; i < c.args.length; i++) {
+                    // Элемент массива по ссылке не передаём: присваивание параметру должно было бы изменить массив
+                    if (!m.byValue[i] && m.assigned[i] && c.args[i] instanceof Index) {
+                        throw syntax(c.line, "элемент массива как параметр по ссылке");
+                    }
+                }
+                c.method = m;
+                continue;
+            }
+            Builtin b = Builtin.find(c.name);
+            if (b == null) throw syntax(c.line, "неизвестная процедура или функция " + c.name);
+            if (c.args.length < b.minArgs || c.args.length > b.maxArgs) {
+                throw syntax(c.line, "неверное число параметров " + c.name);
+            }
+            if (!c.statement && !b.function) throw syntax(c.line, "процедура " + c.name + " в выражении");
+            c.builtin = b;
+        }
+    }
+
+    // --- Операторы ---
+
+    private Block block() {
+        List<Stmt> stmts = new ArrayList<>();
+        while (!isBlockEnd(peek())) {
+            if (acceptOp(";")) continue;
+            stmts.add(statement());
+            if (!acceptOp(";") && !isBlockEnd(peek())) throw syntax(peek());
+        }
+        return new Block(stmts.toArray(new Stmt[0]));
+    }
+
+    private Stmt statement() {
+        Token t = peek();
+        if (t.kind() != Kind.IDENT) throw syntax(t);
+        switch (t.lower()) {
+            case "если":
+                return ifStatement();
+            case "пока":
+                return whileStatement();
+            case "для":
+                return forStatement();
+            case "прервать":
+            case "продолжить":
+                pos++;
+                if (loopDepth == 0) throw syntax(t);
+                return new Jump(t.lower().equals("прервать") ? BslProgram.BREAK : BslProgram.CONTINUE);
+            case "возврат":
+                return returnStatement();
+            case "вызватьисключение":
+                pos++;
+                return new Raise(expression());
+            default:
+                if (KEYWORDS.contains(t.lower())) throw syntax(t);
+                return assignmentOrCall();
+        }
+    }
+
+    private Stmt assignmentOrCall() {
+        Token t = peek();
+        if (peek(1).is(Kind.OP, "=")) {
+            pos += 2;
+            // Правая часть разбирается раньше: «А = А + 1» с неизвестной А — ошибка, а не новая переменная
+            Expr value = expression();
+            return new Assign(write(t), value);
+        }
+        Expr target = postfix();
+        if (acceptOp("=")) {
+            if (!(target instanceof Index index)) throw syntax(t);
+            return new Assign(index, expression());
+        }
+        if (target instanceof Call c) {
+            c.statement = true;
+        } else if (target instanceof MethodCall m) {
+            m.statement = true;
+        } else {
+            throw syntax(t);
+        }
+        return new Eval(target);
+    }
+
+    private Stmt ifStatement() {
+        pos++;
+        List<Expr> conditions = new ArrayList<>();
+        List<Block> blocks = new ArrayList<>();
+        conditions.add(expression());
+        expectKw("тогда");
+        blocks.add(block());
+        while (isKw("иначеесли")) {
+            pos++;
+            conditions.add(expression());
+            expectKw("тогда");
+            blocks.add(block());
+        }
+        Block otherwise = null;
+        if (isKw("иначе")) {
+            pos++;
+            otherwise = block();
+        }
+        expectKw("конецесли");
+        return new If(conditions.toArray(new Expr[0]), blocks.toArray(new Block[0]), otherwise);
+    }
+
+    private Stmt whileStatement() {
+        pos++;
+        Expr condition = expression();
+        expectKw("цикл");
+        Block body = loopBody();
+        return new While(condition, body);
+    }
+
+    private Stmt forStatement() {
+        pos++;
+        if (isKw("каждого")) {
+            pos++;
+            Token v = name();
+            expectKw("из");
+            Expr collection = expression();
+            expectKw("цикл");
+            Var var = write(v);
+            return new ForEach(var, collection, loopBody());
+        }
+        Token v = name();
+        expectOp("=");
+        Expr from = expression();
+        expectKw("по");
+        Expr to = expression();
+        expectKw("цикл");
+        Var var = write(v);
+        return new ForRange(var, from, to, loopBody());
+    }
+
+    private Block loopBody() {
+        loopDepth++;
+        Block body = block();
+        loopDepth--;
+        expectKw("конеццикла");
+        return body;
+    }
+
+    private Stmt returnStatement() {
+        Token t = advance();
+        if (method == null) throw syntax(t);
+        boolean hasValue = !isOp(";") && !isBlockEnd(peek());
+        if (hasValue != method.function) throw syntax(t);
+        return new Return(hasValue ? expression() : null);
+    }
+
+    // --- Переменные ---
+
+    private Var write(Token t) {
+        String name = t.lower();
+        if (KEYWORDS.contains(name)) throw syntax(t);
+        if (locals != null) {
+            Integer slot = locals.get(name);
+            if (slot != null) {
+                if (slot < method.params) method.assigned[slot] = true;
+                return new LocalVar(slot);
+            }
+            slot = moduleVars.get(name);
+            if (slot != null) return new ModuleVar(slot);
+            slot = locals.size();
+            locals.put(name, slot);
+            return new LocalVar(slot);
+        }
+        return new ModuleVar(moduleVars.computeIfAbsent(name, k -> moduleVars.size()));
+    }
+
+    private Var read(Token t) {
+        String name = t.lower();
+        if (locals != null && locals.containsKey(name)) return new LocalVar(locals.get(name));
+        if (moduleVars.containsKey(name)) return new ModuleVar(moduleVars.get(name));
+        throw syntax(t.line(), "переменная не определена: " + t.text());
+    }
+
+    private boolean isVariable(String name) {
+        return locals != null && locals.containsKey(name) || moduleVars.containsKey(name);
+    }
+
+    // --- Выражения ---
+
+    private Expr expression() {
+        Expr e = and();
+        while (isKw("или")) {
+            pos++;
+            e = new Logical(e, and(), false);
+        }
+        return e;
+    }
+
+    private Expr and() {
+        Expr e = not();
+        while (isKw("и")) {
+            pos++;
+            e = new Logical(e, not(), true);
+        }
+        return e;
+    }
+
+    private Expr not() {
+        if (isKw("не")) {
+            pos++;
+            return new Not(not());
+        }
+        return comparison();
+    }
+
+    private Expr comparison() {
+        Expr e = additive();
+        Op op = switch (peek().kind() == Kind.OP ? peek().text() : "") {
+            case "=" -> Op.EQ;
+            case "<>" -> Op.NE;
+            case "<" -> Op.LT;
+            case ">" -> Op.GT;
+            case "<=" -> Op.LE;
+            case ">=" -> Op.GE;
+            default -> null;
+        };
+        if (op == null) return e;
+        pos++;
+        return new Binary(op, e, additive());
+    }
+
+    private Expr additive() {
+        Expr e = multiplicative();
+        while (isOp("+") || isOp("-")) {
+            Op op = advance().text().equals("+") ? Op.ADD : Op.SUB;
+            e = new Binary(op, e, multiplicative());
+        }
+        return e;
+    }
+
+    private Expr multiplicative() {
+        Expr e = unary();
+        while (isOp("*") || isOp("/") || isOp("%")) {
+            Op op = switch (advance().text()) {
+                case "*" -> Op.MUL;
+                case "/" -> Op.DIV;
+                default -> Op.MOD;
+            };
+            e = new Binary(op, e, unary());
+        }
+        return e;
+    }
+
+    private Expr unary() {
+        if (isOp("-") || isOp("+")) {
+            boolean negate = advance().text().equals("-");
+            return new Neg(unary(), negate);
+        }
+        return postfix();
+    }
+
+    private Expr postfix() {
+        Expr e = primary();
+        while (true) {
+            if (acceptOp("[")) {
+                Expr index = expression();
+                expectOp("]");
+                e = new Index(e, index);
+            } else if (acceptOp(".")) {
+                Token m = name();
+                int[] signature = MethodCall.ARRAY_METHODS.get(m.lower());
+                if (signature == null || !isOp("(")) throw syntax(m.line(), "метод или свойство " + m.text());
+                Expr[] args = arguments();
+                if (args.length != signature[0]) throw syntax(m.line(), "неверное число параметров " + m.text());
+                e = new MethodCall(e, m.lower(), args);
+            } else {
+                return e;
+            }
+        }
+    }
+
+    private Expr primary() {
+        Token t = advance();
+        switch (t.kind()) {
+            case NUMBER:
+                return new Const(BslProgram.checked(new BigDecimal(t.text())));
+            case STRING:
+                return new Const(t.text());
+            case OP:
+                if (t.text().equals("(")) {
+                    Expr e = expression();
+                    expectOp(")");
+                    return e;
+                }
+                if (t.text().equals("?")) {
+                    expectOp("(");
+                    Expr condition = expression();
+                    expectOp(",");
+                    Expr then = expression();
+                    expectOp(",");
+                    Expr otherwise = expression();
+                    expectOp(")");
+                    return new Ternary(condition, then, otherwise);
+                }
+                throw syntax(t);
+            case IDENT:
+                break;
+            default:
+                throw syntax(t);
+        }
+        switch (t.lower()) {
+            case "истина":
+                return new Const(true);
+            case "ложь":
+                return new Const(false);
+            case "неопределено":
+                return new Const(BslProgram.UNDEFINED);
+            case "новый":
+                return newArray();
+            default:
+                break;
+        }
+        if (KEYWORDS.contains(t.lower())) throw syntax(t);
+        if (isOp("(")) {
+            Call c = new Call(t.lower(), arguments(), t.line());
+            calls.add(c);
+            return c;
+        }
+        if (!isVariable(t.lower())) {
+            if (t.lower().equals("консоль")) return console(t);
+            if (t.lower().equals("символы")) {
+                expectOp(".");
+                Token s = name();
+                String value = SYMBOLS.get(s.lower());
+                if (value == null) throw syntax(s.line(), "Символы." + s.text());
+                return new Const(value);
+            }
+        }
+        return read(t);
+    }
+
+    private Expr[] arguments() {
+        expectOp("(");
+        List<Expr> args = new ArrayList<>();
+        if (!acceptOp(")")) {
+            do {
+                args.add(expression());
+            } while (acceptOp(","));
+            expectOp(")");
+        }
+        return args.toArray(new Expr[0]);
+    }
+
+    private Expr newArray() {
+        Token type = name();
+        if (!type.lower().equals("массив")) throw syntax(type.line(), "Новый " + type.text());
+        if (!isOp("(")) return new NewArray(null);
+        Expr[] args = arguments();
+        if (args.length > 1) throw syntax(type.line(), "многомерный массив");
+        return new NewArray(args.length == 1 ? args[0] : null);
+    }
+
+    /** Консоль.ПрочитатьСтроку() и Консоль.ВывестиСтроку(). */
+    private Expr console(Token t) {
+        expectOp(".");
+        Token m = name();
+        String qualified = "консоль." + m.lower();
+        if (Builtin.find(qualified) == null || !isOp("(")) throw syntax(m.line(), "Консоль." + m.text());
+        Call c = new Call(qualified, arguments(), t.line());
+        calls.add(c);
+        return c;
+    }
+}
@@ -0,0 +1,1080 @@
+package ru.chelper.service;
+
+import ru.chelper.service.BslInterpreter.Unsupported;
+import ru.chelper.service.BslInterpreter.Unsupported.Reason;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Программа на подмножестве языка 1С, разобранная {@link BslParser}: дерево узлов, которое выполняется обходом.
+ * Значения — {@link BigDecimal} (Число), {@link String}, {@link Boolean}, {@link #UNDEFINED} и {@link BslArray}.
+ * <p>
+ * Числа OneScript — decimal .NET, поэтому всё, что могло бы разойтись с ним (бесконечные дроби, больше 28 знаков,
+ * вывод дробного числа с незначащими нулями), прерывает выполнение с {@link Unsupported}, и тест проверяется
+ * через oscript. Так же прерывают выполнение сравнение значений разных типов и неявные преобразования.
+ * Узлы неизменяемы после разбора, состояние выполнения — в {@link Run}, поэтому одна программа
+ * может выполняться в нескольких потоках.
+ */
+final class BslProgram {
+
+    static final Object UNDEFINED = new Object() {
+        @Override
+        public String toString() {
+            return "Неопределено";
+        }
+    };
+
+    static final int NORMAL = 0;
+    static final int BREAK = 1;
+    static final int CONTINUE = 2;
+    static final int RETURN = 3;
+
+    /** Наибольшее число знаков decimal .NET. */
+    private static final int MAX_DIGITS = 28;
+
+    private final Block body;
+    private final int moduleSlots;
+
+    BslProgram(Block body, int moduleSlots) {
+        this.body = body;
+        this.moduleSlots = moduleSlots;
+    }
+
+    record Limits(long maxSteps, long maxMemoryBytes, int maxCallDepth, long maxOutputBytes) {
+    }
+
+    /** Выполняет программу над входом теста и возвращает её вывод. */
+    String run(String input, Limits limits) {
+        Run r = new Run(input != null ? input : "", limits);
+        Frame module = new Frame(cells(moduleSlots, 0));
+        r.module = module.cells;
+        body.exec(r, module);
+        return r.out.toString();
+    }
+
+    private static Cell[] cells(int count, int from) {
+        Cell[] cells = new Cell[count];
+        for (int i = from; i < count; i++) {
+            cells[i] = new Cell(UNDEFINED);
+        }
+        return cells;
+    }
+
+    // --- Состояние выполнения ---
+
+    static final class Run {
+        private final String input;
+        private final Limits limits;
+        private final StringBuilder out = new StringBuilder();
+        private int inputPos;
+        private long steps;
+        private long memory;
+        private long outputBytes;
+        private int depth;
+        private Cell[] module;
+
+        Run(String input, Limits limits) {
+            this.input = input;
+            this.limits = limits;
+        }
+
+        void step() {
+            if (++steps > limits.maxSteps()) {
+                throw new Unsupported(Reason.STEP_LIMIT, "превышен предел шагов (" + limits.maxSteps() + ")");
+            }
+        }
+
+        void allocate(long bytes) {
+            memory += bytes;
+            if (memory > limits.maxMemoryBytes()) {
+                throw new Unsupported(Reason.MEMORY_LIMIT, "превышен предел памяти (" + limits.maxMemoryBytes() + " байт)");
+            }
+        }
+
+        String string(String s) {
+            allocate(2L * s.length());
+            return s;
+        }
+
+        void enter() {
+            if (++depth > limits.maxCallDepth()) {
+                throw new Unsupported(Reason.CALL_DEPTH, "превышена глубина вызовов (" + limits.maxCallDepth() + ")");
+            }
+        }
+
+        void leave() {
+            depth--;
+        }
+
+        void print(String s) {
+            outputBytes += utf8Length(s) + 1;
+            if (outputBytes > limits.maxOutputBytes()) {
+                throw new Unsupported(Reason.OUTPUT_LIMIT, "превышен лимит вывода");
+            }
+            allocate(2L * (s.length() + 1));
+            out.append(s).append('\n');
+        }
+
+        /** Консоль.ПрочитатьСтроку(): строка без перевода строки или Неопределено в конце входа. */
+        Object readLine() {
+            int n = input.length();
+            if (inputPos >= n) return UNDEFINED;
+            int i = inputPos;
+            while (i < n && input.charAt(i) != '\n' && input.charAt(i) != '\r') i++;
+            String line = input.substring(inputPos, i);
+            if (i < n && input.charAt(i) == '\r' && i + 1 < n && input.charAt(i + 1) == '\n') {
+                i++;
+            }
+            inputPos = Math.min(n, i + 1);
+            return string(line);
+        }
+
+        private static long utf8Length(String s) {
+            long bytes = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+            }
+            return bytes;
+        }
+    }
+
+    static final class Cell {
+        Object value;
+
+        Cell(Object value) {
+            this.value = value;
+        }
+    }
+
+    static final class Frame {
+        final Cell[] cells;
+        Object result = UNDEFINED;
+
+        Frame(Cell[] cells) {
+            this.cells = cells;
+        }
+    }
+
+    static final class BslArray {
+        final ArrayList<Object> items = new ArrayList<>();
+    }
+
+    // --- Значения ---
+
+    static Unsupported unsupported(String message) {
+        return new Unsupported(Reason.UNSUPPORTED, message);
+    }
+
+    static Unsupported runtimeError(String message) {
+        return new Unsupported(Reason.RUNTIME_ERROR, message);
+    }
+
+    static String typeName(Object v) {
+        if (v instanceof BigDecimal) return "Число";
+        if (v instanceof String) return "Строка";
+        if (v instanceof Boolean) return "Булево";
+        if (v instanceof BslArray) return "Массив";
+        return "Неопределено";
+    }
+
+    static BigDecimal number(Object v) {
+        if (v instanceof BigDecimal d) return d;
+        throw unsupported("ожидалось Число, получено " + typeName(v));
+    }
+
+    static String text(Object v) {
+        if (v instanceof String s) return s;
+        throw unsupported("ожидалась Строка, получено " + typeName(v));
+    }
+
+    static boolean truth(Object v) {
+        if (v instanceof Boolean b) return b;
+        throw unsupported("ожидалось Булево, получено " + typeName(v));
+    }
+
+    static int integer(Object v) {
+        BigDecimal d = number(v);
+        try {
+            return d.intValueExact();
+        } catch (ArithmeticException e) {
+            throw unsupported("ожидалось целое число, получено " + d.toPlainString());
+        }
+    }
+
+    /** Число в пределах decimal .NET; иначе результат OneScript (округление или переполнение) не воспроизвести. */
+    static BigDecimal checked(BigDecimal d) {
+        if (d.scale() > MAX_DIGITS || d.precision() - d.scale() > MAX_DIGITS) {
+            throw unsupported("число выходит за точность decimal: " + d.toPlainString());
+        }
+        return d;
+    }
+
+    /** Представление значения в Сообщить(), Строка() и при сложении со строкой. */
+    static String display(Object v) {
+        if (v instanceof String s) return s;
+        if (v instanceof BigDecimal d) return format(d);
+        if (v == UNDEFINED) return "";
+        throw unsupported("преобразование в строку значения типа " + typeName(v));
+    }
+
+    /**
+     * Число так, как его выводит OneScript: без разделителей разрядов, с точкой. Дробное число
+     * с незначащими нулями (2.50) может выводиться по-разному — такие числа оставляем oscript.
+     */
+    static String format(BigDecimal d) {
+        if (d.scale() <= 0) {
+            return d.toBigInteger().toString();
+        }
+        if (d.unscaledValue().mod(BigInteger.TEN).signum() == 0) {
+            throw unsupported("вывод дробного числа с незначащими нулями: " + d.toPlainString());
+        }
+        return d.toPlainString();
+    }
+
+    static boolean equal(Object a, Object b) {
+        if (a == UNDEFINED || b == UNDEFINED) return a == b;
+        if (a instanceof BigDecimal x && b instanceof BigDecimal y) return x.compareTo(y) == 0;
+        if (a instanceof String && b instanceof String || a instanceof Boolean && b instanceof Boolean) {
+            return a.equals(b);
+        }
+        if (a instanceof BslArray && b instanceof BslArray) return a == b;
+        throw unsupported("сравнение значений типов " + typeName(a) + " и " + typeName(b));
+    }
+
+    /** Пробельный символ в смысле .NET char.IsWhiteSpace — его отсекают СокрЛП и соседние функции. */
+    static boolean space(char c) {
+        if (c >= '\u001C' && c <= '\u001F') return false;
+        return Character.isWhitespace(c) || Character.isSpaceChar(c) || c == '\u0085';
+    }
+
+    // --- Выражения ---
+
+    abstract static class Expr {
+        abstract Object eval(Run r, Frame f);
+    }
+
+    /** Выражение, которому можно присвоить значение. */
+    abstract static class Ref extends Expr {
+        abstract void assign(Run r, Frame f, Object value);
+    }
+
+    abstract static class Var extends Ref {
+        abstract Cell cell(Run r, Frame f);
+
+        @Override
+        Object eval(Run r, Frame f) {
+            return cell(r, f).value;
+        }
+
+        @Override
+        void assign(Run r, Frame f, Object value) {
+            cell(r, f).value = value;
+        }
+    }
+
+    static final class LocalVar extends Var {
+        private final int slot;
+
+        LocalVar(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Cell cell(Run r, Frame f) {
+            return f.cells[slot];
+        }
+    }
+
+    static final class ModuleVar extends Var {
+        private final int slot;
+
+        ModuleVar(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Cell cell(Run r, Frame f) {
+            return r.module[slot];
+        }
+    }
+
+    static final class Index extends Ref {
+        private final Expr target;
+        private final Expr index;
+
+        Index(Expr target, Expr index) {
+            this.target = target;
+            this.index = index;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            BslArray a = array(target.eval(r, f));
+            return a.items.get(position(a, index.eval(r, f), a.items.size()));
+        }
+
+        @Override
+        void assign(Run r, Frame f, Object value) {
+            BslArray a = array(target.eval(r, f));
+            a.items.set(position(a, index.eval(r, f), a.items.size()), value);
+        }
+    }
+
+    static BslArray array(Object v) {
+        if (v instanceof BslArray a) return a;
+        throw unsupported("ожидался Массив, получено " + typeName(v));
+    }
+
+    /** Индекс массива в пределах [0, bound). */
+    static int position(BslArray a, Object index, int bound) {
+        int i = integer(index);
+        if (i < 0 || i >= bound) {
+            throw runtimeError("Значение индекса выходит за пределы диапазона: " + i);
+        }
+        return i;
+    }
+
+    static final class Const extends Expr {
+        private final Object value;
+
+        Const(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            return value;
+        }
+    }
+
+    static final class Neg extends Expr {
+        private final Expr operand;
+        private final boolean negate;
+
+        Neg(Expr operand, boolean negate) {
+            this.operand = operand;
+            this.negate = negate;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            BigDecimal d = number(operand.eval(r, f));
+            return negate ? d.negate() : d;
+        }
+    }
+
+    static final class Not extends Expr {
+        private final Expr operand;
+
+        Not(Expr operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            return !truth(operand.eval(r, f));
+        }
+    }
+
+    /** И / ИЛИ: правый операнд вычисляется, только если от него зависит результат. */
+    static final class Logical extends Expr {
+        private final Expr left;
+        private final Expr right;
+        private final boolean and;
+
+        Logical(Expr left, Expr right, boolean and) {
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            boolean l = truth(left.eval(r, f));
+            if (l != and) return l;
+            return truth(right.eval(r, f));
+        }
+    }
+
+    enum Op { ADD, SUB, MUL, DIV, MOD, EQ, NE, LT, GT, LE, GE }
+
+    static final class Binary extends Expr {
+        private final Op op;
+        private final Expr left;
+        private final Expr right;
+
+        Binary(Op op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            Object a = left.eval(r, f);
+            Object b = right.eval(r, f);
+            switch (op) {
+                case ADD -> {
+                    if (a instanceof String s) return r.string(s + display(b));
+                    return checked(number(a).add(number(b)));
+                }
+                case SUB -> {
+                    return checked(number(a).subtract(number(b)));
+                }
+                case MUL -> {
+                    return checked(number(a).multiply(number(b)));
+                }
+                case DIV -> {
+                    return divide(number(a), number(b));
+                }
+                case MOD -> {
+                    BigDecimal x = number(a);
+                    BigDecimal y = number(b);
+                    if (y.signum() == 0) throw runtimeError("Деление на 0");
+                    if (x.scale() != 0 || y.scale() != 0) throw unsupported("остаток от деления дробных чисел");
+                    return x.remainder(y);
+                }
+                case EQ -> {
+                    return equal(a, b);
+                }
+                case NE -> {
+                    return !equal(a, b);
+                }
+                default -> {
+                    int c = number(a).compareTo(number(b));
+                    return switch (op) {
+                        case LT -> c < 0;
+                        case GT -> c > 0;
+                        case LE -> c <= 0;
+                        default -> c >= 0;
+                    };
+                }
+            }
+        }
+
+        /** Только точное деление целых: так его результат заведомо совпадает с decimal .NET. */
+        private static BigDecimal divide(BigDecimal x, BigDecimal y) {
+            if (y.signum() == 0) throw runtimeError("Деление на 0");
+            if (x.scale() != 0 || y.scale() != 0) throw unsupported("деление дробных чисел");
+            BigDecimal q;
+            try {
+                q = x.divide(y);
+            } catch (ArithmeticException e) {
+                throw unsupported("деление с бесконечной дробью");
+            }
+            q = q.stripTrailingZeros();
+            return checked(q.scale() < 0 ? q.setScale(0) : q);
+        }
+    }
+
+    /** ?(Условие, ЕслиИстина, ЕслиЛожь). */
+    static final class Ternary extends Expr {
+        private final Expr condition;
+        private final Expr then;
+        private final Expr otherwise;
+
+        Ternary(Expr condition, Expr then, Expr otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            return truth(condition.eval(r, f)) ? then.eval(r, f) : otherwise.eval(r, f);
+        }
+    }
+
+    /** Новый Массив или Новый Массив(Количество). */
+    static final class NewArray extends Expr {
+        private final Expr size;
+
+        NewArray(Expr size) {
+            this.size = size;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            BslArray a = new BslArray();
+            if (size != null) {
+                int n = integer(size.eval(r, f));
+                if (n < 0) throw unsupported("отрицательный размер массива");
+                r.allocate(16L * n);
+                for (int i = 0; i < n; i++) a.items.add(UNDEFINED);
+            }
+            return a;
+        }
+    }
+
+    /** Вызов процедуры или функции модуля либо встроенной функции; цель связывается после разбора. */
+    static final class Call extends Expr {
+        final String name;
+        final Expr[] args;
+        final int line;
+        /** Вызов как оператор — значение не используется. */
+        boolean statement;
+        Method method;
+        Builtin builtin;
+
+        Call(String name, Expr[] args, int line) {
+            this.name = name;
+            this.args = args;
+            this.line = line;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            if (method != null) {
+                return method.invoke(r, f, args);
+            }
+            Object[] values = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = args[i].eval(r, f);
+            }
+            return builtin.call(r, values);
+        }
+    }
+
+    /** Метод массива: Добавить, Количество, Получить и т. д. */
+    static final class MethodCall extends Expr {
+        /** Имя → {число параметров, 1 для функции / 0 для процедуры}. */
+        static final Map<String, int[]> ARRAY_METHODS = Map.of(
+                "добавить", new int[]{1, 0},
+                "вставить", new int[]{2, 0},
+                "установить", new int[]{2, 0},
+                "удалить", new int[]{1, 0},
+                "очистить", new int[]{0, 0},
+                "количество", new int[]{0, 1},
+                "вграница", new int[]{0, 1},
+                "получить", new int[]{1, 1},
+                "найти", new int[]{1, 1});
+
+        private final Expr target;
+        private final String name;
+        private final Expr[] args;
+        boolean statement;
+
+        MethodCall(Expr target, String name, Expr[] args) {
+            this.target = target;
+            this.name = name;
+            this.args = args;
+        }
+
+        @Override
+        Object eval(Run r, Frame f) {
+            BslArray a = array(target.eval(r, f));
+            if (!statement && ARRAY_METHODS.get(name)[1] == 0) {
+                throw unsupported("процедура " + name + " в выражении");
+            }
+            Object[] v = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                v[i] = args[i].eval(r, f);
+            }
+            List<Object> items = a.items;
+            switch (name) {
+                case "добавить" -> {
+                    r.allocate(16);
+                    items.add(v[0]);
+                }
+                case "вставить" -> {
+                    r.allocate(16);
+                    items.add(position(a, v[0], items.size() + 1), v[1]);
+                }
+                case "установить" -> items.set(position(a, v[0], items.size()), v[1]);
+                case "удалить" -> items.remove(position(a, v[0], items.size()));
+                case "очистить" -> items.clear();
+                case "количество" -> {
+                    return BigDecimal.valueOf(items.size());
+                }
+                case "вграница" -> {
+                    return BigDecimal.valueOf(items.size() - 1);
+                }
+                case "получить" -> {
+                    return items.get(position(a, v[0], items.size()));
+                }
+                case "найти" -> {
+                    for (int i = 0; i < items.size(); i++) {
+                        if (same(items.get(i), v[0])) return BigDecimal.valueOf(i);
+                    }
+                    return UNDEFINED;
+                }
+                default -> throw unsupported("метод массива " + name);
+            }
+            return UNDEFINED;
+        }
+
+        /** Сравнение для Найти(): значения разных типов просто не равны. */
+        private static boolean same(Object a, Object b) {
+            if (a instanceof BigDecimal x && b instanceof BigDecimal y) return x.compareTo(y) == 0;
+            return a == b || a instanceof String && a.equals(b) || a instanceof Boolean && a.equals(b);
+        }
+    }
+
+    // --- Операторы ---
+
+    abstract static class Stmt {
+        /** Выполняет оператор; результат — NORMAL, BREAK, CONTINUE или RETURN. */
+        abstract int exec(Run r, Frame f);
+    }
+
+    static final class Block {
+        private final Stmt[] stmts;
+
+        Block(Stmt[] stmts) {
+            this.stmts = stmts;
+        }
+
+        int exec(Run r, Frame f) {
+            for (Stmt s : stmts) {
+                r.step();
+                int c = s.exec(r, f);
+                if (c != NORMAL) return c;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class Assign extends Stmt {
+        private final Ref target;
+        private final Expr value;
+
+        Assign(Ref target, Expr value) {
+            this.target = target;
+            this.value = value;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            target.assign(r, f, value.eval(r, f));
+            return NORMAL;
+        }
+    }
+
+    static final class Eval extends Stmt {
+        private final Expr expr;
+
+        Eval(Expr expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            expr.eval(r, f);
+            return NORMAL;
+        }
+    }
+
+    static final class If extends Stmt {
+        private final Expr[] conditions;
+        private final Block[] blocks;
+        private final Block otherwise;
+
+        If(Expr[] conditions, Block[] blocks, Block otherwise) {
+            this.conditions = conditions;
+            this.blocks = blocks;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            for (int i = 0; i < conditions.length; i++) {
+                if (truth(conditions[i].eval(r, f))) return blocks[i].exec(r, f);
+            }
+            return otherwise != null ? otherwise.exec(r, f) : NORMAL;
+        }
+    }
+
+    static final class While extends Stmt {
+        private final Expr condition;
+        private final Block body;
+
+        While(Expr condition, Block body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            while (truth(condition.eval(r, f))) {
+                r.step();
+                int c = body.exec(r, f);
+                if (c == BREAK) break;
+                if (c == RETURN) return RETURN;
+            }
+            return NORMAL;
+        }
+    }
+
+    /** Для Имя = Начало По Конец Цикл: граница вычисляется один раз, шаг прибавляется к текущему значению переменной. */
+    static final class ForRange extends Stmt {
+        private final Var var;
+        private final Expr from;
+        private final Expr to;
+        private final Block body;
+
+        ForRange(Var var, Expr from, Expr to, Block body) {
+            this.var = var;
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            Cell cell = var.cell(r, f);
+            cell.value = number(from.eval(r, f));
+            BigDecimal end = number(to.eval(r, f));
+            while (number(cell.value).compareTo(end) <= 0) {
+                r.step();
+                int c = body.exec(r, f);
+                if (c == BREAK) break;
+                if (c == RETURN) return RETURN;
+                cell.value = checked(number(cell.value).add(BigDecimal.ONE));
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class ForEach extends Stmt {
+        private final Var var;
+        private final Expr collection;
+        private final Block body;
+
+        ForEach(Var var, Expr collection, Block body) {
+            this.var = var;
+            this.collection = collection;
+            this.body = body;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            BslArray a = array(collection.eval(r, f));
+            int size = a.items.size();
+            for (int i = 0; i < size; i++) {
+                r.step();
+                var.assign(r, f, a.items.get(i));
+                int c = body.exec(r, f);
+                if (a.items.size() != size) throw unsupported("изменение массива при обходе");
+                if (c == BREAK) break;
+                if (c == RETURN) return RETURN;
+            }
+            return NORMAL;
+        }
+    }
+
+    /** Прервать или Продолжить. */
+    static final class Jump extends Stmt {
+        private final int code;
+
+        Jump(int code) {
+            this.code = code;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            return code;
+        }
+    }
+
+    static final class Return extends Stmt {
+        private final Expr value;
+
+        Return(Expr value) {
+            this.value = value;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            if (value != null) f.result = value.eval(r, f);
+            return RETURN;
+        }
+    }
+
+    /** ВызватьИсключение: текст ошибки формирует OneScript, поэтому тест уходит в oscript. */
+    static final class Raise extends Stmt {
+        private final Expr message;
+
+        Raise(Expr message) {
+            this.message = message;
+        }
+
+        @Override
+        int exec(Run r, Frame f) {
+            message.eval(r, f);
+            throw runtimeError("ВызватьИсключение");
+        }
+    }
+
+    // --- Процедуры и функции ---
+
+    static final class Method {
+        final String name;
+        final boolean function;
+        final int params;
+        final boolean[] byValue;
+        /** Значения по умолчанию; {@code null} — параметр обязателен. */
+        final Object[] defaults;
+        /** Параметр получает значение в теле: тогда передача по ссылке видна вызывающему. */
+        final boolean[] assigned;
+        int locals;
+        Block body;
+
+        Method(String name, boolean function, boolean[] byValue, Object[] defaults) {
+            this.name = name;
+            this.function = function;
+            this.params = byValue.length;
+            this.byValue = byValue;
+            this.defaults = defaults;
+            this.assigned = new boolean[params];
+        }
+
+        /** Сколько параметров нужно передать: до последнего без значения по умолчанию. */
+        int required() {
+            for (int i = params - 1; i >= 0; i--) {
+                if (defaults[i] == null) return i + 1;
+            }
+            return 0;
+        }
+
+        /** Параметры без Знач, переданные переменной, разделяют её ячейку — присваивание видно вызывающему. */
+        Object invoke(Run r, Frame caller, Expr[] args) {
+            Cell[] cells = cells(locals, params);
+            for (int i = 0; i < params; i++) {
+                if (i >= args.length) {
+                    cells[i] = new Cell(defaults[i]);
+                } else if (!byValue[i] && args[i] instanceof Var v) {
+                    cells[i] = v.cell(r, caller);
+                } else {
+                    cells[i] = new Cell(args[i].eval(r, caller));
+                }
+            }
+            Frame frame = new Frame(cells);
+            r.enter();
+            try {
+                body.exec(r, frame);
+            } finally {
+                r.leave();
+            }
+            return frame.result;
+        }
+    }
+
+    /** Встроенные функции глобального контекста; имена — в нижнем регистре. */
+    enum Builtin {
+        MESSAGE("сообщить", 1, 1, false),
+        CONSOLE_READ("консоль.прочитатьстроку", 0, 0, true),
+        CONSOLE_WRITE("консоль.вывестистроку", 1, 1, false),
+        STRING("строка", 1, 1, true),
+        NUMBER("число", 1, 1, true),
+        STR_LEN("стрдлина", 1, 1, true),
+        MID("сред", 2, 3, true),
+        LEFT("лев", 2, 2, true),
+        RIGHT("прав", 2, 2, true),
+        UPPER("врег", 1, 1, true),
+        LOWER("нрег", 1, 1, true),
+        TRIM_LEFT("сокрл", 1, 1, true),
+        TRIM_RIGHT("сокрп", 1, 1, true),
+        TRIM("сокрлп", 1, 1, true),
+        IS_BLANK("пустаястрока", 1, 1, true),
+        STR_FIND("стрнайти", 2, 2, true),
+        FIND("найти", 2, 2, true),
+        STR_REPLACE("стрзаменить", 3, 3, true),
+        STR_SPLIT("стрразделить", 2, 3, true),
+        STR_CONCAT("стрсоединить", 1, 2, true),
+        STR_COUNT("стрчисловхождений", 2, 2, true),
+        STARTS_WITH("стрначинаетсяс", 2, 2, true),
+        ENDS_WITH("стрзаканчиваетсяна", 2, 2, true),
+        CHAR("символ", 1, 1, true),
+        CHAR_CODE("кодсимвола", 1, 2, true),
+        INT("цел", 1, 1, true),
+        ROUND("окр", 1, 2, true),
+        MAX("макс", 1, Integer.MAX_VALUE, true),
+        MIN("мин", 1, Integer.MAX_VALUE, true);
+
+        private static final Map<String, Builtin> BY_NAME = new HashMap<>();
+
+        static {
+            for (Builtin b : values()) BY_NAME.put(b.name, b);
+        }
+
+        final String name;
+        final int minArgs;
+        final int maxArgs;
+        final boolean function;
+
+        Builtin(String name, int minArgs, int maxArgs, boolean function) {
+            this.name = name;
+            this.minArgs = minArgs;
+            this.maxArgs = maxArgs;
+            this.function = function;
+        }
+
+        static Builtin find(String name) {
+            return BY_NAME.get(name);
+        }
+
+        Object call(Run r, Object[] a) {
+            switch (this) {
+                case MESSAGE, CONSOLE_WRITE -> {
+                    r.print(display(a[0]));
+                    return UNDEFINED;
+                }
+                case CONSOLE_READ -> {
+                    return r.readLine();
+                }
+                case STRING -> {
+                    return r.string(display(a[0]));
+                }
+                case NUMBER -> {
+                    if (a[0] instanceof BigDecimal d) return d;
+                    String s = text(a[0]);
+                    if (!s.matches("-?[0-9]+(\\.[0-9]+)?")) throw unsupported("Число(\"" + s + "\")");
+                    return checked(new BigDecimal(s));
+                }
+                case STR_LEN -> {
+                    return BigDecimal.valueOf(display(a[0]).length());
+                }
+                case MID -> {
+                    String s = display(a[0]);
+                    int start = integer(a[1]);
+                    if (start < 1) throw unsupported("Сред() с началом меньше 1");
+                    int from = Math.min(start - 1, s.length());
+                    int to = s.length();
+                    if (a.length > 2) {
+                        int len = integer(a[2]);
+                        if (len < 0) throw unsupported("Сред() с отрицательной длиной");
+                        to = (int) Math.min(to, (long) from + len);
+                    }
+                    return r.string(s.substring(from, to));
+                }
+                case LEFT, RIGHT -> {
+                    String s = display(a[0]);
+                    int n = integer(a[1]);
+                    if (n < 0) throw unsupported(name + "() с отрицательной длиной");
+                    n = Math.min(n, s.length());
+                    return r.string(this == LEFT ? s.substring(0, n) : s.substring(s.length() - n));
+                }
+                case UPPER, LOWER -> {
+                    String s = display(a[0]);
+                    String t = this == UPPER ? s.toUpperCase(Locale.ROOT) : s.toLowerCase(Locale.ROOT);
+                    if (t.length() != s.length()) throw unsupported("смена регистра меняет длину строки");
+                    return r.string(t);
+                }
+                case TRIM_LEFT, TRIM_RIGHT, TRIM -> {
+                    String s = display(a[0]);
+                    int from = 0;
+                    int to = s.length();
+                    if (this != TRIM_RIGHT) {
+                        while (from < to && space(s.charAt(from))) from++;
+                    }
+                    if (this != TRIM_LEFT) {
+                        while (to > from && space(s.charAt(to - 1))) to--;
+                    }
+                    return r.string(s.substring(from, to));
+                }
+                case IS_BLANK -> {
+                    String s = display(a[0]);
+                    for (int i = 0; i < s.length(); i++) {
+                        if (!space(s.charAt(i))) return false;
+                    }
+                    return true;
+                }
+                case STR_FIND, FIND -> {
+                    String sub = display(a[1]);
+                    if (sub.isEmpty()) throw unsupported(name + "() с пустой подстрокой");
+                    return BigDecimal.valueOf(display(a[0]).indexOf(sub) + 1);
+                }
+                case STR_REPLACE -> {
+                    String from = display(a[1]);
+                    if (from.isEmpty()) throw unsupported("СтрЗаменить() с пустой подстрокой");
+                    return r.string(display(a[0]).replace(from, display(a[2])));
+                }
+                case STR_SPLIT -> {
+                    return split(r, display(a[0]), display(a[1]), a.length < 3 || truth(a[2]));
+                }
+                case STR_CONCAT -> {
+                    String separator = a.length > 1 ? display(a[1]) : "";
+                    StringBuilder sb = new StringBuilder();
+                    List<Object> items = array(a[0]).items;
+                    for (int i = 0; i < items.size(); i++) {
+                        if (i > 0) sb.append(separator);
+                        sb.append(display(items.get(i)));
+                    }
+                    return r.string(sb.toString());
+                }
+                case STR_COUNT -> {
+                    String s = display(a[0]);
+                    String sub = display(a[1]);
+                    if (sub.isEmpty()) throw unsupported("СтрЧислоВхождений() с пустой подстрокой");
+                    int count = 0;
+                    for (int i = s.indexOf(sub); i >= 0; i = s.indexOf(sub, i + sub.length())) count++;
+                    return BigDecimal.valueOf(count);
+                }
+                case STARTS_WITH, ENDS_WITH -> {
+                    String s = display(a[0]);
+                    String sub = display(a[1]);
+                    if (sub.isEmpty()) throw unsupported(name + "() с пустой подстрокой");
+                    return this == STARTS_WITH ? s.startsWith(sub) : s.endsWith(sub);
+                }
+                case CHAR -> {
+                    int code = integer(a[0]);
+                    if (code < 0 || code > 0xFFFF) throw unsupported("Символ(" + code + ")");
+                    return String.valueOf((char) code);
+                }
+                case CHAR_CODE -> {
+                    String s = display(a[0]);
+                    int pos = a.length > 1 ? integer(a[1]) : 1;
+                    if (pos < 1 || pos > s.length()) throw unsupported("КодСимвола() вне строки");
+                    return BigDecimal.valueOf(s.charAt(pos - 1));
+                }
+                case INT -> {
+                    return number(a[0]).setScale(0, RoundingMode.DOWN);
+                }
+                case ROUND -> {
+                    BigDecimal d = number(a[0]);
+                    int digits = a.length > 1 ? integer(a[1]) : 0;
+                    if (digits < 0 || digits > MAX_DIGITS) throw unsupported("Окр() с разрядностью " + digits);
+                    return d.scale() > digits ? d.setScale(digits, RoundingMode.HALF_UP) : d;
+                }
+                case MAX, MIN -> {
+                    BigDecimal best = number(a[0]);
+                    for (int i = 1; i < a.length; i++) {
+                        BigDecimal d = number(a[i]);
+                        if (this == MAX ? d.compareTo(best) > 0 : d.compareTo(best) < 0) best = d;
+                    }
+                    return best;
+                }
+                default -> throw unsupported("функция " + name);
+            }
+        }
+
+        /** СтрРазделить: разделитель — набор символов, каждый из которых делит строку. */
+        private static BslArray split(Run r, String s, String delimiters, boolean includeEmpty) {
+            if (delimiters.isEmpty()) throw unsupported("СтрРазделить() с пустым разделителем");
+            BslArray result = new BslArray();
+            if (s.isEmpty()) {
+                if (includeEmpty) result.items.add("");
+                return result;
+            }
+            int start = 0;
+            for (int i = 0; i <= s.length(); i++) {
+                if (i == s.length() || delimiters.indexOf(s.charAt(i)) >= 0) {
+                    if (includeEmpty || i > start) {
+                        r.allocate(16);
+                        result.items.add(r.string(s.substring(start, i)));
+                    }
+                    start = i + 1;
+                }
+            }
+            return result;
+        }
+    }
+}
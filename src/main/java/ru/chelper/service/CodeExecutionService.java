@@ -1,52 +1,106 @@
 package ru.chelper.service;
 
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.chelper.dto.JudgeRunResultDto;
 import ru.chelper.entity.Task;
-import ru.chelper.entity.TestCase;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
- * Реальная проверка кода на языке 1С через OneScript (oscript.io).
- * Скрипт запускается как процесс; вход теста подаётся в stdin, вывод сравнивается с ожидаемым.
- * Для вывода в консоль в коде нужно использовать Сообщить().
+ * Проверка кода на языке 1С. Тесты выполняет {@link CodeRunner}, выбранный параметром
+ * {@code code-runner.runner}; здесь — проверка входных данных и кэш вердиктов.
  */
 @Service
 public class CodeExecutionService {
 
     private static final Logger log = LoggerFactory.getLogger(CodeExecutionService.class);
-    private static final String SCRIPT_FILENAME = "Main.bsl";
-    private static final int DEFAULT_TIMEOUT_SEC = 10;
 
-    @Value("${code-runner.timeout-seconds:" + DEFAULT_TIMEOUT_SEC + "}")
+    @Value("${code-runner.use-real-runner:true}")
+    private boolean useRealRunner;
+
+    /** local — процессы oscript на этом узле, remote — узлы проверки по HTTP. */
+    @Value("${code-runner.runner:local}")
+    private String runnerName;
+
+    @Value("${code-runner.timeout-seconds:10}")
     private int timeoutSeconds;
 
-    @Value("${code-runner.oscript-command:oscript}")
-    private String oscriptCommand;
+    private final List<CodeRunner> runners;
+    private final VerdictCache verdictCache;
+    private final TaskCostEstimator costEstimator;
+    private CodeRunner runner;
 
-    @Value("${code-runner.work-dir:}")
-    private String workDirPath;
+    public CodeExecutionService(List<CodeRunner> runners, VerdictCache verdictCache, TaskCostEstimator costEstimator) {
+        this.runners = runners;
+        this.verdictCache = verdictCache;
+        this.costEstimator = costEstimator;
+    }
 
-    @Value("${code-runner.use-real-runner:true}")
-    private boolean useRealRunner;
+    @PostConstruct
+    void init() {
+        String name = useRealRunner ? runnerName : "stub";
+        runner = runners.stream()
+                .filter(r -> r.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Неизвестный code-runner.runner: " + name + " (доступны: "
+                        + runners.stream().map(CodeRunner::name).collect(Collectors.joining(", ")) + ")"));
+        log.info("Проверка кода: {}", runner.name());
+    }
 
     public static class TestRunResult {
         private final boolean passed;
         private final String message;
+        private final Integer mismatchOffset;
+        private final boolean skipped;
+        private final boolean error;
+        private final ResourceUsage usage;
 
         public TestRunResult(boolean passed, String message) {
+            this(passed, message, null);
+        }
+
+        public TestRunResult(boolean passed, String message, Integer mismatchOffset) {
+            this(passed, message, mismatchOffset, false);
+        }
+
+        TestRunResult(boolean passed, String message, Integer mismatchOffset, boolean skipped) {
+            this(passed, message, mismatchOffset, skipped, null);
+        }
+
+        TestRunResult(boolean passed, String message, Integer mismatchOffset, boolean skipped, ResourceUsage usage) {
+            this(passed, message, mismatchOffset, skipped, false, usage);
+        }
+
+        TestRunResult(boolean passed, String message, Integer mismatchOffset, boolean skipped, boolean error,
+                      ResourceUsage usage) {
             this.passed = passed;
             this.message = message;
+            this.mismatchOffset = mismatchOffset;
+            this.skipped = skipped;
+            this.error = error;
+            this.usage = usage;
+        }
+
+        /** Тот же результат с затраченными на тест ресурсами. */
+        TestRunResult withUsage(ResourceUsage usage) {
+            return new TestRunResult(passed, message, mismatchOffset, skipped, error, usage);
+        }
+
+        /** Процесс теста завершился ошибкой: код возврата, превышение лимита вывода, сбой запуска или хоста. */
+        public static TestRunResult error(String message) {
+            return new TestRunResult(false, message, null, false, true, null);
+        }
+
+        /** Тест не запускался: в режиме FAIL_FAST уже найден непройденный. */
+        public static TestRunResult skipped() {
+            return new TestRunResult(false, "Пропущен: проверка остановлена на первом непройденном тесте", null, true);
         }
 
         public boolean isPassed() {
@@ -56,6 +110,32 @@ public class CodeExecutionService {
         public String getMessage() {
             return message;
         }
+
+        /** Позиция (в символах ожидаемого вывода) первого расхождения; {@code null}, если тест пройден или упал. */
+        public Integer getMismatchOffset() {
+            return mismatchOffset;
+        }
+
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /** Ошибка процесса, а не ответ программы; может зависеть от нагрузки на узел. */
+        public boolean isError() {
+            return error;
+        }
+
+        /** Ресурсы процесса теста; {@code null}, если тест не запускался отдельным процессом. */
+        public ResourceUsage getUsage() {
+            return usage;
+        }
+    }
+
+    /**
+     * Ресурсы, затраченные процессом одного теста: время выполнения, процессорное время (user + sys)
+     * и пиковый объём резидентной памяти. Неизвестные значения — {@code null}.
+     */
+    public record ResourceUsage(Long wallMillis, Long cpuMillis, Long peakRssKb) {
     }
 
     public static class RunResult {
@@ -64,14 +144,23 @@ public class CodeExecutionService {
         private final int totalCount;
         private final String message;
         private final List<TestRunResult> testResults;
+        private final boolean timedOut;
+        private final boolean interpreted;
 
         public RunResult(boolean allPassed, int passedCount, int totalCount, String message,
                          List<TestRunResult> testResults) {
+            this(allPassed, passedCount, totalCount, message, testResults, false, false);
+        }
+
+        RunResult(boolean allPassed, int passedCount, int totalCount, String message,
+                  List<TestRunResult> testResults, boolean timedOut, boolean interpreted) {
             this.allPassed = allPassed;
             this.passedCount = passedCount;
             this.totalCount = totalCount;
             this.message = message;
             this.testResults = testResults != null ? testResults : new ArrayList<>();
+            this.timedOut = timedOut;
+            this.interpreted = interpreted;
         }
 
         public boolean isAllPassed() {
@@ -93,167 +182,131 @@ public class CodeExecutionService {
         public List<TestRunResult> getTestResults() {
             return testResults;
         }
-    }
 
-    public RunResult runTests(Task task, String code) {
-        if (code == null || code.isBlank()) {
-            return new RunResult(false, 0, 0, "Код не может быть пустым", new ArrayList<>());
-        }
-        List<TestCase> cases = task.getTestCases();
-        if (cases == null || cases.isEmpty()) {
-            return new RunResult(false, 0, 0, "Нет тестов для задачи", new ArrayList<>());
+        /** Проверка прервана: тест не уложился в таймаут, результатов по тестам нет. */
+        public boolean isTimedOut() {
+            return timedOut;
         }
 
-        if (!useRealRunner) {
-            return runTestsStub(task, code);
+        /** Тесты выполнил {@link BslInterpreter}, без процессов oscript. */
+        public boolean isInterpreted() {
+            return interpreted;
         }
 
-        Path workDir = null;
-        try {
-            if (workDirPath != null && !workDirPath.isBlank()) {
-                Path base = Paths.get(workDirPath);
-                Files.createDirectories(base);
-                workDir = Files.createTempDirectory(base, "1c-run-");
-            } else {
-                workDir = Files.createTempDirectory("1c-run-");
-            }
-            Path scriptPath = workDir.resolve(SCRIPT_FILENAME);
-            Files.writeString(scriptPath, code, StandardCharsets.UTF_8);
-
-            List<TestRunResult> results = new ArrayList<>();
-            int passed = 0;
-            for (TestCase tc : cases) {
-                String input = tc.getInput() != null ? tc.getInput() : "";
-                String expected = normalizeOutput(tc.getExpectedOutput());
-                ProcessResult out = runProcess(workDir, scriptPath, input);
-                String actual = normalizeOutput(out.stdout);
-                // OneScript может выводить Сообщить() в stderr — тогда сравниваем и с stderr
-                if (actual.isEmpty() && out.stderr != null && !out.stderr.isBlank()) {
-                    actual = normalizeOutput(out.stderr);
-                    log.debug("Использован stderr как вывод: [{}]", actual);
-                }
-                log.info("Тест: ожидалось=[{}], получено=[{}], exitCode={}, stderr=[{}]", expected, actual, out.exitCode, out.stderr != null ? out.stderr.trim() : "");
-                boolean outputMatch = expected != null && expected.equals(actual);
-                boolean ok = outputMatch && !out.error;
-                if (out.error) {
-                    String errMsg = out.stderr != null && !out.stderr.isBlank() ? out.stderr.trim() : "код возврата " + out.exitCode;
-                    results.add(new TestRunResult(false, "Ошибка выполнения: " + errMsg));
-                } else {
-                    results.add(new TestRunResult(ok, ok ? "OK" : "Ожидалось: «" + expected + "», получено: «" + actual + "»"));
-                    if (ok) passed++;
+        /** Представление для передачи между узлами проверки и для сохранения кэша вердиктов. */
+        JudgeRunResultDto toDto() {
+            JudgeRunResultDto dto = new JudgeRunResultDto();
+            dto.setAllPassed(allPassed);
+            dto.setPassedCount(passedCount);
+            dto.setTotalCount(totalCount);
+            dto.setMessage(message);
+            dto.setTimedOut(timedOut);
+            dto.setInterpreted(interpreted);
+            List<JudgeRunResultDto.TestResult> tests = new ArrayList<>();
+            for (TestRunResult r : testResults) {
+                JudgeRunResultDto.TestResult t = new JudgeRunResultDto.TestResult();
+                t.setPassed(r.isPassed());
+                t.setSkipped(r.isSkipped());
+                t.setError(r.isError());
+                t.setMessage(r.getMessage());
+                t.setMismatchOffset(r.getMismatchOffset());
+                if (r.getUsage() != null) {
+                    t.setWallMillis(r.getUsage().wallMillis());
+                    t.setCpuMillis(r.getUsage().cpuMillis());
+                    t.setPeakRssKb(r.getUsage().peakRssKb());
                 }
+                tests.add(t);
             }
-            boolean allPassed = passed == cases.size();
-            String message = allPassed
-                    ? "Все тесты пройдены."
-                    : String.format("Пройдено %d из %d тестов.", passed, cases.size());
-            return new RunResult(allPassed, passed, cases.size(), message, results);
-        } catch (IOException e) {
-            return new RunResult(false, 0, cases.size(), "Ошибка запуска: " + e.getMessage(), new ArrayList<>());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return new RunResult(false, 0, cases.size(), "Проверка прервана по таймауту.", new ArrayList<>());
-        } catch (TimeoutException e) {
-            return new RunResult(false, 0, cases.size(), "Превышено время выполнения (таймаут " + timeoutSeconds + " с).", new ArrayList<>());
-        } finally {
-            if (workDir != null) {
-                try {
-                    deleteRecursively(workDir);
-                } catch (Exception ignored) {
+            dto.setTestResults(tests);
+            return dto;
+        }
+
+        static RunResult fromDto(JudgeRunResultDto dto) {
+            List<TestRunResult> tests = new ArrayList<>();
+            if (dto.getTestResults() != null) {
+                for (JudgeRunResultDto.TestResult t : dto.getTestResults()) {
+                    ResourceUsage usage = t.getWallMillis() != null
+                            ? new ResourceUsage(t.getWallMillis(), t.getCpuMillis(), t.getPeakRssKb())
+                            : null;
+                    tests.add(new TestRunResult(t.isPassed(), t.getMessage(), t.getMismatchOffset(), t.isSkipped(),
+                            t.isError(), usage));
                 }
             }
+            return new RunResult(dto.isAllPassed(), dto.getPassedCount(), dto.getTotalCount(), dto.getMessage(), tests,
+                    dto.isTimedOut(), dto.isInterpreted());
         }
     }
 
-    /** Заглушка: проверка по вхождению ожидаемой строки в код (если OneScript недоступен). */
-    private RunResult runTestsStub(Task task, String code) {
-        List<TestCase> cases = task.getTestCases();
-        List<TestRunResult> results = new ArrayList<>();
-        int passed = 0;
-        for (TestCase tc : cases) {
-            String expected = normalizeOutput(tc.getExpectedOutput());
-            boolean ok = expected != null && code.contains(expected);
-            results.add(new TestRunResult(ok, ok ? "OK" : "Ожидаемый вывод не совпал (режим-заглушка)"));
-            if (ok) passed++;
-        }
-        boolean allPassed = passed == cases.size();
-        String message = allPassed ? "Все тесты пройдены (режим-заглушка)." : String.format("Пройдено %d из %d тестов.", passed, cases.size());
-        return new RunResult(allPassed, passed, cases.size(), message, results);
-    }
-
-    private ProcessResult runProcess(Path workDir, Path scriptPath, String stdinInput) throws IOException, InterruptedException, TimeoutException {
-        // Рабочая директория процесса — не /tmp, чтобы избежать noexec (Permission denied)
-        ProcessBuilder pb = new ProcessBuilder(oscriptCommand, scriptPath.toAbsolutePath().toString())
-                .directory(workDir.toFile())
-                .redirectErrorStream(false);
-        Process p = pb.start();
-
-        try (OutputStream out = p.getOutputStream()) {
-            if (stdinInput != null && !stdinInput.isEmpty()) {
-                out.write(stdinInput.getBytes(StandardCharsets.UTF_8));
-            }
+    /** Проверка по уже загруженным тестам — не обращается к БД и может вызываться вне транзакции. */
+    public RunResult runTests(Long taskId, TestSuite suite, String code, Task.EvaluationMode evaluationMode) {
+        if (code == null || code.isBlank()) {
+            return new RunResult(false, 0, 0, "Код не может быть пустым", new ArrayList<>());
+        }
+        if (suite == null || suite.size() == 0) {
+            return new RunResult(false, 0, 0, "Нет тестов для задачи", new ArrayList<>());
         }
 
-        ByteArrayOutputStream stdoutBa = new ByteArrayOutputStream();
-        ByteArrayOutputStream stderrBa = new ByteArrayOutputStream();
-        try (InputStream in = p.getInputStream(); InputStream err = p.getErrorStream()) {
-            Future<?> fOut = runCopy(in, stdoutBa);
-            Future<?> fErr = runCopy(err, stderrBa);
-            boolean finished = p.waitFor(timeoutSeconds, TimeUnit.SECONDS);
-            fOut.cancel(true);
-            fErr.cancel(true);
-            if (!finished) {
-                p.destroyForcibly();
-                throw new TimeoutException();
-            }
+        if (!useRealRunner) {
+            return runner.run(suite, code, evaluationMode);
         }
 
-        String stdout = stdoutBa.toString(StandardCharsets.UTF_8);
-        String stderr = stderrBa.toString(StandardCharsets.UTF_8);
-        return new ProcessResult(p.exitValue(), stdout, stderr, p.exitValue() != 0);
+        String cacheKey = VerdictCache.key(taskId, evaluationMode, suite.getHash(), code);
+        RunResult cached = verdictCache.get(cacheKey);
+        if (cached != null) {
+            // Процессы не запускались — ресурсы прошлой проверки к этой не относятся
+            return withoutUsage(cached);
+        }
+        RunResult result = runner.run(suite, code, evaluationMode);
+        recordCost(taskId, suite, result);
+        if (isDeterministic(result)) {
+            verdictCache.put(cacheKey, result);
+        }
+        return result;
     }
 
-    private Future<?> runCopy(InputStream in, OutputStream out) {
-        ExecutorService exec = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r, "code-runner-copy");
-            t.setDaemon(true);
-            return t;
-        });
-        return exec.submit(() -> {
-            try {
-                in.transferTo(out);
-            } catch (IOException ignored) {
-            }
-        });
+    /**
+     * Кэшируются только вердикты, которые повторятся при той же проверке: все тесты пройдены или ответ неверен
+     * при нормальном завершении процесса. Таймауты (без результатов по тестам), ошибки выполнения и превышение
+     * лимита вывода могут быть вызваны нагрузкой — не запустился oscript, упал тёплый хост — и не кэшируются.
+     */
+    private static boolean isDeterministic(RunResult r) {
+        return !r.getTestResults().isEmpty() && r.getTestResults().stream().noneMatch(TestRunResult::isError);
     }
 
-    private static String normalizeOutput(String s) {
-        if (s == null) return "";
-        return s.trim().replace("\r\n", "\n").replace("\r", "\n");
+    private static RunResult withoutUsage(RunResult r) {
+        List<TestRunResult> tests = r.getTestResults().stream().map(t -> t.withUsage(null)).toList();
+        return new RunResult(r.isAllPassed(), r.getPassedCount(), r.getTotalCount(), r.getMessage(), tests,
+                r.isTimedOut(), r.isInterpreted());
     }
 
-    private static void deleteRecursively(Path path) throws IOException {
-        if (Files.isDirectory(path)) {
-            try (var stream = Files.list(path)) {
-                for (Path child : stream.toList()) {
-                    deleteRecursively(child);
+    /**
+     * Учитывает прогон в оценке стоимости задачи: складывает время тестов, выполненных процессами, — так
+     * параллельный запуск не занижает оценку, а повторы одинаковых тестов (они не выполнялись и замеров
+     * не имеют) её не разбавляют. Прогон, прерванный таймаутом, стоит таймаут на каждый различный тест.
+     * Прогоны интерпретатора в оценку не входят: они на порядки быстрее oscript, и решения той же задачи,
+     * ушедшие в oscript, планировались бы как дешёвые.
+     */
+    private void recordCost(Long taskId, TestSuite suite, RunResult result) {
+        if (result.isInterpreted()) {
+            return;
+        }
+        int testsRun = 0;
+        long millis = 0;
+        if (result.isTimedOut()) {
+            testsRun = suite.getDistinctTests().size();
+            millis = TimeUnit.SECONDS.toMillis(timeoutSeconds) * testsRun;
+        } else {
+            for (TestRunResult r : result.getTestResults()) {
+                if (!r.isSkipped() && r.getUsage() != null && r.getUsage().wallMillis() != null) {
+                    testsRun++;
+                    millis += r.getUsage().wallMillis();
                 }
             }
         }
-        Files.delete(path);
-    }
-
-    private static class ProcessResult {
-        final int exitCode;
-        final String stdout;
-        final String stderr;
-        final boolean error;
-
-        ProcessResult(int exitCode, String stdout, String stderr, boolean error) {
-            this.exitCode = exitCode;
-            this.stdout = stdout;
-            this.stderr = stderr;
-            this.error = error;
+        try {
+            costEstimator.record(taskId, testsRun, millis);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось обновить оценку времени проверки задачи {}: {}", taskId, e.getMessage());
         }
     }
 }
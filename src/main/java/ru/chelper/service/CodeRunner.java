@@ -0,0 +1,17 @@
+package ru.chelper.service;
+
+import ru.chelper.entity.Task;
+
+/**
+ * Способ выполнения тестов отправки. Реализация выбирается параметром {@code code-runner.runner}:
+ * {@code local} — процессы oscript на этом узле, {@code remote} — отдельные узлы проверки по HTTP,
+ * {@code stub} — проверка без запуска кода.
+ */
+public interface CodeRunner {
+
+    /** Значение {@code code-runner.runner}, которым выбирается реализация. */
+    String name();
+
+    /** Выполняет тесты; не обращается к БД и вызывается вне транзакции. */
+    CodeExecutionService.RunResult run(TestSuite suite, String code, Task.EvaluationMode evaluationMode);
+}
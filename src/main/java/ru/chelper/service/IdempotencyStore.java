@@ -0,0 +1,189 @@
+package ru.chelper.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Ответы на запросы с заголовком {@code Idempotency-Key}. Клиент, не дождавшийся ответа (обрыв мобильной сети),
+ * повторяет запрос с тем же ключом и получает сохранённый ответ, а действие второй раз не выполняется. Ключи
+ * у каждого пользователя свои. Сохраняются только успешные ответы: после ошибки (400, 429, 503) повтор выполняется
+ * заново. Повтор, пришедший во время исходного запроса, ждёт его ответа.
+ * <p>
+ * Ответ хранится {@code app.idempotency.ttl-seconds} с первого запроса, число ключей ограничено {@code max-size} —
+ * вытесняются давно не использованные. Хранилище в памяти узла: повтор, попавший на другой узел, выполнится снова.
+ * Для отправки решения это безопасно — тот же код присоединяется к уже идущей попытке ({@link AttemptService#submit}).
+ */
+@Service
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long WAIT_SECONDS = 60;
+
+    @Value("${app.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${app.idempotency.max-size:10000}")
+    private int maxSize;
+
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final JudgeMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private Map<Key, Entry> entries;
+
+    public IdempotencyStore(JudgeMetrics metrics, ObjectMapper objectMapper) {
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize || eldest.getValue().isExpired(Instant.now());
+            }
+        };
+        metrics.counter("judge.idempotency.requests", "Запросы с Idempotency-Key", "result", "replay", replays, AtomicLong::get);
+        metrics.counter("judge.idempotency.requests", "Запросы с Idempotency-Key", "result", "executed", executions, AtomicLong::get);
+        metrics.gauge("judge.idempotency.keys", "Сохранённых ключей идемпотентности", this, IdempotencyStore::size);
+    }
+
+    /**
+     * Выполняет {@code action} один раз для ключа {@code key} пользователя {@code userId}; без ключа — просто выполняет.
+     *
+     * @param request метод и путь запроса
+     * @param body    тело запроса; тот же ключ с другим путём или телом — ошибка клиента
+     */
+    public ResponseEntity<?> execute(Long userId, String key, String request, Object body,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", HEADER + " длиннее " + MAX_KEY_LENGTH + " символов"));
+        }
+        Key id = new Key(userId, key);
+        String fingerprint = request + " " + bodyHash(body);
+        Entry existing;
+        Entry entry = new Entry(fingerprint, Instant.now().plusSeconds(ttlSeconds));
+        synchronized (entries) {
+            existing = entries.get(id);
+            if (existing != null && existing.isExpired(Instant.now())) {
+                entries.remove(id);
+                existing = null;
+            }
+            if (existing == null) {
+                entries.put(id, entry);
+            }
+        }
+        if (existing != null) {
+            // Ждём ответа вне блокировки: исходный запрос может ещё выполняться
+            return replay(existing, fingerprint);
+        }
+        executions.incrementAndGet();
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            forget(id, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            forget(id, entry);
+        }
+        entry.response.complete(response);
+        return response;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private ResponseEntity<?> replay(Entry entry, String fingerprint) {
+        if (!entry.fingerprint.equals(fingerprint)) {
+            return ResponseEntity.unprocessableEntity()
+                    .body(Map.of("error", HEADER + " уже использован для другого запроса"));
+        }
+        try {
+            ResponseEntity<?> response = entry.response.get(WAIT_SECONDS, TimeUnit.SECONDS);
+            replays.incrementAndGet();
+            return response;
+        } catch (TimeoutException e) {
+            return inProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return inProgress();
+        } catch (ExecutionException e) {
+            // Исходный запрос упал — повтор получает ту же ошибку
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** SHA-256 тела запроса в JSON — отпечаток, по которому повтор отличается от другого запроса с тем же ключом. */
+    private String bodyHash(Object body) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(objectMapper.writeValueAsBytes(body)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void forget(Key id, Entry entry) {
+        synchronized (entries) {
+            entries.remove(id, entry);
+        }
+    }
+
+    private static ResponseEntity<?> inProgress() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "Запрос с этим " + HEADER + " ещё выполняется. Повторите позже."));
+    }
+
+    private record Key(Long userId, String key) {
+    }
+
+    private static final class Entry {
+        /** Метод, путь и SHA-256 тела исходного запроса. */
+        final String fingerprint;
+        final Instant expiresAt;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+
+        Entry(String fingerprint, Instant expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(Instant now) {
+            return expiresAt.isBefore(now);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ru.chelper.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Метрики проверки решений (Micrometer), доступные администратору в формате Prometheus
+ * на {@code /actuator/prometheus}. Все имена начинаются с {@code judge.}.
+ */
+@Service
+public class JudgeMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer queueWait;
+    private final Timer spawn;
+    private final Timer testDuration;
+    private final Counter timeouts;
+    private final Counter outputLimitKills;
+
+    public JudgeMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.queueWait = Timer.builder("judge.queue.wait")
+                .description("Время от отправки решения до начала его проверки")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.spawn = Timer.builder("judge.process.spawn")
+                .description("Время запуска процесса oscript")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.testDuration = Timer.builder("judge.test.duration")
+                .description("Время выполнения одного теста отдельным процессом")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.timeouts = Counter.builder("judge.test.timeouts")
+                .description("Процессы, убитые по таймауту")
+                .register(registry);
+        this.outputLimitKills = Counter.builder("judge.test.output.limit")
+                .description("Процессы, убитые за превышение предела вывода")
+                .register(registry);
+    }
+
+    public void recordQueueWait(Duration wait) {
+        queueWait.record(wait);
+    }
+
+    public void recordSpawn(long nanos) {
+        spawn.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTestDuration(long millis) {
+        testDuration.record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void timeout() {
+        timeouts.increment();
+    }
+
+    public void outputLimitKill() {
+        outputLimitKills.increment();
+    }
+
+    /** Вердикт теста: ok, wrong_answer, runtime_error, output_limit или skipped. */
+    public void testVerdict(String verdict) {
+        registry.counter("judge.test.verdicts", "verdict", verdict).increment();
+    }
+
+    /** Итог проверки попытки: passed, failed или error (проверка не состоялась). */
+    public void attemptResult(String result) {
+        registry.counter("judge.attempts", "result", result).increment();
+    }
+
+    /** Тесты, не выполнявшиеся из-за одинакового теста в наборе: им достался его результат. */
+    public void duplicateTests(int count) {
+        registry.counter("judge.test.duplicates").increment(count);
+    }
+
+    /** Отправка того же кода, что уже ждёт проверки, присоединилась к ней вместо новой попытки. */
+    public void submissionCoalesced() {
+        registry.counter("judge.submissions.coalesced").increment();
+    }
+
+    /** Исход встроенного интерпретатора для отправки: interpreted или причина перехода на oscript. */
+    public void interpreterRun(String result) {
+        registry.counter("judge.interpreter.runs", "result", result).increment();
+    }
+
+    /** Показание, которое вычисляется при каждом чтении метрик. */
+    public <T> void gauge(String name, String description, T owner, ToDoubleFunction<T> value) {
+        Gauge.builder(name, owner, value).description(description).register(registry);
+    }
+
+    /** Счётчик, значение которого ведёт сам {@code owner}, например попадания в кэш. */
+    public <T> void counter(String name, String description, String tagKey, String tagValue,
+                            T owner, ToDoubleFunction<T> value) {
+        FunctionCounter.builder(name, owner, value).description(description).tag(tagKey, tagValue).register(registry);
+    }
+}
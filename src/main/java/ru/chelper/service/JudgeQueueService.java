@@ -0,0 +1,257 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.chelper.entity.SubmissionJob;
+import ru.chelper.repository.SubmissionJobRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Очередь проверки решений в таблице {@code submission_jobs}, общая для всех экземпляров приложения.
+ * Отправка только добавляет задание и возвращается сразу; воркеры каждого узла забирают задания
+ * через {@code SELECT ... FOR UPDATE SKIP LOCKED}, поэтому любое решение может проверить любой узел.
+ * Задание арендуется на {@code lease-seconds} и продлевается, пока идёт проверка; если узел упал,
+ * аренда истекает и задание забирает другой узел.
+ * <p>
+ * Чтобы один пользователь не занял все процессы oscript, у каждого пользователя на проверке не больше
+ * {@code max-per-user} решений, а свободные задания выдаются по кругу между пользователями.
+ * Среди заданий одного круга сначала выдаются те, что дешевле по оценке {@link TaskCostEstimator},
+ * с учётом времени ожидания. Решения одного пользователя по одной задаче проверяются по очереди, а не параллельно.
+ */
+@Service
+public class JudgeQueueService {
+
+    private static final Logger log = LoggerFactory.getLogger(JudgeQueueService.class);
+
+    private final JudgeService judgeService;
+    private final CodeExecutionService codeExecutionService;
+    private final SubmissionJobRepository jobRepository;
+    private final AdmissionControlService admissionControl;
+    private final TaskCostEstimator costEstimator;
+    private final int workerCount;
+    private final int queueCapacity;
+    private final int maxPerUser;
+    private final int retryAfterSeconds;
+    private final int leaseSeconds;
+    private final long pollMillis;
+    private final int maxClaims;
+    private final String nodeId;
+    private final Set<Long> active = ConcurrentHashMap.newKeySet();
+    private final Semaphore wakeups = new Semaphore(0);
+    private final ExecutorService workers;
+    private final ScheduledExecutorService leaseKeeper;
+    private volatile boolean running = true;
+
+    public JudgeQueueService(JudgeService judgeService,
+                             CodeExecutionService codeExecutionService,
+                             SubmissionJobRepository jobRepository,
+                             AdmissionControlService admissionControl,
+                             TaskCostEstimator costEstimator,
+                             JudgeMetrics metrics,
+                             @Value("${code-runner.judge.workers:4}") int workerCount,
+                             @Value("${code-runner.judge.queue-capacity:100}") int queueCapacity,
+                             @Value("${code-runner.judge.max-per-user:2}") int maxPerUser,
+                             @Value("${code-runner.judge.retry-after-seconds:5}") int retryAfterSeconds,
+                             @Value("${code-runner.judge.lease-seconds:120}") int leaseSeconds,
+                             @Value("${code-runner.judge.poll-millis:1000}") long pollMillis,
+                             @Value("${code-runner.judge.max-claims:3}") int maxClaims,
+                             @Value("${code-runner.judge.node-id:}") String nodeId) {
+        this.judgeService = judgeService;
+        this.codeExecutionService = codeExecutionService;
+        this.jobRepository = jobRepository;
+        this.admissionControl = admissionControl;
+        this.costEstimator = costEstimator;
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+        this.maxPerUser = maxPerUser;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.leaseSeconds = leaseSeconds;
+        this.pollMillis = pollMillis;
+        this.maxClaims = maxClaims;
+        this.nodeId = nodeId != null && !nodeId.isBlank() ? nodeId : ManagementFactory.getRuntimeMXBean().getName();
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(workerCount, 1), r -> {
+            Thread t = new Thread(r, "judge-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.leaseKeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "judge-lease");
+            t.setDaemon(true);
+            return t;
+        });
+        metrics.gauge("judge.queue.depth", "Решения в очереди на всех узлах, ещё не взятые на проверку",
+                jobRepository, SubmissionJobRepository::countByLeasedUntilIsNull);
+        metrics.gauge("judge.checks.active", "Решения, которые проверяет этот узел", active, Set::size);
+    }
+
+    /** Запускает воркеры узла, когда схема БД уже готова; 0 воркеров — узел только принимает отправки. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        int orphaned = judgeService.enqueueOrphanedAttempts();
+        if (orphaned > 0) {
+            log.info("В очередь возвращено попыток без задания: {}", orphaned);
+        }
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::pollLoop);
+        }
+        long renewEvery = Math.max(leaseSeconds / 3, 1);
+        leaseKeeper.scheduleWithFixedDelay(this::renewLeases, renewEvery, renewEvery, TimeUnit.SECONDS);
+        log.info("Очередь проверки: узел {}, воркеров {}", nodeId, workerCount);
+    }
+
+    /**
+     * Ставит попытку в очередь в текущей транзакции — задание появится вместе с попыткой или не появится вовсе.
+     * Вызывающий должен заблокировать строку пользователя, иначе параллельные отправки обойдут лимит на пользователя.
+     * После коммита будит свободные воркеры этого узла, не дожидаясь следующего опроса.
+     *
+     * @throws SubmissionRejectedException если у пользователя уже {@code max-per-user} решений на проверке,
+     *                                     очередь заполнена или результат не успеет к целевому времени
+     */
+    public void enqueue(Long attemptId, Long userId, Long taskId, int testCount) {
+        if (maxPerUser > 0 && jobRepository.countByUserId(userId) >= maxPerUser) {
+            throw new SubmissionRejectedException(SubmissionRejectedException.Reason.USER_LIMIT,
+                    "У вас уже " + maxPerUser + " решения на проверке. Дождитесь результата и повторите отправку.",
+                    retryAfterSeconds);
+        }
+        long queueDepth = jobRepository.countByLeasedUntilIsNull();
+        if (queueDepth >= queueCapacity) {
+            throw new SubmissionRejectedException(SubmissionRejectedException.Reason.QUEUE_FULL,
+                    "Очередь проверки переполнена. Повторите отправку позже.", retryAfterSeconds);
+        }
+        admissionControl.check(queueDepth);
+        SubmissionJob job = new SubmissionJob();
+        job.setAttemptId(attemptId);
+        job.setUserId(userId);
+        job.setTaskId(taskId);
+        job.setExpectedCostMillis(costEstimator.expectedCostMillis(taskId, testCount));
+        jobRepository.save(job);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            wakeups.release();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeups.release();
+            }
+        });
+    }
+
+    /** Место попытки в очереди, начиная с 1; {@code null}, если её задание уже проверяется или завершено. */
+    public Integer getQueuePosition(Long attemptId) {
+        Long ahead = jobRepository.countAhead(attemptId, Instant.now());
+        return ahead != null ? ahead.intValue() + 1 : null;
+    }
+
+    /** Количество заданий в очереди и в работе на всех узлах. */
+    public long getPendingCount() {
+        return jobRepository.count();
+    }
+
+    /** Состояние приёма отправок на этом узле. */
+    public Map<String, Object> getAdmissionState() {
+        return admissionControl.getState(jobRepository.countByLeasedUntilIsNull());
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                Optional<JudgeService.Claim> claim = judgeService.claim(nodeId, leaseSeconds);
+                if (claim.isPresent()) {
+                    handle(claim.get());
+                } else {
+                    wakeups.tryAcquire(pollMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // БД недоступна и т.п. — не крутимся в цикле, ждём следующего опроса
+                log.warn("Ошибка опроса очереди проверки: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(JudgeService.Claim claim) {
+        Long attemptId = claim.attemptId();
+        if (claim.claims() > maxClaims) {
+            // Узлы уже несколько раз падали на этом решении — больше не пробуем
+            judgeService.fail(attemptId, "Проверка прервана: решение не удалось проверить за " + maxClaims + " попыток.");
+            return;
+        }
+        active.add(attemptId);
+        try {
+            process(attemptId);
+        } catch (Exception e) {
+            log.error("Ошибка проверки попытки {}", attemptId, e);
+            judgeService.fail(attemptId, "Внутренняя ошибка проверки: " + e.getMessage());
+        } finally {
+            active.remove(attemptId);
+        }
+    }
+
+    /** Проверка в три фазы: чтение (транзакция) → выполнение кода (без соединения с БД) → запись (транзакция). */
+    void process(Long attemptId) {
+        Optional<JudgeService.Job> started = judgeService.start(attemptId);
+        if (started.isEmpty()) {
+            return;
+        }
+        JudgeService.Job job = started.get();
+        if (job.alreadySolved()) {
+            judgeService.fail(attemptId, "Задача уже сдана. Повторная отправка недоступна.");
+            return;
+        }
+        CodeExecutionService.RunResult result = codeExecutionService.runTests(job.taskId(), job.suite(), job.code(), job.evaluationMode());
+        if (!running) {
+            // Узел останавливается, и проверка могла быть прервана — отдаём задание другим узлам
+            boolean interrupted = Thread.interrupted();
+            judgeService.release(nodeId, attemptId);
+            if (interrupted) Thread.currentThread().interrupt();
+            return;
+        }
+        judgeService.complete(attemptId, result);
+    }
+
+    private void renewLeases() {
+        try {
+            judgeService.extendLeases(nodeId, List.copyOf(active), leaseSeconds);
+        } catch (Exception e) {
+            log.warn("Не удалось продлить аренду заданий: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Прерванные проверки возвращаются в очередь; если узел не успеет, задания перейдут к другим после истечения аренды
+        running = false;
+        leaseKeeper.shutdownNow();
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
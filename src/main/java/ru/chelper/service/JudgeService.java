@@ -0,0 +1,179 @@
+package ru.chelper.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.chelper.entity.Attempt;
+import ru.chelper.entity.AttemptTestResult;
+import ru.chelper.entity.Task;
+import ru.chelper.repository.AttemptRepository;
+import ru.chelper.repository.SubmissionJobRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Проверка попыток в фоне: вызывается воркерами {@link JudgeQueueService}.
+ * Каждый шаг жизненного цикла — отдельная короткая транзакция: статус RUNNING виден при опросе,
+ * а соединение с БД не удерживается, пока выполняется код пользователя.
+ */
+@Service
+public class JudgeService {
+
+    private final AttemptRepository attemptRepository;
+    private final SubmissionJobRepository jobRepository;
+    private final JudgeMetrics metrics;
+    private final TestSuiteCache testSuiteCache;
+
+    public JudgeService(AttemptRepository attemptRepository, SubmissionJobRepository jobRepository, JudgeMetrics metrics,
+                        TestSuiteCache testSuiteCache) {
+        this.attemptRepository = attemptRepository;
+        this.jobRepository = jobRepository;
+        this.metrics = metrics;
+        this.testSuiteCache = testSuiteCache;
+    }
+
+    /**
+     * Забирает из {@code submission_jobs} старейшее свободное задание и арендует его для узла {@code node}.
+     * Строка блокируется до конца этой короткой транзакции; другие узлы её пропускают (SKIP LOCKED).
+     */
+    @Transactional
+    public Optional<Claim> claim(String node, int leaseSeconds) {
+        Instant now = Instant.now();
+        return jobRepository.lockNextAvailable(now).map(job -> {
+            job.setLeasedBy(node);
+            job.setLeasedUntil(now.plusSeconds(leaseSeconds));
+            job.setClaims(job.getClaims() + 1);
+            jobRepository.save(job);
+            if (job.getClaims() == 1) {
+                // Повторные выдачи после падения узла исказили бы время ожидания в очереди
+                metrics.recordQueueWait(Duration.between(job.getCreatedAt(), now));
+            }
+            return new Claim(job.getAttemptId(), job.getClaims());
+        });
+    }
+
+    /** Продлевает аренду заданий, которые узел ещё проверяет. */
+    @Transactional
+    public void extendLeases(String node, Collection<Long> attemptIds, int leaseSeconds) {
+        if (!attemptIds.isEmpty()) {
+            jobRepository.extendLeases(node, attemptIds, Instant.now().plusSeconds(leaseSeconds));
+        }
+    }
+
+    /** Снимает аренду узла с задания, чтобы его сразу забрал другой узел. */
+    @Transactional
+    public void release(String node, Long attemptId) {
+        jobRepository.releaseLease(node, attemptId);
+    }
+
+    /** Создаёт задания для попыток, оставшихся в очереди без них; повторный вызов ничего не меняет. */
+    @Transactional
+    public int enqueueOrphanedAttempts() {
+        return jobRepository.enqueueOrphanedAttempts();
+    }
+
+    /**
+     * Первая фаза проверки: короткая транзакция помечает попытку RUNNING и загружает всё,
+     * что нужно для запуска. Код выполняется уже без транзакции, чтобы не держать соединение из пула.
+     * Тесты загружаются из базы, только если подготовленного набора текущей версии нет в {@link TestSuiteCache}.
+     */
+    @Transactional
+    public Optional<Job> start(Long attemptId) {
+        Attempt attempt = findAttempt(attemptId);
+        if (attempt.getStatus() == Attempt.Status.DONE) {
+            // Результат уже записан — задание осталось от прерванного узла
+            jobRepository.deleteByAttemptId(attemptId);
+            return Optional.empty();
+        }
+        Task task = attempt.getTask();
+        boolean alreadySolved = attemptRepository.existsByTaskIdAndUserIdAndPassedTrue(task.getId(), attempt.getUser().getId());
+        attempt.setStatus(Attempt.Status.RUNNING);
+        attempt.setStartedAt(Instant.now());
+        attemptRepository.save(attempt);
+        Task.EvaluationMode mode = task.getEvaluationMode() != null ? task.getEvaluationMode() : Task.EvaluationMode.FULL;
+        TestSuite suite = testSuiteCache.get(task.getId(), task.getTestsVersion(), () -> List.copyOf(task.getTestCases()));
+        return Optional.of(new Job(task.getId(), attempt.getCode(), suite, mode, alreadySolved));
+    }
+
+    /** Последняя фаза проверки: короткая транзакция сохраняет результат и удаляет задание из очереди. */
+    @Transactional
+    public void complete(Long attemptId, CodeExecutionService.RunResult result) {
+        Attempt attempt = findAttempt(attemptId);
+        attempt.setPassed(result.isAllPassed());
+        attempt.setPassedTests(result.getPassedCount());
+        attempt.setTotalTests(result.getTotalCount());
+        attempt.setMessage(result.getMessage());
+        attempt.setStatus(Attempt.Status.DONE);
+        attempt.setFinishedAt(Instant.now());
+        attempt.getTestResults().clear();
+        List<CodeExecutionService.TestRunResult> tests = result.getTestResults();
+        for (int i = 0; i < tests.size(); i++) {
+            attempt.getTestResults().add(toEntity(attempt, i, tests.get(i)));
+        }
+        attemptRepository.save(attempt);
+        jobRepository.deleteByAttemptId(attemptId);
+        metrics.attemptResult(result.isAllPassed() ? "passed" : "failed");
+    }
+
+    /** Завершает попытку с ошибкой, если проверка упала вне кода пользователя. */
+    @Transactional
+    public void fail(Long attemptId, String message) {
+        attemptRepository.findById(attemptId).ifPresent(attempt -> {
+            attempt.setPassed(false);
+            attempt.setPassedTests(0);
+            attempt.setMessage(message);
+            attempt.setStatus(Attempt.Status.DONE);
+            attempt.setFinishedAt(Instant.now());
+            attemptRepository.save(attempt);
+        });
+        jobRepository.deleteByAttemptId(attemptId);
+        metrics.attemptResult("error");
+    }
+
+    /**
+     * p95 времени проверки последних {@code window} попыток на всех узлах; -1, если их меньше {@code minSamples}.
+     * Вызывается при отправке, внутри её транзакции, поэтому читает в своей: ошибка запроса не должна пометить
+     * транзакцию отправки для отката — контроль нагрузки при недоступной статистике пропускает отправки.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public long recentRunP95Millis(int window, int minSamples) {
+        AttemptRepository.RecentRuns runs = attemptRepository.recentRuns(window);
+        if (runs == null || runs.getSamples() == null || runs.getSamples() < minSamples || runs.getP95Millis() == null) {
+            return -1;
+        }
+        return Math.round(runs.getP95Millis());
+    }
+
+    private static AttemptTestResult toEntity(Attempt attempt, int index, CodeExecutionService.TestRunResult r) {
+        AttemptTestResult entity = new AttemptTestResult();
+        entity.setAttempt(attempt);
+        entity.setTestIndex(index);
+        entity.setPassed(r.isPassed());
+        entity.setSkipped(r.isSkipped());
+        entity.setMessage(r.getMessage());
+        if (r.getUsage() != null) {
+            entity.setWallMillis(r.getUsage().wallMillis());
+            entity.setCpuMillis(r.getUsage().cpuMillis());
+            entity.setPeakRssKb(r.getUsage().peakRssKb());
+        }
+        return entity;
+    }
+
+    private Attempt findAttempt(Long attemptId) {
+        return attemptRepository.findById(attemptId)
+                .orElseThrow(() -> new IllegalArgumentException("Попытка не найдена"));
+    }
+
+    /** Задание, арендованное узлом; {@code claims} — сколько раз его уже забирали. */
+    public record Claim(Long attemptId, int claims) {
+    }
+
+    /** Данные для запуска, загруженные в первой фазе; набор тестов не ссылается на сущности сессии. */
+    public record Job(Long taskId, String code, TestSuite suite,
+                      Task.EvaluationMode evaluationMode, boolean alreadySolved) {
+    }
+}
@@ -0,0 +1,64 @@
+package ru.chelper.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.chelper.dto.JudgeRunRequest;
+import ru.chelper.dto.JudgeRunResultDto;
+import ru.chelper.dto.TestCaseDto;
+import ru.chelper.entity.Task;
+import ru.chelper.entity.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Узел проверки: выполняет задания, присланные {@link RemoteCodeRunner} с веб-узла,
+ * локальными процессами oscript. Включается параметром {@code code-runner.worker.enabled}.
+ */
+@Service
+public class JudgeWorkerService {
+
+    @Value("${code-runner.worker.enabled:false}")
+    private boolean enabled;
+
+    /** Общий секрет веб-узлов и узлов проверки; пустой — приём заданий запрещён. */
+    @Value("${code-runner.token:}")
+    private String token;
+
+    private final LocalProcessCodeRunner localRunner;
+
+    public JudgeWorkerService(LocalProcessCodeRunner localRunner) {
+        this.localRunner = localRunner;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isAuthorized(String presented) {
+        if (token == null || token.isBlank() || presented == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public JudgeRunResultDto run(JudgeRunRequest request) {
+        if (request.getCode() == null || request.getTests() == null || request.getTests().isEmpty()) {
+            throw new IllegalArgumentException("Нужны код и хотя бы один тест");
+        }
+        List<TestCase> cases = new ArrayList<>();
+        for (TestCaseDto dto : request.getTests()) {
+            TestCase tc = new TestCase();
+            tc.setInput(dto.getInput());
+            tc.setExpectedOutput(dto.getExpectedOutput());
+            tc.setIsolated(Boolean.TRUE.equals(dto.getIsolated()));
+            cases.add(tc);
+        }
+        Task.EvaluationMode mode = request.getEvaluationMode() != null
+                ? Task.EvaluationMode.valueOf(request.getEvaluationMode())
+                : Task.EvaluationMode.FULL;
+        return localRunner.run(TestSuite.compile(null, 0, cases), request.getCode(), mode).toDto();
+    }
+}
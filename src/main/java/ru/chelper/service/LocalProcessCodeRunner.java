@@ -0,0 +1,558 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.chelper.entity.Task;
+import ru.chelper.service.CodeExecutionService.RunResult;
+import ru.chelper.service.CodeExecutionService.TestRunResult;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Реальная проверка кода на языке 1С через OneScript (oscript.io) на этом узле.
+ * Скрипт запускается как процесс; вход теста подаётся в stdin одновременно с чтением вывода (большой вход
+ * из {@link TestDataStore} — прямо из файла), вывод сравнивается с ожидаемым.
+ * Для вывода в консоль в коде нужно использовать Сообщить().
+ * Способ запуска задаёт {@code code-runner.mode}: fresh, pooled или batched. Программы в подмножестве
+ * языка, которое понимает {@link BslInterpreter}, выполняются без процессов.
+ */
+@Component
+public class LocalProcessCodeRunner implements CodeRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalProcessCodeRunner.class);
+    private static final String SCRIPT_FILENAME = "Main.bsl";
+    private static final int DEFAULT_TIMEOUT_SEC = 10;
+    private static final int DEFAULT_MAX_OUTPUT_BYTES = 1024 * 1024;
+    private static final long STREAM_DRAIN_MILLIS = 1000;
+    /** Сколько символов данных из файлов хранилища показывать в сообщении о непройденном тесте. */
+    private static final int MESSAGE_EXCERPT_CHARS = 1000;
+
+    @Value("${code-runner.timeout-seconds:" + DEFAULT_TIMEOUT_SEC + "}")
+    private int timeoutSeconds;
+
+    @Value("${code-runner.oscript-command:oscript}")
+    private String oscriptCommand;
+
+    /** fresh — процесс на тест, pooled — тёплые хосты {@link OscriptHostPool}, batched — все тесты одним процессом. */
+    @Value("${code-runner.mode:fresh}")
+    private String mode;
+
+    /** Сколько тестов одной отправки запускать одновременно (1 — последовательно). */
+    @Value("${code-runner.parallel-tests:1}")
+    private int parallelTests;
+
+    /** Предел вывода каждого потока (stdout, stderr) одного процесса; при превышении процесс убивается. */
+    @Value("${code-runner.max-output-bytes:" + DEFAULT_MAX_OUTPUT_BYTES + "}")
+    private int maxOutputBytes;
+
+    /** Сверять stdout с ожидаемым по мере вывода и останавливать процесс при первом расхождении. */
+    @Value("${code-runner.streaming-compare:true}")
+    private boolean streamingCompare;
+
+    /** Выполнять одинаковые тесты набора (тот же вход и ожидаемый вывод) один раз. */
+    @Value("${code-runner.deduplicate-tests:true}")
+    private boolean deduplicateTests;
+
+    /** Как часто замерять процессорное время и память процессов по /proc; 0 — не замерять. */
+    @Value("${code-runner.resource-sample-millis:20}")
+    private long resourceSampleMillis;
+
+    private final OscriptHostPool hostPool;
+    private final WorkDirPool workDirPool;
+    private final JudgeMetrics metrics;
+    private final BslInterpreter interpreter;
+    private final TestDataStore testDataStore;
+    private final ProcessSlots processSlots;
+
+    private ExecutorService testExecutor;
+    private ProcessOutputPump outputPump;
+    private ProcessResourceSampler resourceSampler;
+
+    public LocalProcessCodeRunner(OscriptHostPool hostPool, WorkDirPool workDirPool, JudgeMetrics metrics,
+                                  BslInterpreter interpreter, TestDataStore testDataStore, ProcessSlots processSlots) {
+        this.hostPool = hostPool;
+        this.workDirPool = workDirPool;
+        this.metrics = metrics;
+        this.interpreter = interpreter;
+        this.testDataStore = testDataStore;
+        this.processSlots = processSlots;
+    }
+
+    @PostConstruct
+    void init() {
+        int limit = processSlots.getLimit();
+        AtomicInteger counter = new AtomicInteger();
+        testExecutor = Executors.newFixedThreadPool(limit, r -> {
+            Thread t = new Thread(r, "code-runner-test-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        outputPump = new ProcessOutputPump(3 * limit);
+        resourceSampler = new ProcessResourceSampler(resourceSampleMillis);
+        metrics.gauge("judge.processes.active", "Запущенные процессы oscript", this, LocalProcessCodeRunner::getActiveProcesses);
+        metrics.gauge("judge.processes.limit", "Предел одновременных процессов oscript", this, LocalProcessCodeRunner::getProcessLimit);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        testExecutor.shutdownNow();
+        outputPump.shutdown();
+        resourceSampler.shutdown();
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    /** Сколько процессов oscript запущено сейчас, включая тёплые хосты пула. */
+    public int getActiveProcesses() {
+        return processSlots.getActive();
+    }
+
+    /** Процессы, которые сейчас выполняют тесты: запущенные без простаивающих тёплых хостов. */
+    public int getBusyProcesses() {
+        return Math.max(processSlots.getActive() - hostPool.getIdleHosts(), 0);
+    }
+
+    public int getProcessLimit() {
+        return processSlots.getLimit();
+    }
+
+    @Override
+    public RunResult run(TestSuite suite, String code, Task.EvaluationMode evaluationMode) {
+        boolean failFast = evaluationMode == Task.EvaluationMode.FAIL_FAST;
+        List<TestSuite.Test> tests = suite.getTests();
+        List<TestSuite.Test> distinct = deduplicateTests ? suite.getDistinctTests() : tests;
+        List<TestRunResult> interpreted = interpret(distinct, code, failFast);
+        if (interpreted != null) {
+            RunResult r = summarize(fanOut(suite, distinct, interpreted));
+            return new RunResult(r.isAllPassed(), r.getPassedCount(), r.getTotalCount(), r.getMessage(),
+                    r.getTestResults(), false, true);
+        }
+        try (WorkDirPool.Lease lease = workDirPool.lease()) {
+            Path workDir = lease.path();
+            Path scriptPath = workDir.resolve(SCRIPT_FILENAME);
+            Files.writeString(scriptPath, code, StandardCharsets.UTF_8);
+            return summarize(fanOut(suite, distinct, runAll(workDir, scriptPath, distinct, failFast)));
+        } catch (IOException | UncheckedIOException e) {
+            return new RunResult(false, 0, tests.size(), "Ошибка запуска: " + e.getMessage(), new ArrayList<>());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RunResult(false, 0, tests.size(), "Проверка прервана по таймауту.", new ArrayList<>());
+        } catch (TimeoutException e) {
+            return new RunResult(false, 0, tests.size(), "Превышено время выполнения (таймаут " + timeoutSeconds + " с).",
+                    new ArrayList<>(), true, false);
+        }
+    }
+
+    /**
+     * Результаты всех тестов набора по результатам выполненных {@code distinct}: повтор получает
+     * результат первого из одинаковых тестов (пропущен — тоже пропущен).
+     */
+    private List<TestRunResult> fanOut(TestSuite suite, List<TestSuite.Test> distinct, List<TestRunResult> results) {
+        if (distinct.size() == suite.size()) {
+            return results;
+        }
+        TestRunResult[] byIndex = new TestRunResult[suite.size()];
+        for (int i = 0; i < distinct.size(); i++) {
+            byIndex[distinct.get(i).index()] = results.get(i);
+        }
+        List<TestRunResult> all = new ArrayList<>(suite.size());
+        for (TestSuite.Test test : suite.getTests()) {
+            // Повтор отдельным процессом не выполнялся — замеров ресурсов у него нет
+            all.add(test.isDuplicate() ? byIndex[test.sameAs()].withUsage(null) : byIndex[test.index()]);
+        }
+        metrics.duplicateTests(suite.size() - distinct.size());
+        return all;
+    }
+
+    /** Итог по результатам тестов; {@code null} в {@code results} — тест пропущен. */
+    private RunResult summarize(List<TestRunResult> results) {
+        int passed = 0;
+        int skipped = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                results.set(i, TestRunResult.skipped());
+                metrics.testVerdict("skipped");
+                skipped++;
+            } else if (results.get(i).isPassed()) {
+                passed++;
+            }
+        }
+        boolean allPassed = passed == results.size();
+        String message;
+        if (allPassed) {
+            message = "Все тесты пройдены.";
+        } else if (skipped > 0) {
+            message = String.format("Пройдено %d из %d тестов; проверка остановлена на первом непройденном, пропущено %d.",
+                    passed, results.size(), skipped);
+        } else {
+            message = String.format("Пройдено %d из %d тестов.", passed, results.size());
+        }
+        return new RunResult(allPassed, passed, results.size(), message, results);
+    }
+
+    /**
+     * Выполняет тесты встроенным интерпретатором, без процессов oscript. {@code null} — программа вышла
+     * за поддерживаемое подмножество или пределы интерпретатора хотя бы на одном тесте, и всю отправку
+     * нужно проверить через oscript. Вердикты считаются только после того, как выполнены все нужные тесты.
+     * Тесты с данными в файлах хранилища интерпретатор не выполняет, чтобы не читать их в память целиком.
+     */
+    private List<TestRunResult> interpret(List<TestSuite.Test> tests, String code, boolean failFast) {
+        if (!interpreter.isEnabled() || tests.stream().anyMatch(TestSuite.Test::inFiles)) {
+            return null;
+        }
+        String[] outputs = new String[tests.size()];
+        long[] millis = new long[tests.size()];
+        try {
+            BslProgram program = interpreter.compile(code);
+            for (int i = 0; i < tests.size(); i++) {
+                TestSuite.Test test = tests.get(i);
+                long startedAt = System.nanoTime();
+                outputs[i] = interpreter.execute(program, test.inputText(), maxOutputBytes);
+                millis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                if (failFast && !test.expectedText().equals(normalizeOutput(outputs[i]))) break;
+            }
+        } catch (BslInterpreter.Unsupported e) {
+            log.debug("Интерпретатор не выполнил отправку ({}): {} — проверка через oscript", e.getReason(), e.getMessage());
+            metrics.interpreterRun(e.getReason().name().toLowerCase(Locale.ROOT));
+            return null;
+        }
+        metrics.interpreterRun("interpreted");
+        List<TestRunResult> results = new ArrayList<>(Collections.nCopies(tests.size(), null));
+        for (int i = 0; i < tests.size() && outputs[i] != null; i++) {
+            ProcessResult out = new ProcessResult(0, outputs[i], "", false);
+            out.usage = new CodeExecutionService.ResourceUsage(millis[i], null, null);
+            results.set(i, verdict(tests.get(i), out).withUsage(out.usage));
+        }
+        return results;
+    }
+
+    private TestRunResult evaluate(TestSuite.Test test, ProcessResult out) {
+        if (out.usage != null) {
+            metrics.recordTestDuration(out.usage.wallMillis());
+        }
+        return verdict(test, out).withUsage(out.usage);
+    }
+
+    /**
+     * Ожидаемый вывод для сообщения о непройденном тесте. Из файла хранилища читается только начало:
+     * не больше четырёх байт UTF-8 на показываемый символ.
+     */
+    private String expectedShown(TestSuite.Test test) {
+        return test.expected() != null
+                ? shown(test, test.expectedText())
+                : shown(test, normalizeOutput(testDataStore.expectedOutputStart(test, (MESSAGE_EXCERPT_CHARS + 1) * 4)));
+    }
+
+    private TestRunResult verdict(TestSuite.Test test, ProcessResult out) {
+        String actual = normalizeOutput(out.stdout);
+        // OneScript может выводить Сообщить() в stderr — тогда сравниваем и с stderr
+        if (actual.isEmpty() && out.stderr != null && !out.stderr.isBlank()) {
+            actual = normalizeOutput(out.stderr);
+            log.debug("Использован stderr как вывод: [{}]", actual);
+        }
+        log.debug("Тест: получено=[{}], exitCode={}, stderr=[{}]", actual, out.exitCode, out.stderr != null ? out.stderr.trim() : "");
+        if (out.outputLimitExceeded) {
+            metrics.outputLimitKill();
+            metrics.testVerdict("output_limit");
+            return TestRunResult.error("Превышен лимит вывода (" + maxOutputBytes + " байт)");
+        }
+        if (out.earlyMismatch != null) {
+            metrics.testVerdict("wrong_answer");
+            StreamingOutputComparator c = out.earlyMismatch;
+            String where = c.isTooLong() ? "вывод длиннее ожидаемого" : "первое расхождение: " + c.describeMismatch();
+            return new TestRunResult(false, "Неверный ответ, проверка остановлена досрочно (" + where + "). Ожидалось: «"
+                    + expectedShown(test) + "», получено: «" + shown(test, actual) + "…»", c.mismatchOffset());
+        }
+        if (out.error) {
+            metrics.testVerdict("runtime_error");
+            String errMsg = out.stderr != null && !out.stderr.isBlank() ? out.stderr.trim() : "код возврата " + out.exitCode;
+            return TestRunResult.error("Ошибка выполнения: " + errMsg);
+        }
+        int difference = test.expected() != null ? firstDifference(test.expectedText(), actual) : streamedDifference(test, actual);
+        boolean ok = difference < 0;
+        metrics.testVerdict(ok ? "ok" : "wrong_answer");
+        if (ok) {
+            return new TestRunResult(true, "OK");
+        }
+        return new TestRunResult(false, "Ожидалось: «" + expectedShown(test) + "», получено: «" + shown(test, actual) + "»",
+                difference);
+    }
+
+    /** Как {@link #firstDifference}, но ожидаемый вывод из файла хранилища читается по мере сравнения. */
+    private int streamedDifference(TestSuite.Test test, String actual) {
+        byte[] bytes = actual.getBytes(StandardCharsets.UTF_8);
+        try (StreamingOutputComparator comparator = testDataStore.expectedComparator(test)) {
+            comparator.accept(bytes, 0, bytes.length);
+            return comparator.isComplete() ? -1 : comparator.mismatchOffset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Данные из файлов хранилища попадают в сообщение (и в базу) только началом. */
+    private static String shown(TestSuite.Test test, String text) {
+        return test.inFiles() && text.length() > MESSAGE_EXCERPT_CHARS
+                ? text.substring(0, MESSAGE_EXCERPT_CHARS) + "…"
+                : text;
+    }
+
+    /** Позиция первого расхождения; -1 — строки равны. */
+    private static int firstDifference(String expected, String actual) {
+        if (expected.equals(actual)) return -1;
+        int n = Math.min(expected.length(), actual.length());
+        for (int i = 0; i < n; i++) {
+            if (expected.charAt(i) != actual.charAt(i)) return i;
+        }
+        return n;
+    }
+
+    /**
+     * Запускает тесты одной отправки. В режиме batched тесты без входа, без флага isolated и без данных в файлах
+     * хранилища сначала выполняются одним процессом; тесты, для которых пакет не дал результата, тесты со входом
+     * и изолированные тесты запускаются по отдельности. Результаты возвращаются в порядке тестов; {@code null} — тест
+     * пропущен, потому что при {@code failFast} уже есть непройденный.
+     */
+    private List<TestRunResult> runAll(Path workDir, Path scriptPath, List<TestSuite.Test> tests, boolean failFast)
+            throws IOException, InterruptedException, TimeoutException {
+        List<TestRunResult> results = new ArrayList<>(Collections.nCopies(tests.size(), null));
+        boolean failed = false;
+        if ("batched".equalsIgnoreCase(mode)) {
+            List<Integer> batch = new ArrayList<>();
+            for (int i = 0; i < tests.size(); i++) {
+                TestSuite.Test test = tests.get(i);
+                // Как и тёплому хосту, пакету вход не передать: stdin у выполнений общий
+                if (!test.isolated() && !test.inFiles() && test.input().length == 0) batch.add(i);
+            }
+            if (batch.size() > 1) {
+                List<ProcessResult> batched = runBatch(workDir, scriptPath, batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batched.get(i) != null) {
+                        TestRunResult r = evaluate(tests.get(batch.get(i)), batched.get(i));
+                        results.set(batch.get(i), r);
+                        failed |= !r.isPassed();
+                    }
+                }
+            }
+        }
+        if (failFast && failed) {
+            return results;
+        }
+        List<Integer> rest = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) rest.add(i);
+        }
+        List<TestRunResult> individual = runEach(workDir, scriptPath, rest.stream().map(tests::get).toList(), failFast);
+        for (int i = 0; i < rest.size(); i++) {
+            results.set(rest.get(i), individual.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Выполняет {@code count} тестов без входа одним процессом через {@link BatchHarness}. Пакету отводится
+     * таймаут теста на каждый тест; тест, который сам выполнялся дольше таймаута, перезапускается отдельно.
+     * Вместо результата теста — {@code null}, если пакет его не дал (падение, завершение работы из кода,
+     * таймаут теста или всего пакета).
+     */
+    private List<ProcessResult> runBatch(Path workDir, Path scriptPath, int count)
+            throws IOException, InterruptedException {
+        BatchHarness harness = new BatchHarness(count);
+        Path batchScript = workDir.resolve(BatchHarness.SCRIPT_FILENAME);
+        Files.writeString(batchScript, harness.script(scriptPath), StandardCharsets.UTF_8);
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        ProcessResult out;
+        try {
+            out = startProcess(workDir, batchScript, harness.stdin().getBytes(StandardCharsets.UTF_8), null, null,
+                    timeoutMillis * count);
+        } catch (TimeoutException e) {
+            log.debug("Пакетный прогон не уложился в таймаут, тесты будут запущены по отдельности");
+            return Collections.nCopies(count, null);
+        }
+        // OneScript может выводить Сообщить() в stderr — метки ищем там же, где вывод
+        return harness.parse(harness.containsMarker(out.stdout) ? out.stdout : out.stderr, timeoutMillis);
+    }
+
+    /**
+     * Запускает тесты по отдельности: до {@code parallelTests} процессов одновременно над общим Main.bsl.
+     * Результаты возвращаются в порядке тестов, независимо от порядка завершения процессов.
+     * При {@code failFast} после первого непройденного теста новые процессы не запускаются,
+     * а не запущенные тесты возвращаются как {@code null}.
+     */
+    private List<TestRunResult> runEach(Path workDir, Path scriptPath, List<TestSuite.Test> tests, boolean failFast)
+            throws IOException, InterruptedException, TimeoutException {
+        List<TestRunResult> results = new ArrayList<>(Collections.nCopies(tests.size(), null));
+        if (parallelTests <= 1 || tests.size() <= 1) {
+            for (int i = 0; i < tests.size(); i++) {
+                TestRunResult r = evaluate(tests.get(i), runProcess(workDir, scriptPath, tests.get(i)));
+                results.set(i, r);
+                if (failFast && !r.isPassed()) break;
+            }
+            return results;
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        Semaphore window = new Semaphore(parallelTests);
+        List<Future<TestRunResult>> futures = new ArrayList<>(tests.size());
+        try {
+            for (TestSuite.Test test : tests) {
+                window.acquire();
+                if (stop.get()) {
+                    window.release();
+                    break;
+                }
+                futures.add(testExecutor.submit(() -> {
+                    try {
+                        TestRunResult r = evaluate(test, runProcess(workDir, scriptPath, test));
+                        if (failFast && !r.isPassed()) stop.set(true);
+                        return r;
+                    } finally {
+                        window.release();
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                results.set(i, futures.get(i).get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof TimeoutException te) throw te;
+            if (cause instanceof InterruptedException ie) throw ie;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(cause);
+        } finally {
+            // При ошибке одного теста остальные процессы не нужны — прерываем их
+            for (Future<TestRunResult> f : futures) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private ProcessResult runProcess(Path workDir, Path scriptPath, TestSuite.Test test) throws IOException, InterruptedException, TimeoutException {
+        Path inputFile = testDataStore.inputFile(test);
+        // Тёплый хост не может передать вход теста (stdin у него общий на все запуски), поэтому только для тестов без входа
+        if (hostPool.isEnabled() && inputFile == null && test.input().length == 0) {
+            // Хост общий для многих тестов — его процессорное время и память тесту не припишешь
+            long startedAt = System.nanoTime();
+            ProcessResult result = hostPool.run(scriptPath, timeoutSeconds);
+            result.usage = new CodeExecutionService.ResourceUsage(
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), null, null);
+            return result;
+        }
+        if (!streamingCompare) {
+            return startProcess(workDir, scriptPath, inputFile == null ? test.input() : null, inputFile, null,
+                    TimeUnit.SECONDS.toMillis(timeoutSeconds));
+        }
+        try (StreamingOutputComparator comparator = testDataStore.expectedComparator(test)) {
+            return startProcess(workDir, scriptPath, inputFile == null ? test.input() : null, inputFile, comparator,
+                    TimeUnit.SECONDS.toMillis(timeoutSeconds));
+        }
+    }
+
+    /**
+     * Запускает процесс. Вход — байты {@code stdin} или файл {@code stdinFile}: файл становится stdin
+     * процесса напрямую, и процесс читает его сам, без копирования через приложение.
+     */
+    private ProcessResult startProcess(Path workDir, Path scriptPath, byte[] stdin, Path stdinFile,
+                                       StreamingOutputComparator comparator, long timeoutMillis)
+            throws IOException, InterruptedException, TimeoutException {
+        // Рабочая директория процесса — не /tmp, чтобы избежать noexec (Permission denied)
+        ProcessBuilder pb = new ProcessBuilder(oscriptCommand, scriptPath.toAbsolutePath().toString())
+                .directory(workDir.toFile())
+                .redirectErrorStream(false);
+        if (stdinFile != null) {
+            pb.redirectInput(stdinFile.toFile());
+        }
+        // Разрешения могут держать простаивающие хосты пула — их останавливаем ради отдельного процесса
+        processSlots.acquire(hostPool::evictIdle);
+        try {
+            long spawnStartedAt = System.nanoTime();
+            Process p = pb.start();
+            metrics.recordSpawn(System.nanoTime() - spawnStartedAt);
+            return runStarted(p, stdin, comparator, timeoutMillis);
+        } finally {
+            processSlots.release();
+        }
+    }
+
+    private ProcessResult runStarted(Process p, byte[] stdinBytes, StreamingOutputComparator comparator, long timeoutMillis)
+            throws IOException, InterruptedException, TimeoutException {
+        try (ProcessResourceSampler.Probe probe = resourceSampler.start(p)) {
+            // Вывод читается раньше, чем пишется вход: процесс может писать, не дочитав stdin
+            ProcessOutputPump.Capture stdout = outputPump.capture(p.getInputStream(), maxOutputBytes, comparator, p::destroyForcibly);
+            ProcessOutputPump.Capture stderr = outputPump.capture(p.getErrorStream(), maxOutputBytes, p::destroyForcibly);
+            Future<?> stdin = null;
+            if (stdinBytes != null && stdinBytes.length > 0) {
+                stdin = outputPump.feed(p.getOutputStream(), stdinBytes);
+            } else {
+                p.getOutputStream().close();
+            }
+            boolean finished;
+            try {
+                finished = p.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                p.destroyForcibly();
+                stdout.cancel();
+                stderr.cancel();
+                if (stdin != null) stdin.cancel(true);
+                throw e;
+            }
+            if (!finished) {
+                metrics.timeout();
+                p.destroyForcibly();
+                stdout.cancel();
+                stderr.cancel();
+                if (stdin != null) stdin.cancel(true);
+                throw new TimeoutException();
+            }
+            CodeExecutionService.ResourceUsage usage = probe.finish();
+
+            ProcessResult result = new ProcessResult(p.exitValue(), stdout.await(STREAM_DRAIN_MILLIS), stderr.await(STREAM_DRAIN_MILLIS), p.exitValue() != 0);
+            result.outputLimitExceeded = stdout.isOverflow() || stderr.isOverflow();
+            result.earlyMismatch = stdout.isMismatch() ? comparator : null;
+            result.usage = usage;
+            return result;
+        }
+    }
+
+    static String normalizeOutput(String s) {
+        if (s == null) return "";
+        return s.trim().replace("\r\n", "\n").replace("\r", "\n");
+    }
+
+    static class ProcessResult {
+        final int exitCode;
+        final String stdout;
+        final String stderr;
+        final boolean error;
+        boolean outputLimitExceeded;
+        /** Сравнение, остановившее процесс досрочно из-за расхождения с ожидаемым выводом. */
+        StreamingOutputComparator earlyMismatch;
+        /** Ресурсы процесса; для тестов пакетного прогона — только время: процесс у них общий. */
+        CodeExecutionService.ResourceUsage usage;
+
+        ProcessResult(int exitCode, String stdout, String stderr, boolean error) {
+            this.exitCode = exitCode;
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.error = error;
+        }
+    }
+}
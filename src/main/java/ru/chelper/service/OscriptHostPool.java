@@ -0,0 +1,402 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Пул заранее запущенных процессов oscript (режим {@code code-runner.mode: pooled}).
+ * Каждый хост выполняет драйвер {@code oscript/host.bsl}, который по запросу загружает Main.bsl
+ * в новом контексте и сообщает об окончании строкой с меткой. Так запуск .NET оплачивается
+ * один раз на хост, а не на каждый тест.
+ * <p>
+ * Запросы хост читает из файла в своём каталоге управления (каталог владельца из {@link WorkDirPool}),
+ * а не из stdin: stdin хоста закрыт, и {@code Консоль.ПрочитатьСтроку()} в коде пользователя возвращает
+ * Неопределено, как у отдельного процесса с пустым входом. Каждый запрос называет метку следующего, а метку
+ * первого хост читает из файла {@code start} там же, поэтому файл, подброшенный кодом пользователя, хост не
+ * выполнит. Ни метки, ни путь к каталогу управления не попадают в командную строку: путь передаётся
+ * переменной окружения, которую драйвер очищает до первого запроса, а файлы запросов он удаляет до выполнения
+ * сценария.
+ * <p>
+ * Текущий каталог хоста — рабочий каталог, выданный ему {@link WorkDirPool} на всё время жизни; файл драйвера
+ * перед каждым запуском хоста проверяется и при необходимости записывается заново.
+ * <p>
+ * Хост — процесс oscript и всё время жизни держит разрешение {@link ProcessSlots}: пул не превышает
+ * {@code code-runner.max-processes} вместе с отдельными процессами, а простаивающий хост останавливается,
+ * если разрешение нужно другому процессу.
+ * <p>
+ * Хост пересоздаётся после {@code code-runner.pool.max-runs-per-host} запусков, после падения или таймаута.
+ */
+@Service
+public class OscriptHostPool {
+
+    private static final Logger log = LoggerFactory.getLogger(OscriptHostPool.class);
+    private static final String DRIVER_RESOURCE = "oscript/host.bsl";
+    private static final String DRIVER_FILENAME = "1c-host-driver.bsl";
+    private static final String REQUEST_FILENAME = "request";
+    private static final String START_FILENAME = "start";
+    /** Переменная окружения с каталогом управления; драйвер очищает её, прежде чем выполнять код пользователя. */
+    private static final String CONTROL_DIR_ENV = "ONEC_HOST_CONTROL_DIR";
+    /** Признак конца stdout хоста в очереди строк (сравнивается по ссылке). */
+    private static final String EOF = new String("");
+    /** Как часто ждущий запуска проверяет, не освободился ли хост, пока разрешений {@link ProcessSlots} нет. */
+    private static final long IDLE_POLL_MILLIS = 50;
+
+    @Value("${code-runner.oscript-command:oscript}")
+    private String oscriptCommand;
+
+    @Value("${code-runner.work-dir:}")
+    private String workDirPath;
+
+    @Value("${code-runner.mode:fresh}")
+    private String mode;
+
+    @Value("${code-runner.pool.size:4}")
+    private int size;
+
+    @Value("${code-runner.pool.max-runs-per-host:50}")
+    private int maxRunsPerHost;
+
+    @Value("${code-runner.max-output-bytes:1048576}")
+    private int maxOutputBytes;
+
+    private final ConcurrentLinkedQueue<Host> idle = new ConcurrentLinkedQueue<>();
+    private final JudgeMetrics metrics;
+    private final WorkDirPool workDirPool;
+    private final ProcessSlots processSlots;
+    private Semaphore leases;
+    private Path driverFile;
+    private byte[] driverBytes;
+
+    public OscriptHostPool(JudgeMetrics metrics, WorkDirPool workDirPool, ProcessSlots processSlots) {
+        this.metrics = metrics;
+        this.workDirPool = workDirPool;
+        this.processSlots = processSlots;
+    }
+
+    @PostConstruct
+    void init() {
+        leases = new Semaphore(Math.max(1, size), true);
+        if (isEnabled()) {
+            metrics.gauge("judge.pool.hosts.idle", "Свободные тёплые хосты oscript", idle, ConcurrentLinkedQueue::size);
+            metrics.gauge("judge.pool.hosts.busy", "Тёплые хосты oscript, выполняющие тест", this,
+                    pool -> Math.max(1, pool.size) - pool.leases.availablePermits());
+        }
+    }
+
+    public boolean isEnabled() {
+        return "pooled".equalsIgnoreCase(mode);
+    }
+
+    /** Простаивающие хосты: держат разрешения {@link ProcessSlots}, но уступят их по первому запросу. */
+    public int getIdleHosts() {
+        return idle.size();
+    }
+
+    /**
+     * Прогрев: хосты поднимаются в фоне, чтобы первые отправки не платили за холодный старт.
+     * Хостов не больше, чем свободно разрешений {@link ProcessSlots}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread t = new Thread(() -> {
+            int started = 0;
+            while (started < size && processSlots.tryAcquire()) {
+                try {
+                    idle.add(startHost());
+                    started++;
+                } catch (IOException e) {
+                    log.warn("Не удалось запустить хост oscript: {}", e.getMessage());
+                    return;
+                }
+            }
+            log.info("Пул oscript прогрет: {} хостов", started);
+        }, "oscript-pool-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Выполняет сценарий на свободном хосте. Вход теста не передаётся: stdin хоста общий для всех запусков
+     * и закрыт, поэтому тесты со входными данными запускаются отдельными процессами.
+     */
+    LocalProcessCodeRunner.ProcessResult run(Path scriptPath, int timeoutSeconds)
+            throws IOException, InterruptedException, TimeoutException {
+        leases.acquire();
+        Host host = null;
+        boolean reusable = false;
+        try {
+            host = idleOrSlot();
+            HostRun run;
+            if (host != null && host.process.isAlive()) {
+                try {
+                    run = host.execute(scriptPath, timeoutSeconds);
+                } catch (IOException e) {
+                    // Хост умер между запусками — повторяем на новом, его разрешение переходит новому
+                    host.destroy(false);
+                    host = startHost();
+                    run = host.execute(scriptPath, timeoutSeconds);
+                }
+            } else {
+                if (host != null) host.destroy(false);
+                host = startHost();
+                run = host.execute(scriptPath, timeoutSeconds);
+            }
+            reusable = run.healthy && ++host.runs < maxRunsPerHost;
+            return run.result;
+        } catch (TimeoutException e) {
+            metrics.timeout();
+            throw e;
+        } finally {
+            if (host != null) {
+                if (reusable) {
+                    idle.add(host);
+                } else {
+                    host.destroy();
+                }
+            }
+            leases.release();
+        }
+    }
+
+    /**
+     * Свободный хост или, если свободных нет, разрешение на запуск нового ({@code null}). Пока разрешений нет,
+     * ждём хоста, который освободится: занятые хосты возвращаются в пул, не отдавая разрешение.
+     */
+    private Host idleOrSlot() throws InterruptedException {
+        Host host = idle.poll();
+        while (host == null && !processSlots.tryAcquire(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            host = idle.poll();
+        }
+        return host;
+    }
+
+    /**
+     * Останавливает один простаивающий хост и отдаёт его разрешение {@link ProcessSlots} — для отдельного
+     * процесса, которому разрешения не хватило.
+     */
+    void evictIdle() {
+        Host host = idle.poll();
+        if (host != null) {
+            host.destroy();
+        }
+    }
+
+    /** Запускает хост под уже полученным разрешением {@link ProcessSlots}; при ошибке разрешение возвращается. */
+    private Host startHost() throws IOException {
+        Path controlDir = null;
+        WorkDirPool.Lease workDir = null;
+        Process p = null;
+        try {
+            Path driver = driverFile();
+            controlDir = workDirPool.createDir();
+            workDir = workDirPool.lease();
+            String marker = newMarker();
+            Files.writeString(controlDir.resolve(START_FILENAME), marker + "\n", StandardCharsets.UTF_8);
+            ProcessBuilder pb = new ProcessBuilder(oscriptCommand, driver.toString())
+                    .directory(workDir.path().toFile())
+                    .redirectErrorStream(false);
+            pb.environment().put(CONTROL_DIR_ENV, controlDir.toString());
+            long startedAt = System.nanoTime();
+            p = pb.start();
+            metrics.recordSpawn(System.nanoTime() - startedAt);
+            // Пустой вход для кода пользователя: чтение сразу получает конец потока
+            p.getOutputStream().close();
+            return new Host(p, controlDir, workDir, marker, maxOutputBytes, processSlots);
+        } catch (IOException | RuntimeException e) {
+            if (p != null) {
+                p.destroyForcibly();
+            }
+            processSlots.release();
+            if (controlDir != null) {
+                deleteQuietly(controlDir);
+            }
+            if (workDir != null) {
+                workDir.close();
+            }
+            throw e;
+        }
+    }
+
+    private static String newMarker() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try {
+            WorkDirPool.deleteRecursively(dir);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить каталог управления хоста {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Файл драйвера в {@code code-runner.work-dir}. Код пользователя может удалить или подменить его, поэтому перед
+     * каждым запуском хоста файл сверяется с ресурсом и при расхождении записывается заново.
+     */
+    private synchronized Path driverFile() throws IOException {
+        if (driverFile == null) {
+            Path base = workDirPath != null && !workDirPath.isBlank() ? Paths.get(workDirPath) : Paths.get(System.getProperty("java.io.tmpdir"));
+            Files.createDirectories(base);
+            try (InputStream in = new ClassPathResource(DRIVER_RESOURCE).getInputStream()) {
+                driverBytes = in.readAllBytes();
+            }
+            driverFile = base.resolve(DRIVER_FILENAME);
+        }
+        if (!Files.isRegularFile(driverFile, LinkOption.NOFOLLOW_LINKS)
+                || !Arrays.equals(Files.readAllBytes(driverFile), driverBytes)) {
+            // Ссылку удаляем, а не пишем сквозь неё
+            Files.deleteIfExists(driverFile);
+            Files.write(driverFile, driverBytes);
+        }
+        return driverFile;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Host host;
+        while ((host = idle.poll()) != null) {
+            host.destroy();
+        }
+    }
+
+    private record HostRun(LocalProcessCodeRunner.ProcessResult result, boolean healthy) {
+    }
+
+    private static final class Host {
+        final Process process;
+        final Path controlDir;
+        final WorkDirPool.Lease workDir;
+        final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        final StringBuffer stderr = new StringBuffer();
+        final int maxOutputBytes;
+        final ProcessSlots processSlots;
+        /** Метка следующего запроса; хост знает её из предыдущего запроса (первую — из файла {@code start}). */
+        String nextMarker;
+        boolean destroyed;
+        int runs;
+
+        Host(Process process, Path controlDir, WorkDirPool.Lease workDir, String marker, int maxOutputBytes,
+             ProcessSlots processSlots) {
+            this.process = process;
+            this.controlDir = controlDir;
+            this.workDir = workDir;
+            this.nextMarker = marker;
+            this.maxOutputBytes = maxOutputBytes;
+            this.processSlots = processSlots;
+            startReader("oscript-host-out", () -> {
+                try (BufferedReader r = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = r.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (IOException ignored) {
+                } finally {
+                    lines.add(EOF);
+                }
+            });
+            startReader("oscript-host-err", () -> {
+                try (BufferedReader r = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = r.readLine()) != null) {
+                        // Сверх предела не копим: execute() увидит переполнение и убьёт хост
+                        if (stderr.length() <= maxOutputBytes) {
+                            stderr.append(line).append('\n');
+                        }
+                    }
+                } catch (IOException ignored) {
+                }
+            });
+        }
+
+        HostRun execute(Path scriptPath, int timeoutSeconds) throws IOException, InterruptedException, TimeoutException {
+            String marker = nextMarker;
+            nextMarker = newMarker();
+            lines.clear();
+            stderr.setLength(0);
+            // Файл появляется целиком: хост не прочитает недописанный запрос
+            Path request = controlDir.resolve(REQUEST_FILENAME);
+            Path pending = controlDir.resolve(REQUEST_FILENAME + ".tmp");
+            Files.writeString(pending, marker + "\t" + scriptPath.toAbsolutePath() + "\t" + nextMarker + "\n",
+                    StandardCharsets.UTF_8);
+            Files.move(pending, request, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            StringBuilder out = new StringBuilder();
+            long outputBytes = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            while (true) {
+                long left = deadline - System.nanoTime();
+                String line = left > 0 ? lines.poll(left, TimeUnit.NANOSECONDS) : null;
+                if (line == null) {
+                    destroy();
+                    throw new TimeoutException();
+                }
+                if (line == EOF) {
+                    // Код пользователя завершил хост (например, ЗавершитьРаботу) — как у отдельного процесса
+                    process.waitFor(1, TimeUnit.SECONDS);
+                    int exit = process.isAlive() ? -1 : process.exitValue();
+                    return new HostRun(new LocalProcessCodeRunner.ProcessResult(exit, out.toString(), stderr.toString(), exit != 0), false);
+                }
+                if (line.startsWith(marker + "\t")) {
+                    String[] parts = line.split("\t", 3);
+                    boolean failed = parts.length > 1 && !"0".equals(parts[1]);
+                    String err = failed && parts.length > 2 ? parts[2] : stderr.toString();
+                    return new HostRun(new LocalProcessCodeRunner.ProcessResult(failed ? 1 : 0, out.toString(), err, failed), true);
+                }
+                outputBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (outputBytes > maxOutputBytes || stderr.length() > maxOutputBytes) {
+                    destroy();
+                    LocalProcessCodeRunner.ProcessResult result = new LocalProcessCodeRunner.ProcessResult(-1, out.toString(), "", true);
+                    result.outputLimitExceeded = true;
+                    return new HostRun(result, false);
+                }
+                out.append(line).append('\n');
+            }
+        }
+
+        void destroy() {
+            destroy(true);
+        }
+
+        /** Останавливает хост; {@code releaseSlot = false} — разрешение переходит хосту, который его заменит. */
+        synchronized void destroy(boolean releaseSlot) {
+            process.destroyForcibly();
+            if (destroyed) {
+                return;
+            }
+            destroyed = true;
+            deleteQuietly(controlDir);
+            // Процесс мог ещё не выйти из каталога; пул пересоздаст каталог, если очистить его не удалось
+            workDir.close();
+            if (releaseSlot) {
+                processSlots.release();
+            }
+        }
+
+        private static void startReader(String name, Runnable body) {
+            Thread t = new Thread(body, name);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+}
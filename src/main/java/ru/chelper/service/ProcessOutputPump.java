@@ -0,0 +1,127 @@
+package ru.chelper.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий пул потоков для записи stdin и чтения stdout/stderr процессов oscript. Размер пула фиксирован
+ * (по три потока на разрешённый процесс), поэтому потоки не создаются на каждый тест.
+ * Захват вывода ограничен по размеру: при превышении процесс убивается.
+ */
+final class ProcessOutputPump {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ExecutorService executor;
+
+    ProcessOutputPump(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "code-runner-io-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Начинает читать поток в буфер не больше {@code limit} байт.
+     * При переполнении вызывается {@code onOverflow} (обычно — уничтожение процесса).
+     */
+    Capture capture(InputStream in, int limit, Runnable onOverflow) {
+        return capture(in, limit, null, onOverflow);
+    }
+
+    /**
+     * То же, но каждый прочитанный блок сразу сверяется {@code comparator}; при расхождении
+     * с ожидаемым выводом вызывается {@code onAbort}, не дожидаясь конца процесса.
+     */
+    Capture capture(InputStream in, int limit, StreamingOutputComparator comparator, Runnable onAbort) {
+        Capture capture = new Capture(limit, comparator);
+        capture.future = executor.submit(() -> capture.copy(in, onAbort));
+        return capture;
+    }
+
+    /**
+     * Пишет {@code data} в stdin процесса и закрывает его в отдельном потоке, одновременно с чтением вывода:
+     * иначе процесс, заполнивший канал stdout, и запись в его заполненный канал stdin ждут друг друга
+     * до таймаута. Процесс может завершиться, не дочитав вход, — ошибка записи тогда не важна.
+     */
+    Future<?> feed(OutputStream out, byte[] data) {
+        return executor.submit(() -> {
+            try (out) {
+                out.write(data);
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static final class Capture {
+        private final int limit;
+        private final StreamingOutputComparator comparator;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private volatile boolean overflow;
+        private volatile boolean mismatch;
+        private Future<?> future;
+
+        private Capture(int limit, StreamingOutputComparator comparator) {
+            this.limit = limit;
+            this.comparator = comparator;
+        }
+
+        private void copy(InputStream in, Runnable onAbort) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            try (in) {
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+                    int room = limit - buffer.size();
+                    if (n > room) {
+                        buffer.write(chunk, 0, Math.max(room, 0));
+                        overflow = true;
+                        onAbort.run();
+                        return;
+                    }
+                    buffer.write(chunk, 0, n);
+                    if (comparator != null && !comparator.accept(chunk, 0, n)) {
+                        mismatch = true;
+                        onAbort.run();
+                        return;
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        /** Дожидается конца потока (процесс уже завершён) и возвращает прочитанное. */
+        String await(long timeoutMillis) throws InterruptedException {
+            try {
+                future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // Поток держит потомок процесса — берём то, что успели прочитать
+                future.cancel(true);
+            }
+            return buffer.toString(StandardCharsets.UTF_8);
+        }
+
+        boolean isOverflow() {
+            return overflow;
+        }
+
+        /** Вывод разошёлся с ожидаемым, и процесс был остановлен досрочно. */
+        boolean isMismatch() {
+            return mismatch;
+        }
+
+        void cancel() {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ru.chelper.service;
+
+import ru.chelper.service.CodeExecutionService.ResourceUsage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Учёт ресурсов процессов oscript: время от запуска до завершения, процессорное время (user + sys)
+ * и пиковый объём резидентной памяти. Процессорное время и память читаются из {@code /proc/<pid>}
+ * одним общим потоком раз в {@code intervalMillis}: после завершения процесса JVM сразу забирает
+ * его статус, и прочитать итоговые значения уже нельзя. Поэтому это последние замеры до завершения —
+ * оценка снизу, тем точнее, чем чаще опрос. Без {@code /proc} (не Linux) известно только время.
+ */
+final class ProcessResourceSampler {
+
+    /** USER_HZ — единица utime/stime в /proc/<pid>/stat; на Linux практически всегда 100. */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private final Set<Probe> running = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService sampler;
+
+    ProcessResourceSampler(long intervalMillis) {
+        if (intervalMillis > 0 && Files.isReadable(Paths.get("/proc/self/stat"))) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "code-runner-sampler");
+                t.setDaemon(true);
+                return t;
+            });
+            sampler.scheduleWithFixedDelay(this::sampleAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            sampler = null;
+        }
+    }
+
+    /** Начинает учёт только что запущенного процесса. */
+    Probe start(Process process) {
+        Probe probe = new Probe(process.pid());
+        if (sampler != null) {
+            probe.sample();
+            running.add(probe);
+        }
+        return probe;
+    }
+
+    void shutdown() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    private void sampleAll() {
+        for (Probe probe : running) {
+            probe.sample();
+        }
+    }
+
+    final class Probe implements AutoCloseable {
+        private final long pid;
+        private final long startedAt = System.nanoTime();
+        private volatile long cpuTicks = -1;
+        private volatile long peakRssKb = -1;
+        private volatile String procStartTime;
+
+        private Probe(long pid) {
+            this.pid = pid;
+        }
+
+        /** Итог учёта; вызывается сразу после завершения процесса. */
+        ResourceUsage finish() {
+            close();
+            long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            return new ResourceUsage(wallMillis,
+                    cpuTicks >= 0 ? cpuTicks * 1000 / CLOCK_TICKS_PER_SECOND : null,
+                    peakRssKb >= 0 ? peakRssKb : null);
+        }
+
+        /** Прекращает замеры, даже если процесс не дождались. */
+        @Override
+        public void close() {
+            running.remove(this);
+        }
+
+        private void sample() {
+            try {
+                String stat = Files.readString(Paths.get("/proc", Long.toString(pid), "stat"), StandardCharsets.US_ASCII);
+                // Имя процесса в скобках может содержать пробелы — поля считаем после последней «)»
+                String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                // Поле 22 — момент запуска процесса: если pid уже занят другим процессом, он отличится
+                if (procStartTime == null) {
+                    procStartTime = fields[19];
+                } else if (!procStartTime.equals(fields[19])) {
+                    return;
+                }
+                // utime, stime, cutime, cstime — поля 14–17, после «)» это индексы 11–14
+                long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12])
+                        + Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+                cpuTicks = Math.max(cpuTicks, ticks);
+                Long hwm = readVmHwm(Paths.get("/proc", Long.toString(pid), "status"));
+                if (hwm != null) {
+                    peakRssKb = Math.max(peakRssKb, hwm);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Процесс уже завершился — остаются предыдущие замеры
+            }
+        }
+    }
+
+    private static Long readVmHwm(Path status) throws IOException {
+        for (String line : Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+            if (line.startsWith("VmHWM:")) {
+                return Long.parseLong(line.substring(6).replace("kB", "").trim());
+            }
+        }
+        return null;
+    }
+}
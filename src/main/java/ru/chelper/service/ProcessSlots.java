@@ -0,0 +1,63 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий предел процессов oscript на узле ({@code code-runner.max-processes}). Разрешение держит процесс теста,
+ * пока выполняется, и тёплый хост {@link OscriptHostPool} — всё время жизни, в том числе простаивая.
+ */
+@Component
+public class ProcessSlots {
+
+    /** Как часто ожидающий разрешения пробует освободить его, остановив простаивающий хост. */
+    private static final long RECLAIM_POLL_MILLIS = 50;
+
+    /** Общий предел одновременно запущенных процессов oscript; 0 — по числу ядер. */
+    @Value("${code-runner.max-processes:0}")
+    private int maxProcesses;
+
+    private int limit;
+    private Semaphore slots;
+
+    @PostConstruct
+    void init() {
+        limit = maxProcesses > 0 ? maxProcesses : Runtime.getRuntime().availableProcessors();
+        slots = new Semaphore(limit, true);
+    }
+
+    /**
+     * Ждёт разрешения. Пока его нет, вызывает {@code reclaim} — тот может освободить разрешение,
+     * остановив простаивающий хост: иначе хосты пула могли бы занять все разрешения навсегда.
+     */
+    void acquire(Runnable reclaim) throws InterruptedException {
+        while (!slots.tryAcquire(RECLAIM_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            reclaim.run();
+        }
+    }
+
+    boolean tryAcquire() {
+        return slots.tryAcquire();
+    }
+
+    boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return slots.tryAcquire(timeout, unit);
+    }
+
+    void release() {
+        slots.release();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /** Сколько процессов oscript запущено сейчас, включая тёплые хосты. */
+    public int getActive() {
+        return limit - slots.availablePermits();
+    }
+}
@@ -0,0 +1,259 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import ru.chelper.dto.JudgeRunRequest;
+import ru.chelper.dto.JudgeRunResultDto;
+import ru.chelper.dto.TestCaseDto;
+import ru.chelper.entity.Task;
+import ru.chelper.service.CodeExecutionService.RunResult;
+
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Проверка на отдельных узлах ({@link JudgeWorkerService}) по HTTP. Задание уходит на исправный узел
+ * с наименьшим числом заданий в работе. Узел, к которому не удалось подключиться, исключается сразу,
+ * а не ответивший на проверку здоровья несколько раз подряд — после порога; вернётся он после первой
+ * успешной проверки здоровья. Долгий ответ на задание узел не исключает: занятый узел может проверять
+ * большой набор тестов дольше {@code read-timeout-seconds}, и тогда ошибкой завершается только это задание.
+ */
+@Component
+public class RemoteCodeRunner implements CodeRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteCodeRunner.class);
+
+    /** Адреса узлов проверки через запятую, например {@code http://localhost:8081,http://localhost:8082}. */
+    @Value("${code-runner.remote.workers:}")
+    private List<String> workerUrls;
+
+    @Value("${code-runner.token:}")
+    private String token;
+
+    /** Сколько ждать ответа узла на одно задание (все тесты отправки). */
+    @Value("${code-runner.remote.read-timeout-seconds:120}")
+    private int readTimeoutSeconds;
+
+    @Value("${code-runner.remote.health-interval-seconds:5}")
+    private int healthIntervalSeconds;
+
+    /** После скольких сбоев подряд узел исключается. */
+    @Value("${code-runner.remote.evict-after-failures:2}")
+    private int evictAfterFailures;
+
+    private final TestDataStore testDataStore;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger rotation = new AtomicInteger();
+    private RestClient client;
+    private ScheduledExecutorService healthChecker;
+
+    public RemoteCodeRunner(TestDataStore testDataStore) {
+        this.testDataStore = testDataStore;
+    }
+
+    @PostConstruct
+    void init() {
+        for (String url : workerUrls) {
+            if (!url.isBlank()) {
+                workers.add(new Worker(url.trim().replaceAll("/+$", "")));
+            }
+        }
+        if (workers.isEmpty()) {
+            return;
+        }
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(http);
+        factory.setReadTimeout(Duration.ofSeconds(readTimeoutSeconds));
+        client = RestClient.builder().requestFactory(factory).build();
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "judge-health");
+            t.setDaemon(true);
+            return t;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, healthIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "remote";
+    }
+
+    @Override
+    public RunResult run(TestSuite suite, String code, Task.EvaluationMode evaluationMode) {
+        JudgeRunRequest request;
+        try {
+            request = toRequest(suite, code, evaluationMode);
+        } catch (UncheckedIOException e) {
+            return new RunResult(false, 0, suite.size(), "Ошибка запуска: " + e.getMessage(), new ArrayList<>());
+        }
+        // Каждый узел пробуем не больше одного раза: упавший исключается и больше не выбирается
+        for (int attempt = 0; attempt < workers.size(); attempt++) {
+            Worker worker = pick();
+            if (worker == null) {
+                break;
+            }
+            worker.inFlight.incrementAndGet();
+            try {
+                JudgeRunResultDto dto = client.post()
+                        .uri(worker.url + "/api/judge/run")
+                        .header("X-Judge-Token", token)
+                        .body(request)
+                        .retrieve()
+                        .body(JudgeRunResultDto.class);
+                worker.succeeded();
+                return RunResult.fromDto(dto);
+            } catch (HttpClientErrorException e) {
+                // 4xx — ошибка конфигурации или задания, на другом узле будет то же самое
+                log.error("Узел проверки {} отклонил задание: {}", worker.url, e.getStatusCode());
+                return new RunResult(false, 0, suite.size(), "Ошибка запуска: узел проверки отклонил задание ("
+                        + e.getStatusCode().value() + ")", new ArrayList<>());
+            } catch (RestClientException e) {
+                if (isConnectFailure(e)) {
+                    log.warn("Узел проверки {} недоступен: {}", worker.url, e.getMessage());
+                    worker.failed(evictAfterFailures, true);
+                } else if (isTimeout(e)) {
+                    // Узел жив, но занят: повтор на другом узле удвоил бы нагрузку — завершаем только это задание
+                    log.warn("Узел проверки {} не ответил на задание за {} с", worker.url, readTimeoutSeconds);
+                    return new RunResult(false, 0, suite.size(), "Ошибка запуска: узел проверки не ответил за "
+                            + readTimeoutSeconds + " с.", new ArrayList<>());
+                } else {
+                    // Ответ 5xx или оборванное соединение: пробуем другой узел, исправность решит проверка здоровья
+                    log.warn("Узел проверки {} не выполнил задание: {}", worker.url, e.getMessage());
+                }
+            } finally {
+                worker.inFlight.decrementAndGet();
+            }
+        }
+        return new RunResult(false, 0, suite.size(), "Ошибка запуска: нет доступных узлов проверки.", new ArrayList<>());
+    }
+
+    private static boolean isConnectFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ConnectException || t instanceof HttpConnectTimeoutException
+                    || t instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof HttpTimeoutException || t instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Состояние узлов: адрес, исправность, число заданий в работе. */
+    public List<Map<String, Object>> getWorkers() {
+        return workers.stream()
+                .map(w -> Map.<String, Object>of("url", w.url, "healthy", w.healthy, "inFlight", w.inFlight.get()))
+                .toList();
+    }
+
+    /** Исправный узел с наименьшей загрузкой; при равенстве — по кругу. */
+    private Worker pick() {
+        int n = workers.size();
+        if (n == 0) {
+            return null;
+        }
+        int start = Math.floorMod(rotation.getAndIncrement(), n);
+        List<Worker> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            order.add(workers.get((start + i) % n));
+        }
+        return order.stream()
+                .filter(w -> w.healthy)
+                .min(Comparator.comparingInt(w -> w.inFlight.get()))
+                .orElse(null);
+    }
+
+    private void checkHealth() {
+        for (Worker worker : workers) {
+            try {
+                client.get().uri(worker.url + "/api/judge/health").retrieve().toBodilessEntity();
+                if (!worker.healthy) {
+                    log.info("Узел проверки {} снова доступен", worker.url);
+                }
+                worker.succeeded();
+            } catch (RestClientException e) {
+                worker.failed(evictAfterFailures, false);
+            }
+        }
+    }
+
+    private JudgeRunRequest toRequest(TestSuite suite, String code, Task.EvaluationMode evaluationMode) {
+        JudgeRunRequest request = new JudgeRunRequest();
+        request.setCode(code);
+        request.setEvaluationMode(evaluationMode != null ? evaluationMode.name() : null);
+        List<TestCaseDto> tests = new ArrayList<>(suite.size());
+        for (TestSuite.Test test : suite.getTests()) {
+            TestCaseDto dto = new TestCaseDto();
+            // Узел проверки не видит хранилище тестовых данных — данные из файлов уходят в теле задания.
+            // Узел держит задание в памяти целиком, поэтому и здесь данные читаются строками: на время отправки
+            // нужна память порядка суммы данных тестов задачи. Задачи с тестами в десятки мегабайт — для runner: local,
+            // где ожидаемый вывод читается из файла по мере сравнения
+            dto.setInput(testDataStore.input(test));
+            dto.setExpectedOutput(testDataStore.expectedOutput(test));
+            dto.setIsolated(test.isolated());
+            tests.add(dto);
+        }
+        request.setTests(tests);
+        return request;
+    }
+
+    private static final class Worker {
+        private final String url;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        private Worker(String url) {
+            this.url = url;
+        }
+
+        private void succeeded() {
+            failures.set(0);
+            healthy = true;
+        }
+
+        /** @param immediately к узлу не удалось подключиться с заданием — исключаем сразу, не дожидаясь порога */
+        private void failed(int threshold, boolean immediately) {
+            if ((failures.incrementAndGet() >= threshold || immediately) && healthy) {
+                healthy = false;
+                log.warn("Узел проверки {} исключён", url);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package ru.chelper.service;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Сравнение stdout с ожидаемым выводом по мере чтения, чтобы не ждать таймаута и не копить
+ * лишний вывод при заведомо неверном ответе.
+ * <p>
+ * Повторяет нормализацию {@code LocalProcessCodeRunner.normalizeOutput}: пробельные символы
+ * по краям не учитываются, «\r\n» и «\r» считаются «\n». Все такие символы — ASCII и не встречаются
+ * внутри многобайтовых последовательностей UTF-8, поэтому сравнение идёт по байтам без декодирования.
+ * Длина вывода тоже считается после нормализации: «\r\n» — один символ, пробелы по краям не считаются,
+ * поэтому верный вывод с CRLF или лишними пробелами в конце не останавливается как слишком длинный.
+ * Бесконечный вывод пробелов ограничивает общий предел вывода процесса.
+ * <p>
+ * Ожидаемый вывод из файла хранилища читается из потока по мере сравнения и нормализуется так же на лету,
+ * поэтому в памяти держится только ещё не сверенный хвост, а не весь файл. Такое сравнение нужно закрыть.
+ */
+final class StreamingOutputComparator implements Closeable {
+
+    private static final int END = -1;
+
+    private final Expected expected;
+    private int matched;
+    /** Пробельные символы после {@code matched}: уже сверены, но засчитываются только перед значащим символом. */
+    private int pending;
+    /** Сколько из {@code pending} совпало до первого расхождения; -1 — расхождения нет. */
+    private int pendingMatched = -1;
+    private boolean started;
+    private boolean lastWasCr;
+    private boolean diverged;
+    private boolean tooLong;
+    /** Ожидаемый вывод не удалось прочитать: досрочно не останавливаем, вердикт вынесет итоговое сравнение. */
+    private boolean failed;
+    /** Символов и строк в сверенной части ожидаемого вывода — для места расхождения без её хранения. */
+    private int chars;
+    private int line = 1;
+    private int lineStart;
+    /** Расхождение внутри многобайтового символа — он не считается совпавшим. */
+    private boolean stoppedInsideChar;
+
+    /** @param normalizedExpected ожидаемый вывод после нормализации */
+    StreamingOutputComparator(String normalizedExpected) {
+        this(normalizedExpected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** То же, но ожидаемый вывод уже в UTF-8 (подготовлен в {@link TestSuite}); массив не изменяется. */
+    StreamingOutputComparator(byte[] normalizedExpected) {
+        this.expected = pos -> pos < normalizedExpected.length ? normalizedExpected[pos] & 0xFF : END;
+    }
+
+    /** Ожидаемый вывод в UTF-8 как записан, без нормализации; поток закрывается в {@link #close()}. */
+    StreamingOutputComparator(InputStream rawExpected) {
+        this.expected = new NormalizingStream(rawExpected);
+    }
+
+    /** @return {@code false}, если вывод уже точно не совпадёт с ожидаемым */
+    boolean accept(byte[] chunk, int off, int len) {
+        if (failed) {
+            return true;
+        }
+        int end = off + len;
+        try {
+            for (int i = off; i < end; i++) {
+                accept(chunk[i]);
+                if (diverged || tooLong) return false;
+            }
+        } catch (UncheckedIOException e) {
+            failed = true;
+        }
+        return true;
+    }
+
+    private void accept(byte b) {
+        if (b == '\r') {
+            lastWasCr = true;
+            if (started) whitespace((byte) '\n');
+            return;
+        }
+        if (b == '\n' && lastWasCr) {
+            lastWasCr = false;
+            return;
+        }
+        lastWasCr = false;
+        if ((b & 0xFF) <= ' ') {
+            // Пробельный символ может оказаться концом вывода — расхождение в нём засчитываем только перед следующим значащим
+            if (started) whitespace(b);
+            return;
+        }
+        started = true;
+        if (pending > 0) {
+            if (pendingMatched >= 0) {
+                advance(pendingMatched);
+                stop();
+                return;
+            }
+            advance(pending);
+            pending = 0;
+        }
+        match(b);
+    }
+
+    private void whitespace(byte b) {
+        if (pendingMatched < 0 && expected.at(matched + pending) != (b & 0xFF)) {
+            pendingMatched = pending;
+        }
+        pending++;
+    }
+
+    private void match(byte b) {
+        if (expected.at(matched) != (b & 0xFF)) {
+            stop();
+            return;
+        }
+        advance(1);
+    }
+
+    /** Засчитывает следующие {@code count} байт ожидаемого вывода как совпавшие. */
+    private void advance(int count) {
+        for (int end = matched + count; matched < end; matched++) {
+            int b = expected.at(matched);
+            if ((b & 0xC0) != 0x80) chars++;
+            if (b == '\n') {
+                line++;
+                lineStart = chars;
+            }
+        }
+        expected.release(matched);
+    }
+
+    /** Расхождение на позиции {@code matched}: за концом ожидаемого вывода — вывод длиннее ожидаемого. */
+    private void stop() {
+        int next = expected.at(matched);
+        if (next == END) {
+            tooLong = true;
+        } else {
+            diverged = true;
+            stoppedInsideChar = matched > 0 && (next & 0xC0) == 0x80;
+        }
+    }
+
+    boolean isAborted() {
+        return diverged || tooLong;
+    }
+
+    boolean isTooLong() {
+        return tooLong;
+    }
+
+    /**
+     * Весь ожидаемый вывод совпал с принятым и за ним ничего нет. Для вывода, поданного целиком после
+     * нормализации; пробельные символы в конце принятого не учитываются.
+     */
+    boolean isComplete() {
+        return !isAborted() && !failed && expected.at(matched) == END;
+    }
+
+    /** Позиция (в символах ожидаемого вывода) первого расхождения; без расхождения — длина совпавшей части. */
+    int mismatchOffset() {
+        return stoppedInsideChar ? chars - 1 : chars;
+    }
+
+    /** Человекочитаемое место первого расхождения: «строка N, символ M». */
+    String describeMismatch() {
+        return "строка " + line + ", символ " + (mismatchOffset() - lineStart + 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (expected instanceof NormalizingStream stream) {
+            stream.in.close();
+        }
+    }
+
+    /** Байты нормализованного ожидаемого вывода; позиции запрашиваются не раньше последней засчитанной. */
+    private interface Expected {
+        /** Байт (0–255) на позиции {@code pos} или {@link #END} за концом. */
+        int at(int pos);
+
+        /** Позиции до {@code pos} больше не запрашиваются. */
+        default void release(int pos) {
+        }
+    }
+
+    /**
+     * Нормализует поток при чтении: пробельные символы в начале пропускаются, «\r\n» и «\r» становятся «\n»,
+     * а пробельные символы читаются вперёд до следующего значащего — в конце потока они отбрасываются.
+     */
+    private static final class NormalizingStream implements Expected {
+        private final InputStream in;
+        private byte[] buffer = new byte[8192];
+        /** Позиция {@code buffer[0]} в нормализованном выводе. */
+        private int base;
+        /** Байтов в буфере, которые точно входят в нормализованный вывод. */
+        private int confirmed;
+        /** Вместе с пробельными в конце, которые ещё могут оказаться концом вывода. */
+        private int length;
+        private boolean started;
+        private boolean lastWasCr;
+        private boolean eof;
+
+        private NormalizingStream(InputStream in) {
+            this.in = new BufferedInputStream(in);
+        }
+
+        @Override
+        public int at(int pos) {
+            while (pos >= base + confirmed && !eof) {
+                readSignificant();
+            }
+            return pos < base + confirmed ? buffer[pos - base] & 0xFF : END;
+        }
+
+        @Override
+        public void release(int pos) {
+            int drop = pos - base;
+            if (drop > buffer.length / 2) {
+                System.arraycopy(buffer, drop, buffer, 0, length - drop);
+                base = pos;
+                confirmed -= drop;
+                length -= drop;
+            }
+        }
+
+        /** Дочитывает до следующего значащего байта включительно. */
+        private void readSignificant() {
+            try {
+                for (int b; (b = in.read()) >= 0; ) {
+                    if (b == '\r') {
+                        lastWasCr = true;
+                        if (started) append('\n');
+                        continue;
+                    }
+                    if (b == '\n' && lastWasCr) {
+                        lastWasCr = false;
+                        continue;
+                    }
+                    lastWasCr = false;
+                    if (b <= ' ') {
+                        if (started) append(b);
+                        continue;
+                    }
+                    started = true;
+                    append(b);
+                    confirmed = length;
+                    return;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось прочитать ожидаемый вывод: " + e.getMessage(), e);
+            }
+            eof = true;
+            length = confirmed;
+        }
+
+        private void append(int b) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[length++] = (byte) b;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ru.chelper.service;
+
+/** Отправка не принята в очередь проверки; повторить её можно через {@link #getRetryAfterSeconds()} секунд. */
+public class SubmissionRejectedException extends IllegalStateException {
+
+    public enum Reason {
+        /** У пользователя слишком много решений на проверке. */
+        USER_LIMIT,
+        /** Очередь проверки заполнена. */
+        QUEUE_FULL,
+        /** Результат не будет готов за целевое время — узел перегружен. */
+        OVERLOADED
+    }
+
+    private final Reason reason;
+    private final int retryAfterSeconds;
+
+    public SubmissionRejectedException(Reason reason, String message, int retryAfterSeconds) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
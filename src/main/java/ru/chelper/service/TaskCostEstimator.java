@@ -0,0 +1,64 @@
+package ru.chelper.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.chelper.entity.TaskCostEstimate;
+import ru.chelper.repository.TaskCostEstimateRepository;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ожидаемое время проверки отправки: сглаженное время одного теста задачи, умноженное на число тестов.
+ * Сглаживание экспоненциальное — новое наблюдение входит с весом {@code decay}, поэтому оценка
+ * следует за изменением тестов, но не скачет от единичных медленных прогонов.
+ */
+@Service
+public class TaskCostEstimator {
+
+    @Value("${code-runner.scheduler.decay:0.2}")
+    private double decay;
+
+    /** Время одного теста для задач, которые ещё не проверялись. */
+    @Value("${code-runner.scheduler.default-per-test-millis:500}")
+    private long defaultPerTestMillis;
+
+    private final TaskCostEstimateRepository repository;
+
+    public TaskCostEstimator(TaskCostEstimateRepository repository) {
+        this.repository = repository;
+    }
+
+    @Transactional(readOnly = true)
+    public long expectedCostMillis(Long taskId, int testCount) {
+        double perTest = repository.findById(taskId)
+                .map(TaskCostEstimate::getPerTestMillis)
+                .orElse((double) defaultPerTestMillis);
+        return Math.max(Math.round(perTest * Math.max(testCount, 1)), 1);
+    }
+
+    /** Учитывает реальный прогон: {@code testsRun} выполненных тестов заняли в сумме {@code millis}. */
+    @Transactional
+    public void record(Long taskId, int testsRun, long millis) {
+        if (taskId == null || testsRun <= 0) {
+            return;
+        }
+        repository.addObservation(taskId, (double) millis / testsRun, decay);
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getEstimates() {
+        return repository.findAll().stream()
+                .map(e -> {
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    m.put("taskId", e.getTaskId());
+                    m.put("perTestMillis", Math.round(e.getPerTestMillis()));
+                    m.put("samples", e.getSamples());
+                    m.put("updatedAt", e.getUpdatedAt());
+                    return m;
+                })
+                .toList();
+    }
+}
@@ -7,6 +7,7 @@ import ru.chelper.dto.TestCaseDto;
 import ru.chelper.entity.Task;
 import ru.chelper.entity.TestCase;
 import ru.chelper.entity.Topic;
+import ru.chelper.repository.AttemptTestResultRepository;
 import ru.chelper.repository.TaskRepository;
 import ru.chelper.repository.TopicRepository;
 import ru.chelper.repository.TestCaseRepository;
@@ -23,13 +24,25 @@ public class TaskService {
     private final TaskRepository taskRepository;
     private final TopicRepository topicRepository;
     private final TestCaseRepository testCaseRepository;
+    private final VerdictCache verdictCache;
+    private final AttemptTestResultRepository testResultRepository;
+    private final TestDataStore testDataStore;
+    private final TestSuiteCache testSuiteCache;
 
     public TaskService(TaskRepository taskRepository,
                        TopicRepository topicRepository,
-                       TestCaseRepository testCaseRepository) {
+                       TestCaseRepository testCaseRepository,
+                       VerdictCache verdictCache,
+                       AttemptTestResultRepository testResultRepository,
+                       TestDataStore testDataStore,
+                       TestSuiteCache testSuiteCache) {
         this.taskRepository = taskRepository;
         this.topicRepository = topicRepository;
         this.testCaseRepository = testCaseRepository;
+        this.verdictCache = verdictCache;
+        this.testResultRepository = testResultRepository;
+        this.testDataStore = testDataStore;
+        this.testSuiteCache = testSuiteCache;
     }
 
     @Transactional(readOnly = true)
@@ -55,6 +68,7 @@ public class TaskService {
         task.setTitle(dto.getTitle());
         task.setCondition(dto.getCondition());
         task.setSortOrder(dto.getSortOrder() != null ? dto.getSortOrder() : 0);
+        if (dto.getEvaluationMode() != null) task.setEvaluationMode(parseEvaluationMode(dto.getEvaluationMode()));
         task = taskRepository.save(task);
         return toDto(task);
     }
@@ -66,6 +80,7 @@ public class TaskService {
         if (dto.getTitle() != null) task.setTitle(dto.getTitle());
         if (dto.getCondition() != null) task.setCondition(dto.getCondition());
         if (dto.getSortOrder() != null) task.setSortOrder(dto.getSortOrder());
+        if (dto.getEvaluationMode() != null) task.setEvaluationMode(parseEvaluationMode(dto.getEvaluationMode()));
         task = taskRepository.save(task);
         return toDto(task);
     }
@@ -76,17 +91,30 @@ public class TaskService {
             throw new IllegalArgumentException("Задача не найдена");
         }
         taskRepository.deleteById(id);
+        verdictCache.invalidateTask(id);
+        testSuiteCache.evict(id);
+    }
+
+    /** Время, процессорное время и память по каждому тесту задачи за все проверки. */
+    @Transactional(readOnly = true)
+    public List<AttemptTestResultRepository.TestResourceStats> getResourceStats(Long taskId) {
+        if (!taskRepository.existsById(taskId)) {
+            throw new IllegalArgumentException("Задача не найдена");
+        }
+        return testResultRepository.aggregateByTask(taskId);
     }
 
     @Transactional
-    public void addTestCase(Long taskId, String input, String expectedOutput) {
+    public void addTestCase(Long taskId, String input, String expectedOutput, boolean isolated) {
         Task task = taskRepository.findById(taskId)
                 .orElseThrow(() -> new IllegalArgumentException("Задача не найдена"));
         TestCase tc = new TestCase();
         tc.setTask(task);
-        tc.setInput(input != null ? input : "");
-        tc.setExpectedOutput(expectedOutput != null ? expectedOutput : "");
+        testDataStore.put(tc, input != null ? input : "", expectedOutput != null ? expectedOutput : "");
+        tc.setIsolated(isolated);
         testCaseRepository.save(tc);
+        task.bumpTestsVersion();
+        verdictCache.invalidateTask(taskId);
     }
 
     public static List<TestCaseDto> parse(String text) {
@@ -141,12 +169,14 @@ public class TaskService {
         List<TestCase> entities = tests.stream().map(t -> {
             TestCase tc = new TestCase();
             tc.setTask(task);
-            tc.setInput(t.getInput().trim());
-            tc.setExpectedOutput(t.getExpectedOutput().trim());
+            testDataStore.put(tc, t.getInput().trim(), t.getExpectedOutput().trim());
+            tc.setIsolated(Boolean.TRUE.equals(t.getIsolated()));
             return tc;
         }).toList();
 
         testCaseRepository.saveAll(entities);
+        task.bumpTestsVersion();
+        verdictCache.invalidateTask(taskId);
     }
 
     @Transactional(readOnly = true)
@@ -161,8 +191,9 @@ public class TaskService {
 
                     TestCaseDto dto = new TestCaseDto();
 
-                    dto.setInput(tc.getInput());
-                    dto.setExpectedOutput(tc.getExpectedOutput());
+                    dto.setInput(testDataStore.input(tc));
+                    dto.setExpectedOutput(testDataStore.expectedOutput(tc));
+                    dto.setIsolated(Boolean.TRUE.equals(tc.getIsolated()));
 
                     return dto;
 
@@ -171,7 +202,7 @@ public class TaskService {
     
     @Transactional(readOnly = true)
     public int getTestCaseCount(Long taskId) {
-        return testCaseRepository.findByTaskIdOrderByIdAsc(taskId).size();
+        return (int) testCaseRepository.countByTaskId(taskId);
     }
 
     private TaskDto toDto(Task t) {
@@ -181,6 +212,15 @@ public class TaskService {
         dto.setCondition(t.getCondition());
         dto.setTopicId(t.getTopic().getId());
         dto.setSortOrder(t.getSortOrder());
+        dto.setEvaluationMode((t.getEvaluationMode() != null ? t.getEvaluationMode() : Task.EvaluationMode.FULL).name());
         return dto;
     }
+
+    private static Task.EvaluationMode parseEvaluationMode(String value) {
+        try {
+            return Task.EvaluationMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный режим оценки: " + value + " (допустимо FULL или FAIL_FAST)");
+        }
+    }
 }
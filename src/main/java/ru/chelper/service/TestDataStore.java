@@ -0,0 +1,397 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.chelper.entity.TestCase;
+import ru.chelper.repository.TestCaseRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище больших тестовых данных. Вход и ожидаемый вывод длиннее {@code code-runner.test-data.inline-max-bytes}
+ * лежат файлами под {@code code-runner.test-data.dir}, а в {@link TestCase} — только путь относительно каталога
+ * и SHA-256 содержимого. Файлы адресуются содержимым ({@code ab/abcdef….txt}), поэтому одинаковые данные разных
+ * тестов хранятся один раз и не удаляются вместе с тестом.
+ * <p>
+ * Файл сверяется с контрольной суммой при первом обращении после запуска: повреждённые данные — ошибка
+ * проверки, а не неверный вердикт.
+ * <p>
+ * Каталог должен переживать пересоздание контейнера (том) и быть общим для всех экземпляров, которые
+ * проверяют решения из общей очереди. Поэтому при старте проверяется, что все файлы, на которые ссылаются
+ * тесты, на месте: пустой или чужой каталог останавливает запуск, а не превращается в ошибки проверок.
+ * <p>
+ * Файлы, на которые больше не ссылается ни один тест (например, после повторной загрузки тестов задачи),
+ * периодически удаляются — см. {@link #sweepOrphans()}.
+ */
+@Service
+public class TestDataStore {
+
+    private static final Logger log = LoggerFactory.getLogger(TestDataStore.class);
+    private static final int MISSING_SHOWN = 5;
+
+    @Value("${code-runner.test-data.dir:test-data}")
+    private String dirPath;
+
+    /** Данные не длиннее этого (в байтах UTF-8) хранятся в столбцах test_cases. */
+    @Value("${code-runner.test-data.inline-max-bytes:65536}")
+    private int inlineMaxBytes;
+
+    /** Не запускаться, если нет файлов, на которые ссылаются тесты; {@code false} — только записать ошибку в журнал. */
+    @Value("${code-runner.test-data.verify-on-startup:true}")
+    private boolean verifyOnStartup;
+
+    /**
+     * Файл без ссылок из тестов удаляется не раньше, чем через столько часов после записи или повторного
+     * использования; 0 — не удалять. Срок защищает данные загрузки, транзакция которой ещё не зафиксирована,
+     * и данные наборов тестов, по которым ещё идут проверки.
+     */
+    @Value("${code-runner.test-data.orphan-grace-hours:24}")
+    private int orphanGraceHours;
+
+    @Value("${code-runner.test-data.sweep-interval-minutes:60}")
+    private int sweepIntervalMinutes;
+
+    private final Set<String> verified = ConcurrentHashMap.newKeySet();
+    private final TestCaseRepository testCaseRepository;
+    private Path base;
+    private ScheduledExecutorService sweeper;
+
+    public TestDataStore(TestCaseRepository testCaseRepository) {
+        this.testCaseRepository = testCaseRepository;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        base = Paths.get(dirPath).toAbsolutePath().normalize();
+        Files.createDirectories(base);
+        checkReferencedFiles();
+        if (orphanGraceHours > 0 && sweepIntervalMinutes > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "test-data-sweep");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepIntervalMinutes, sweepIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private void checkReferencedFiles() {
+        List<String> paths = testCaseRepository.findStoredDataPaths();
+        List<String> missing = paths.stream().filter(p -> !Files.isRegularFile(resolve(p))).toList();
+        if (missing.isEmpty()) {
+            log.info("Хранилище тестовых данных {}: файлов в тестах {}", base, paths.size());
+            return;
+        }
+        String message = "В хранилище тестовых данных " + base + " нет " + missing.size() + " из " + paths.size()
+                + " файлов, на которые ссылаются тесты (например, " + String.join(", ", missing.subList(0, Math.min(missing.size(), MISSING_SHOWN)))
+                + "). Каталог code-runner.test-data.dir должен быть постоянным томом, общим для всех экземпляров, проверяющих решения";
+        if (verifyOnStartup) {
+            throw new IllegalStateException(message);
+        }
+        log.error(message);
+    }
+
+    /** Записывает вход и ожидаемый вывод теста: короткие — в столбцы, длинные — в файлы хранилища. */
+    public void put(TestCase tc, String input, String expectedOutput) {
+        Stored in = store(input);
+        tc.setInput(in == null ? input : null);
+        tc.setInputPath(in == null ? null : in.path());
+        tc.setInputChecksum(in == null ? null : in.checksum());
+        Stored out = store(expectedOutput);
+        // В существующих базах столбец expected_output — NOT NULL
+        tc.setExpectedOutput(out == null ? expectedOutput : "");
+        tc.setExpectedOutputPath(out == null ? null : out.path());
+        tc.setExpectedOutputChecksum(out == null ? null : out.checksum());
+    }
+
+    /** Вход теста — из столбца или из файла. */
+    public String input(TestCase tc) {
+        return tc.getInputPath() != null ? read(tc.getInputPath(), tc.getInputChecksum()) : tc.getInput();
+    }
+
+    /** Ожидаемый вывод теста — из столбца или из файла. */
+    public String expectedOutput(TestCase tc) {
+        return tc.getExpectedOutputPath() != null
+                ? read(tc.getExpectedOutputPath(), tc.getExpectedOutputChecksum())
+                : tc.getExpectedOutput();
+    }
+
+    /** Вход подготовленного теста — из набора или из файла. */
+    public String input(TestSuite.Test test) {
+        return test.inputPath() != null ? read(test.inputPath(), test.inputChecksum()) : test.inputText();
+    }
+
+    /** Ожидаемый вывод подготовленного теста: из набора — нормализованный, из файла — как записан. */
+    public String expectedOutput(TestSuite.Test test) {
+        return test.expectedPath() != null ? read(test.expectedPath(), test.expectedChecksum()) : test.expectedText();
+    }
+
+    /**
+     * Сравнение с ожидаемым выводом подготовленного теста. Из файла хранилища ожидаемый вывод читается
+     * по мере сравнения, а не целиком в память; сравнение нужно закрыть.
+     */
+    StreamingOutputComparator expectedComparator(TestSuite.Test test) {
+        if (test.expectedPath() == null) {
+            return new StreamingOutputComparator(test.expected());
+        }
+        Path file = resolve(test.expectedPath());
+        verify(test.expectedPath(), test.expectedChecksum(), file);
+        try {
+            return new StreamingOutputComparator(Files.newInputStream(file));
+        } catch (NoSuchFileException e) {
+            throw missing(test.expectedPath(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать тестовые данные " + test.expectedPath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Начало ожидаемого вывода — не больше {@code maxBytes} байт, как записано (последний символ может
+     * быть обрезан). Для сообщений о непройденном тесте: файл целиком не читается.
+     */
+    String expectedOutputStart(TestSuite.Test test, int maxBytes) {
+        if (test.expectedPath() == null) {
+            return test.expectedText();
+        }
+        Path file = resolve(test.expectedPath());
+        verify(test.expectedPath(), test.expectedChecksum(), file);
+        try (InputStream in = Files.newInputStream(file)) {
+            return new String(in.readNBytes(maxBytes), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            throw missing(test.expectedPath(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать тестовые данные " + test.expectedPath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Файл со входом теста, который можно подать процессу в stdin; {@code null} — вход хранится в столбце. */
+    public Path inputFile(TestSuite.Test test) {
+        if (test.inputPath() == null) {
+            return null;
+        }
+        Path file = resolve(test.inputPath());
+        verify(test.inputPath(), test.inputChecksum(), file);
+        return file;
+    }
+
+    /** Записывает данные в файл; {@code null} — данные короткие и остаются в столбце. */
+    private Stored store(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= inlineMaxBytes) {
+            return null;
+        }
+        String checksum = HexFormat.of().formatHex(sha256().digest(bytes));
+        String relative = checksum.substring(0, 2) + "/" + checksum + ".txt";
+        Path target = resolve(relative);
+        try {
+            if (!touch(target)) {
+                Files.createDirectories(target.getParent());
+                Path tmp = Files.createTempFile(target.getParent(), checksum, ".tmp");
+                try {
+                    Files.write(tmp, bytes);
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // Те же данные одновременно записал другой поток
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить тестовые данные: " + e.getMessage(), e);
+        }
+        verified.add(relative);
+        return new Stored(relative, checksum);
+    }
+
+    /**
+     * Отмечает повторное использование файла, чтобы {@link #sweepOrphans()} не удалил его до фиксации
+     * ссылающихся тестов; {@code false} — файла нет.
+     */
+    private static boolean touch(Path file) throws IOException {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Удаляет файлы хранилища, на которые не ссылается ни один тест и которые записаны или повторно использованы
+     * раньше, чем {@code code-runner.test-data.orphan-grace-hours} назад. Каталог общий для экземпляров, удалять
+     * может любой из них. Файл сначала переименовывается и проверяется ещё раз: если его успели повторно
+     * использовать, он возвращается, а запись, не заставшая файл на месте, создаёт его заново.
+     *
+     * @return сколько файлов удалено
+     */
+    int sweepOrphans() {
+        Set<String> referenced = new HashSet<>(testCaseRepository.findStoredDataPaths());
+        Instant cutoff = Instant.now().minus(Duration.ofHours(orphanGraceHours));
+        List<Path> candidates;
+        try (Stream<Path> files = Files.walk(base, 2)) {
+            candidates = files.filter(f -> base.relativize(f).getNameCount() == 2 && Files.isRegularFile(f))
+                    .filter(f -> !referenced.contains(relative(f)))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось просмотреть хранилище тестовых данных: " + e.getMessage(), e);
+        }
+        int removed = 0;
+        for (Path file : candidates) {
+            try {
+                if (olderThan(file, cutoff) && removeUnlessReused(file, cutoff)) {
+                    verified.remove(relative(file));
+                    removed++;
+                }
+            } catch (NoSuchFileException e) {
+                // Файл уже удалил другой экземпляр
+            } catch (IOException e) {
+                log.warn("Не удалось удалить файл тестовых данных {}: {}", file, e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            log.info("Из хранилища тестовых данных {} удалено файлов, на которые не ссылаются тесты: {}", base, removed);
+        }
+        return removed;
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweepOrphans();
+        } catch (RuntimeException e) {
+            log.warn("Очистка хранилища тестовых данных не удалась: {}", e.getMessage());
+        }
+    }
+
+    private boolean removeUnlessReused(Path file, Instant cutoff) throws IOException {
+        Path removing = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".removing");
+        Files.move(file, removing, StandardCopyOption.ATOMIC_MOVE);
+        if (olderThan(removing, cutoff)) {
+            Files.delete(removing);
+            return true;
+        }
+        try {
+            Files.move(removing, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Запись уже создала файл заново
+            Files.delete(removing);
+        }
+        return false;
+    }
+
+    private static boolean olderThan(Path file, Instant cutoff) throws IOException {
+        return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+    }
+
+    private String relative(Path file) {
+        return base.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private String read(String relative, String checksum) {
+        Path file = resolve(relative);
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (!verified.contains(relative)) {
+                if (!HexFormat.of().formatHex(sha256().digest(bytes)).equalsIgnoreCase(checksum)) {
+                    throw corrupted(relative);
+                }
+                verified.add(relative);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            throw missing(relative, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать тестовые данные " + relative + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void verify(String relative, String checksum, Path file) {
+        if (verified.contains(relative)) {
+            return;
+        }
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, n);
+            }
+        } catch (NoSuchFileException e) {
+            throw missing(relative, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать тестовые данные " + relative + ": " + e.getMessage(), e);
+        }
+        if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(checksum)) {
+            throw corrupted(relative);
+        }
+        verified.add(relative);
+    }
+
+    private Path resolve(String relative) {
+        Path file = base.resolve(relative).normalize();
+        if (!file.startsWith(base)) {
+            throw new IllegalStateException("Путь тестовых данных вне хранилища: " + relative);
+        }
+        return file;
+    }
+
+    /** Файла нет — хранилище потеряно или не общее с экземпляром, записавшим тест; это сбой узла, а не решения. */
+    private UncheckedIOException missing(String relative, NoSuchFileException e) {
+        log.error("Нет файла тестовых данных {} в {}: каталог code-runner.test-data.dir потерян или не общий для экземпляров",
+                relative, base);
+        return new UncheckedIOException("Нет файла тестовых данных " + relative, e);
+    }
+
+    private static UncheckedIOException corrupted(String relative) {
+        String message = "Тестовые данные " + relative + " не совпадают с контрольной суммой";
+        return new UncheckedIOException(message, new IOException(message));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Stored(String path, String checksum) {
+    }
+}
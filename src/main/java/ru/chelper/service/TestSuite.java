@@ -0,0 +1,139 @@
+package ru.chelper.service;
+
+import ru.chelper.entity.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Набор тестов задачи, подготовленный к проверке: вход уже закодирован в UTF-8, ожидаемый вывод
+ * нормализован, одинаковые тесты отмечены, хэш набора для кэша вердиктов посчитан. Неизменяем
+ * и разделяется всеми проверками задачи, пока не изменится версия её тестов ({@link TestSuiteCache}).
+ * <p>
+ * Набор живёт дольше сессии, в которой загружены тесты, поэтому сущностей {@link TestCase} не держит:
+ * от теста остаются id, данные в UTF-8 и путь с контрольной суммой для данных в файлах {@link TestDataStore}.
+ * Данные из файлов сюда не загружаются — их читает исполнитель во время проверки.
+ */
+public final class TestSuite {
+
+    private final Long taskId;
+    private final long version;
+    private final List<Test> tests;
+    private final List<Test> distinctTests;
+    private final String hash;
+
+    private TestSuite(Long taskId, long version, List<Test> tests, List<Test> distinctTests, String hash) {
+        this.taskId = taskId;
+        this.version = version;
+        this.tests = tests;
+        this.distinctTests = distinctTests;
+        this.hash = hash;
+    }
+
+    /** Готовит тесты к проверке; {@code taskId} может быть {@code null} (задание другого узла). */
+    public static TestSuite compile(Long taskId, long version, List<TestCase> cases) {
+        List<Test> tests = new ArrayList<>(cases.size());
+        List<Test> distinct = new ArrayList<>(cases.size());
+        Map<String, Integer> firstByContent = new HashMap<>();
+        for (int i = 0; i < cases.size(); i++) {
+            TestCase tc = cases.get(i);
+            String input = tc.getInputPath() == null && tc.getInput() != null ? tc.getInput() : "";
+            String expected = tc.getExpectedOutputPath() == null
+                    ? LocalProcessCodeRunner.normalizeOutput(tc.getExpectedOutput())
+                    : null;
+            // Одинаковые файлы хранилища — одинаковые данные: оно адресует их содержимым.
+            // Изолированный тест не считается повтором неизолированного: они выполняются по-разному
+            String content = (Boolean.TRUE.equals(tc.getIsolated()) ? "isolated\u0000" : "")
+                    + (tc.getInputPath() != null ? "file:" + tc.getInputChecksum() : "text:" + input)
+                    + "\u0000" + (expected != null ? "text:" + expected : "file:" + tc.getExpectedOutputChecksum());
+            Integer first = firstByContent.putIfAbsent(content, i);
+            Test test = new Test(i, tc.getId(), Boolean.TRUE.equals(tc.getIsolated()),
+                    input.getBytes(StandardCharsets.UTF_8), tc.getInputPath(), tc.getInputChecksum(),
+                    expected != null ? expected.getBytes(StandardCharsets.UTF_8) : null,
+                    tc.getExpectedOutputPath(), tc.getExpectedOutputChecksum(),
+                    first != null ? first : i);
+            tests.add(test);
+            if (!test.isDuplicate()) {
+                distinct.add(test);
+            }
+        }
+        return new TestSuite(taskId, version, Collections.unmodifiableList(tests),
+                distinct.size() == tests.size() ? Collections.unmodifiableList(tests) : Collections.unmodifiableList(distinct),
+                VerdictCache.suiteHash(cases));
+    }
+
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /** Тесты в порядке задачи. */
+    public List<Test> getTests() {
+        return tests;
+    }
+
+    /** Тесты без повторов — первые из одинаковых, в порядке задачи. */
+    public List<Test> getDistinctTests() {
+        return distinctTests;
+    }
+
+    /** В наборе есть одинаковые тесты. */
+    public boolean hasDuplicates() {
+        return distinctTests.size() < tests.size();
+    }
+
+    public int size() {
+        return tests.size();
+    }
+
+    /** SHA-256 упорядоченного набора тестов — часть ключа {@link VerdictCache}. */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Подготовленный тест.
+     *
+     * @param index            номер теста в задаче
+     * @param testCaseId       id теста в базе; {@code null} у тестов задания другого узла
+     * @param isolated         тест выполняется только отдельным процессом
+     * @param input            вход из базы в UTF-8 — то, что пишется в stdin; пустой, если входа нет или он в файле
+     * @param inputPath        файл входа в {@link TestDataStore}; {@code null}, если вход в базе
+     * @param inputChecksum    SHA-256 файла входа
+     * @param expected         нормализованный ожидаемый вывод в UTF-8; {@code null}, если он в файле
+     * @param expectedPath     файл ожидаемого вывода в {@link TestDataStore}; {@code null}, если вывод в базе
+     * @param expectedChecksum SHA-256 файла ожидаемого вывода
+     * @param sameAs           номер первого теста с тем же входом, ожидаемым выводом и флагом isolated
+     *                         (свой номер, если таких нет)
+     */
+    public record Test(int index, Long testCaseId, boolean isolated, byte[] input, String inputPath, String inputChecksum,
+                       byte[] expected, String expectedPath, String expectedChecksum, int sameAs) {
+
+        /** Тест повторяет более ранний тест набора. */
+        public boolean isDuplicate() {
+            return sameAs != index;
+        }
+
+        /** Вход или ожидаемый вывод лежат в файлах {@link TestDataStore}. */
+        public boolean inFiles() {
+            return inputPath != null || expectedPath != null;
+        }
+
+        /** Вход из базы строкой. */
+        public String inputText() {
+            return new String(input, StandardCharsets.UTF_8);
+        }
+
+        /** Нормализованный ожидаемый вывод строкой; {@code null}, если он в файле. */
+        public String expectedText() {
+            return expected != null ? new String(expected, StandardCharsets.UTF_8) : null;
+        }
+    }
+}
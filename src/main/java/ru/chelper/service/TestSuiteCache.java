@@ -0,0 +1,85 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.chelper.entity.TestCase;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Подготовленные наборы тестов ({@link TestSuite}) по задачам. Запись годна, пока версия тестов задачи
+ * ({@code Task.testsVersion}, её увеличивает {@link TaskService} при любом изменении тестов) совпадает
+ * с версией, под которой набор подготовлен. Версия хранится в базе, поэтому изменение тестов видят все узлы;
+ * при попадании тесты из базы не загружаются. Размер ограничен, вытесняются давно не использованные наборы.
+ */
+@Service
+public class TestSuiteCache {
+
+    @Value("${code-runner.test-suite-cache.max-size:1000}")
+    private int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final JudgeMetrics metrics;
+    private Map<Long, TestSuite> suites;
+
+    public TestSuiteCache(JudgeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    void init() {
+        suites = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TestSuite> eldest) {
+                return size() > maxSize;
+            }
+        };
+        metrics.counter("judge.test.suite.cache.requests", "Обращения к кэшу наборов тестов", "result", "hit", hits, AtomicLong::get);
+        metrics.counter("judge.test.suite.cache.requests", "Обращения к кэшу наборов тестов", "result", "miss", misses, AtomicLong::get);
+        metrics.gauge("judge.test.suite.cache.size", "Наборов тестов в кэше", this, TestSuiteCache::size);
+    }
+
+    /**
+     * Набор тестов задачи версии {@code version}. При промахе тесты берутся из {@code loader}
+     * (вызывается в транзакции, где задача загружена) и подготавливаются.
+     */
+    public TestSuite get(Long taskId, long version, Supplier<List<TestCase>> loader) {
+        TestSuite suite;
+        synchronized (suites) {
+            suite = suites.get(taskId);
+        }
+        if (suite != null && suite.getVersion() == version) {
+            hits.incrementAndGet();
+            return suite;
+        }
+        misses.incrementAndGet();
+        suite = TestSuite.compile(taskId, version, loader.get());
+        synchronized (suites) {
+            TestSuite current = suites.get(taskId);
+            // Параллельная проверка могла уже положить набор более новой версии
+            if (current == null || current.getVersion() <= version) {
+                suites.put(taskId, suite);
+            }
+        }
+        return suite;
+    }
+
+    /** Удаляет набор задачи — например, при её удалении. */
+    public void evict(Long taskId) {
+        synchronized (suites) {
+            suites.remove(taskId);
+        }
+    }
+
+    public int size() {
+        synchronized (suites) {
+            return suites.size();
+        }
+    }
+}
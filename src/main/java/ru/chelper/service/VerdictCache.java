@@ -0,0 +1,206 @@
+package ru.chelper.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.chelper.dto.JudgeRunResultDto;
+import ru.chelper.entity.Task;
+import ru.chelper.entity.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш вердиктов: одинаковый (после нормализации пробелов) код на одном и том же наборе тестов
+ * не выполняется повторно. Ключ — id задачи, режим оценки, хэш упорядоченного набора тестов и хэш кода,
+ * поэтому изменение тестов делает старые записи недостижимыми даже без явной инвалидации.
+ * Размер ограничен, вытесняются давно не использованные записи (LRU).
+ * <p>
+ * Между перезапусками кэш сохраняется в JSON ({@link JudgeRunResultDto}) — без сериализации Java,
+ * чтобы подложенный файл не мог создать в приложении произвольные объекты.
+ */
+@Service
+public class VerdictCache {
+
+    private static final Logger log = LoggerFactory.getLogger(VerdictCache.class);
+
+    @Value("${code-runner.verdict-cache.max-size:10000}")
+    private int maxSize;
+
+    /** Файл для сохранения кэша между перезапусками; пусто — не сохранять. */
+    @Value("${code-runner.verdict-cache.persist-file:}")
+    private String persistFile;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * Версия {@link #normalizeCode}: входит в ключ, чтобы записи файла кэша, сохранённые при другой нормализации
+     * (раньше пустые строки выбрасывались), не совпадали с ключами программ с другими номерами строк.
+     */
+    private static final String CODE_NORMALIZATION = "lines-v2";
+
+    private static final TypeReference<LinkedHashMap<String, JudgeRunResultDto>> PERSISTED = new TypeReference<>() {
+    };
+
+    private final JudgeMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private Map<String, CodeExecutionService.RunResult> entries;
+
+    public VerdictCache(JudgeMetrics metrics, ObjectMapper objectMapper) {
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CodeExecutionService.RunResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+        load();
+        metrics.counter("judge.verdict.cache.requests", "Обращения к кэшу вердиктов", "result", "hit", hits, AtomicLong::get);
+        metrics.counter("judge.verdict.cache.requests", "Обращения к кэшу вердиктов", "result", "miss", misses, AtomicLong::get);
+        metrics.gauge("judge.verdict.cache.size", "Записей в кэше вердиктов", this, VerdictCache::size);
+    }
+
+    public CodeExecutionService.RunResult get(String key) {
+        CodeExecutionService.RunResult result;
+        synchronized (entries) {
+            result = entries.get(key);
+        }
+        (result != null ? hits : misses).incrementAndGet();
+        return result;
+    }
+
+    public void put(String key, CodeExecutionService.RunResult result) {
+        synchronized (entries) {
+            entries.put(key, result);
+        }
+    }
+
+    /** Удаляет вердикты задачи — вызывается при изменении её тестов. */
+    public void invalidateTask(Long taskId) {
+        String prefix = taskId + ":";
+        synchronized (entries) {
+            entries.keySet().removeIf(k -> k.startsWith(prefix));
+        }
+    }
+
+    /** @param suiteHash хэш набора тестов ({@link TestSuite#getHash()}) */
+    public static String key(Long taskId, Task.EvaluationMode evaluationMode, String suiteHash, String code) {
+        MessageDigest source = sha256();
+        update(source, CODE_NORMALIZATION);
+        update(source, normalizeCode(code));
+        return taskId + ":" + evaluationMode + ":" + suiteHash + ":" + HexFormat.of().formatHex(source.digest());
+    }
+
+    /** SHA-256 упорядоченного набора тестов; считается один раз при подготовке {@link TestSuite}. */
+    static String suiteHash(List<TestCase> cases) {
+        MessageDigest suite = sha256();
+        for (TestCase tc : cases) {
+            // Данные в файлах хранилища представлены контрольной суммой — файлы не читаются
+            update(suite, tc.getInputPath() != null ? "sha256:" + tc.getInputChecksum() : tc.getInput());
+            update(suite, tc.getExpectedOutputPath() != null ? "sha256:" + tc.getExpectedOutputChecksum() : tc.getExpectedOutput());
+        }
+        return HexFormat.of().formatHex(suite.digest());
+    }
+
+    /**
+     * Убирает незначащие различия: переводы строк, отступы, хвостовые пробелы и пустые строки в конце.
+     * Хвостовые пробелы строк с кавычками и строк-продолжений «|» сохраняются — они могут быть частью литерала.
+     * Пустые строки внутри программы остаются пустыми, а не выбрасываются: номера строк видны программе
+     * ({@code ИнформацияОбОшибке().НомерСтроки}) и попадают в тексты ошибок.
+     */
+    static String normalizeCode(String code) {
+        StringBuilder sb = new StringBuilder(code.length());
+        for (String line : code.replace("\r\n", "\n").replace("\r", "\n").split("\n")) {
+            String s = line.stripLeading();
+            if (s.indexOf('"') < 0 && !s.startsWith("|")) {
+                s = s.stripTrailing();
+            }
+            sb.append(s).append('\n');
+        }
+        int end = sb.length();
+        while (end > 0 && sb.charAt(end - 1) == '\n' && (end == 1 || sb.charAt(end - 2) == '\n')) {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of("size", size(), "maxSize", maxSize, "hits", hits.get(), "misses", misses.get());
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void load() {
+        if (persistFile == null || persistFile.isBlank() || !Files.exists(Paths.get(persistFile))) {
+            return;
+        }
+        try {
+            Map<String, JudgeRunResultDto> saved = objectMapper.readValue(Paths.get(persistFile).toFile(), PERSISTED);
+            saved.forEach((key, dto) -> entries.put(key, CodeExecutionService.RunResult.fromDto(dto)));
+            log.info("Кэш вердиктов загружен: {} записей", entries.size());
+        } catch (IOException e) {
+            log.warn("Не удалось загрузить кэш вердиктов из {}: {}", persistFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void save() {
+        if (persistFile == null || persistFile.isBlank()) {
+            return;
+        }
+        Path path = Paths.get(persistFile);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Map<String, JudgeRunResultDto> saved = new LinkedHashMap<>();
+            synchronized (entries) {
+                entries.forEach((key, result) -> saved.put(key, result.toDto()));
+            }
+            objectMapper.writeValue(path.toFile(), saved);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить кэш вердиктов в {}: {}", persistFile, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        byte[] bytes = (s != null ? s : "").getBytes(StandardCharsets.UTF_8);
+        // Длина перед содержимым — чтобы («ab», «c») и («a», «bc») давали разные хэши
+        md.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        md.update((byte) ':');
+        md.update(bytes);
+    }
+}
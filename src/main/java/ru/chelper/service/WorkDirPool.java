@@ -0,0 +1,286 @@
+package ru.chelper.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Пул заранее созданных рабочих каталогов {@code 1c-run-*} под {@code code-runner.work-dir}
+ * (лучше всего — tmpfs). Каталог выдаётся на одну проверку и возвращается после неё: файлы верхнего
+ * уровня удаляются, а каталог, в котором код пользователя создал подкаталоги или ссылки, пересоздаётся.
+ * Так на каждую отправку не приходится создавать и рекурсивно удалять дерево каталогов.
+ * <p>
+ * Каталогом {@code work-dir} могут пользоваться несколько экземпляров (воркеры на других портах, общий tmpfs),
+ * поэтому каталоги экземпляра называются {@code 1c-run-<владелец>-*}, а сам он держит блокировку файла
+ * {@code 1c-owner-<владелец>.lock}, пока жив. Блокировку снимает ОС при любом завершении процесса. При старте
+ * удаляются только каталоги владельцев, чей файл уже не заблокирован или пропал, — оставшиеся после аварий.
+ */
+@Service
+public class WorkDirPool {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkDirPool.class);
+    static final String DIR_PREFIX = "1c-run-";
+    private static final String OWNER_PREFIX = "1c-owner-";
+    private static final String OWNER_SUFFIX = ".lock";
+
+    @Value("${code-runner.work-dir:}")
+    private String workDirPath;
+
+    /** Сколько каталогов держать готовыми; 0 — создавать временный каталог на каждую проверку. */
+    @Value("${code-runner.work-dir-pool.size:8}")
+    private int size;
+
+    private final ConcurrentLinkedQueue<Path> idle = new ConcurrentLinkedQueue<>();
+    private Path base;
+    private String dirPrefix;
+    private Path ownerFile;
+    private FileChannel ownerChannel;
+
+    @PostConstruct
+    void init() throws IOException {
+        base = workDirPath != null && !workDirPath.isBlank()
+                ? Paths.get(workDirPath)
+                : Paths.get(System.getProperty("java.io.tmpdir"));
+        Files.createDirectories(base);
+        claimOwner();
+        removeStale();
+        for (int i = 0; i < size; i++) {
+            idle.add(Files.createTempDirectory(base, dirPrefix));
+        }
+    }
+
+    /**
+     * Создаёт и блокирует файл владельца. Если другой экземпляр в это время счёл файл брошенным и удалил его,
+     * блокировка досталась удалённому файлу — берём новое имя.
+     */
+    private void claimOwner() throws IOException {
+        while (true) {
+            String owner = HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextInt());
+            Path file = ownerFile(owner);
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            }
+            channel.lock();
+            if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+                ownerFile = file;
+                ownerChannel = channel;
+                dirPrefix = DIR_PREFIX + owner + "-";
+                return;
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Выдаёт пустой рабочий каталог. Если все каталоги пула заняты, создаётся временный,
+     * который удаляется при возврате.
+     */
+    public Lease lease() throws IOException {
+        Path dir = idle.poll();
+        if (dir != null && Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return new Lease(dir, true);
+        }
+        return new Lease(Files.createTempDirectory(base, dirPrefix), dir != null);
+    }
+
+    /**
+     * Каталог экземпляра вне пула (например, каталог управления тёплого хоста {@link OscriptHostPool}).
+     * Удаляет его вызывающий; оставшийся после аварии удалит при старте следующий экземпляр.
+     */
+    public Path createDir() throws IOException {
+        return Files.createTempDirectory(base, dirPrefix);
+    }
+
+    private void release(Lease lease) {
+        Path dir = lease.path;
+        try {
+            if (lease.pooled && scrub(dir)) {
+                idle.add(dir);
+                return;
+            }
+            deleteRecursively(dir);
+            if (lease.pooled) {
+                // Каталог был загрязнён — вместо него в пул встаёт новый
+                idle.add(Files.createTempDirectory(base, dirPrefix));
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось вернуть рабочий каталог {} в пул: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Удаляет файлы верхнего уровня. Возвращает {@code false}, если в каталоге есть что-то кроме
+     * обычных файлов (подкаталоги, ссылки) — такой каталог дешевле пересоздать.
+     */
+    private static boolean scrub(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                if (!Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    return false;
+                }
+                files.add(entry);
+            }
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    /**
+     * Удаляет каталоги завершившихся экземпляров: владелец не держит блокировку своего файла или файла нет.
+     * Каталоги без владельца в имени (от версий без файлов владельцев) удаляются, если созданы до запуска
+     * этого процесса.
+     */
+    private void removeStale() {
+        FileTime startedAt = FileTime.fromMillis(ManagementFactory.getRuntimeMXBean().getStartTime());
+        Map<String, FileLock> dead = new HashMap<>();
+        int removed = 0;
+        try {
+            try (DirectoryStream<Path> owners = Files.newDirectoryStream(base, OWNER_PREFIX + "*" + OWNER_SUFFIX)) {
+                for (Path file : owners) {
+                    if (file.equals(ownerFile)) {
+                        continue;
+                    }
+                    FileLock lock = tryLockAbandoned(file);
+                    if (lock != null) {
+                        String name = file.getFileName().toString();
+                        dead.put(name.substring(OWNER_PREFIX.length(), name.length() - OWNER_SUFFIX.length()), lock);
+                    }
+                }
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(base, DIR_PREFIX + "*")) {
+                for (Path entry : entries) {
+                    if (!Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)
+                            || entry.getFileName().toString().startsWith(dirPrefix)) {
+                        continue;
+                    }
+                    String owner = ownerOf(entry);
+                    boolean stale = owner == null
+                            ? Files.getLastModifiedTime(entry, LinkOption.NOFOLLOW_LINKS).compareTo(startedAt) < 0
+                            : dead.containsKey(owner) || !Files.exists(ownerFile(owner), LinkOption.NOFOLLOW_LINKS);
+                    if (stale) {
+                        deleteRecursively(entry);
+                        removed++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось очистить старые рабочие каталоги в {}: {}", base, e.getMessage());
+        } finally {
+            // Файл удаляется под блокировкой: экземпляр, открывший его раньше, после блокировки увидит, что файла нет
+            dead.forEach((owner, lock) -> {
+                try (FileChannel channel = lock.channel()) {
+                    Files.deleteIfExists(ownerFile(owner));
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить файл владельца {}: {}", owner, e.getMessage());
+                }
+            });
+        }
+        if (removed > 0) {
+            log.info("Удалено старых рабочих каталогов: {}", removed);
+        }
+    }
+
+    /** Блокировка файла владельца, если владелец завершился; {@code null}, если он жив или файл уже удалён. */
+    private static FileLock tryLockAbandoned(Path file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            channel.close();
+        }
+        return lock;
+    }
+
+    private Path ownerFile(String owner) {
+        return base.resolve(OWNER_PREFIX + owner + OWNER_SUFFIX);
+    }
+
+    /** Владелец из имени {@code 1c-run-<владелец>-<случайное>}; {@code null} — имя старого формата. */
+    private static String ownerOf(Path dir) {
+        String rest = dir.getFileName().toString().substring(DIR_PREFIX.length());
+        int dash = rest.indexOf('-');
+        return dash > 0 ? rest.substring(0, dash) : null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        Path dir;
+        while ((dir = idle.poll()) != null) {
+            try {
+                deleteRecursively(dir);
+            } catch (IOException ignored) {
+            }
+        }
+        // Каталоги, ещё выданные на проверку, удалит при старте следующий экземпляр: файла владельца уже не будет
+        try (FileChannel channel = ownerChannel) {
+            Files.deleteIfExists(ownerFile);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл владельца {}: {}", ownerFile, e.getMessage());
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            try (var stream = Files.list(path)) {
+                for (Path child : stream.toList()) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /** Рабочий каталог, выданный на одну проверку; {@link #close()} возвращает его в пул. */
+    public final class Lease implements AutoCloseable {
+        private final Path path;
+        private final boolean pooled;
+
+        private Lease(Path path, boolean pooled) {
+            this.path = path;
+            this.pooled = pooled;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
@@ -68,7 +68,8 @@ const apiClient = {
   attempts: {
     my: () => api('/attempts/my'),
     myForTask: (taskId) => api('/attempts/my/task/' + taskId),
-    get: (id) => api('/attempts/' + id)
+    get: (id) => api('/attempts/' + id),
+    status: (id) => api('/attempts/' + id + '/status')
   },
   profile: {
     me: () => api('/profile/me'),
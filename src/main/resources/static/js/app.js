@@ -331,7 +331,9 @@ async function renderTask(taskId) {
             ${attempts.map(a => `
               <tr>
                 <td>${new Date(a.createdAt).toLocaleString('ru')}</td>
-                <td><span class="badge ${a.passed ? 'badge-success' : 'badge-fail'}">${a.passed ? 'Зачёт' : 'Не зачёт'}</span></td>
+                <td>${a.status && a.status !== 'DONE'
+                  ? '<span class="badge badge-muted">На проверке</span>'
+                  : `<span class="badge ${a.passed ? 'badge-success' : 'badge-fail'}">${a.passed ? 'Зачёт' : 'Не зачёт'}</span>`}</td>
                 <td>${a.passedTests}/${a.totalTests}</td>
                 <td><a href="#" data-attempt-id="${a.id}" class="view-attempt">Код</a></td>
               </tr>
@@ -412,9 +414,18 @@ async function renderTask(taskId) {
         resultEl.innerHTML = '<div class="result-box error">Введите код.</div>';
         return;
       }
-      resultEl.innerHTML = '<div class="loading">Проверка...</div>';
+      resultEl.innerHTML = '<div class="loading">Решение в очереди...</div>';
       try {
-        const result = await apiClient.tasks.submit(taskId, code);
+        let result = await apiClient.tasks.submit(taskId, code);
+        while (result.status !== 'DONE') {
+          await new Promise(resolve => setTimeout(resolve, 1000));
+          result = await apiClient.attempts.status(result.attemptId);
+          if (result.status === 'RUNNING') {
+            resultEl.innerHTML = '<div class="loading">Проверка...</div>';
+          } else if (result.queuePosition) {
+            resultEl.innerHTML = '<div class="loading">Решение в очереди, место: ' + result.queuePosition + '</div>';
+          }
+        }
         resultEl.innerHTML = `
           <div class="result-box ${result.passed ? 'success' : 'error'}">
             ${result.passed ? '✓ Все тесты пройдены.' : '✗ ' + (result.message || 'Тесты не пройдены')}
@@ -1064,6 +1075,14 @@ function renderCreateTask(topicId) {
       <textarea id="task-condition" class="code-editor"></textarea>
     </div>
 
+    <div class="form-group">
+      <label>Режим оценки</label>
+      <select id="task-evaluation-mode">
+        <option value="FULL">Все тесты</option>
+        <option value="FAIL_FAST">До первого непройденного</option>
+      </select>
+    </div>
+
     <h2 style="margin-top:1.5rem;">Тесты</h2>
 
 <p class="meta">Загрузите файл с тестами</p>
@@ -1098,6 +1117,7 @@ function renderCreateTask(topicId) {
   async function saveTask(topicId) {
     const title = document.getElementById('task-title').value.trim();
     const condition = document.getElementById('task-condition').value.trim();
+    const evaluationMode = document.getElementById('task-evaluation-mode').value;
 
     const errorEl = document.getElementById('tests-error');
     errorEl.textContent = '';
@@ -1116,6 +1136,7 @@ function renderCreateTask(topicId) {
       const task = await apiClient.admin.createTask(topicId, {
         title,
         condition,
+        evaluationMode,
         sortOrder: 0
       });
 
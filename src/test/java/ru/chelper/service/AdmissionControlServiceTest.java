@@ -0,0 +1,90 @@
+package ru.chelper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AdmissionControlServiceTest {
+
+    private JudgeService judgeService;
+    private LocalProcessCodeRunner localRunner;
+    private AdmissionControlService admission;
+
+    @BeforeEach
+    void setUp() {
+        judgeService = mock(JudgeService.class);
+        localRunner = mock(LocalProcessCodeRunner.class);
+        when(localRunner.getProcessLimit()).thenReturn(4);
+        admission = new AdmissionControlService(localRunner, judgeService);
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "latencyTargetSeconds", 60);
+        ReflectionTestUtils.setField(admission, "fleetWorkers", 8);
+    }
+
+    @Test
+    void acceptsEverythingWhileP95IsUnknown() {
+        when(judgeService.recentRunP95Millis(anyInt(), anyInt())).thenReturn(-1L);
+        assertEquals(0, admission.estimateMillis(1_000_000));
+        assertDoesNotThrow(() -> admission.check(1_000_000));
+    }
+
+    @Test
+    void dividesQueueBetweenWorkersOfAllNodes() {
+        when(judgeService.recentRunP95Millis(anyInt(), anyInt())).thenReturn(2000L);
+        // 80 заданий на 8 воркеров — 10 проверок впереди и своя
+        assertEquals(22_000, admission.estimateMillis(80));
+        assertDoesNotThrow(() -> admission.check(80));
+    }
+
+    @Test
+    void rejectsWhenEstimateExceedsTarget() {
+        when(judgeService.recentRunP95Millis(anyInt(), anyInt())).thenReturn(2000L);
+        SubmissionRejectedException e = assertThrows(SubmissionRejectedException.class, () -> admission.check(400));
+        assertEquals(SubmissionRejectedException.Reason.OVERLOADED, e.getReason());
+        // Оценка 102 с при цели 60 с
+        assertEquals(42, e.getRetryAfterSeconds());
+    }
+
+    @Test
+    void readsP95FromDatabaseOncePerRefreshInterval() {
+        when(judgeService.recentRunP95Millis(anyInt(), anyInt())).thenReturn(100L);
+        admission.check(1);
+        admission.check(2);
+        admission.getState(3);
+        verify(judgeService, times(1)).recentRunP95Millis(anyInt(), anyInt());
+    }
+
+    @Test
+    void failsOpenWhenDatabaseIsUnavailable() {
+        when(judgeService.recentRunP95Millis(anyInt(), anyInt())).thenThrow(new IllegalStateException("нет соединения"));
+        assertDoesNotThrow(() -> admission.check(1_000_000));
+    }
+
+    @Test
+    void rejectsWhenAllProcessesAreBusyAndQueueDoesNotDrain() {
+        when(judgeService.recentRunP95Millis(anyInt(), anyInt())).thenReturn(-1L);
+        when(localRunner.getBusyProcesses()).thenReturn(4);
+        assertDoesNotThrow(() -> admission.check(7));
+        SubmissionRejectedException e = assertThrows(SubmissionRejectedException.class, () -> admission.check(8));
+        assertEquals(SubmissionRejectedException.Reason.OVERLOADED, e.getReason());
+        assertFalse((Boolean) admission.getState(8).get("accepting"));
+    }
+
+    @Test
+    void idleWarmHostsDoNotCountAsBusy() {
+        when(judgeService.recentRunP95Millis(anyInt(), anyInt())).thenReturn(-1L);
+        when(localRunner.getActiveProcesses()).thenReturn(4);
+        when(localRunner.getBusyProcesses()).thenReturn(1);
+        assertDoesNotThrow(() -> admission.check(50));
+    }
+}
@@ -0,0 +1,197 @@
+package ru.chelper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.chelper.service.BslInterpreter.Unsupported;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Интерпретатор либо выдаёт тот же вывод, что oscript, либо отказывается ({@link Unsupported}),
+ * и программа уходит в oscript. Ожидаемые выводы сверены с OneScript.
+ */
+class BslInterpreterTest {
+
+    private static final long MAX_OUTPUT = 1 << 16;
+
+    private BslInterpreter interpreter;
+
+    @BeforeEach
+    void setUp() {
+        interpreter = new BslInterpreter();
+        ReflectionTestUtils.setField(interpreter, "enabled", true);
+        ReflectionTestUtils.setField(interpreter, "maxSteps", 100_000L);
+        ReflectionTestUtils.setField(interpreter, "maxMemoryBytes", 1L << 20);
+        ReflectionTestUtils.setField(interpreter, "maxCallDepth", 50);
+        ReflectionTestUtils.setField(interpreter, "timeoutSeconds", 10);
+        ReflectionTestUtils.setField(interpreter, "oscriptStepsPerSecond", 1_000_000L);
+    }
+
+    @Test
+    void arithmetic() {
+        assertEquals("5\n-3\n3.5\n0.25\n1\n12\n", run("""
+                Сообщить(2 + 3);
+                Сообщить(2 - 5);
+                Сообщить(7 / 2);
+                Сообщить(1 / 4);
+                Сообщить(7 % 3);
+                Сообщить((1 + 2) * 4);
+                """));
+    }
+
+    @Test
+    void strings() {
+        assertEquals("Привет, мир\n11\nмир\nПРИВЕТ\nа-б\n2\n", run("""
+                С = "Привет" + ", " + "мир";
+                Сообщить(С);
+                Сообщить(СтрДлина(С));
+                Сообщить(Прав(С, 3));
+                Сообщить(ВРег(Лев(С, 6)));
+                Сообщить(СтрЗаменить(СокрЛП("  а б  "), " ", "-"));
+                Сообщить(СтрНайти(С, "ри"));
+                """));
+    }
+
+    @Test
+    void loopsAndConditions() {
+        assertEquals("1\n3\n5\nсумма 15\n", run("""
+                Сумма = 0;
+                Для К = 1 По 5 Цикл
+                    Сумма = Сумма + К;
+                    Если К % 2 = 0 Тогда
+                        Продолжить;
+                    КонецЕсли;
+                    Сообщить(К);
+                КонецЦикла;
+                Пока Истина Цикл
+                    Прервать;
+                КонецЦикла;
+                Сообщить("сумма " + Сумма);
+                """));
+    }
+
+    @Test
+    void proceduresAndFunctions() {
+        assertEquals("120\n6\n", run("""
+                Функция Факториал(Н)
+                    Если Н <= 1 Тогда
+                        Возврат 1;
+                    КонецЕсли;
+                    Возврат Н * Факториал(Н - 1);
+                КонецФункции
+
+                Процедура Удвоить(Ч)
+                    Ч = Ч * 2;
+                КонецПроцедуры
+
+                Сообщить(Факториал(5));
+                Х = 3;
+                Удвоить(Х);
+                Сообщить(Х);
+                """));
+    }
+
+    @Test
+    void arrays() {
+        assertEquals("3\n2\nа,б,в\n", run("""
+                М = Новый Массив;
+                Для Каждого Ч Из СтрРазделить("а б в", " ") Цикл
+                    М.Добавить(Ч);
+                КонецЦикла;
+                Сообщить(М.Количество());
+                Сообщить(М.ВГраница());
+                Сообщить(СтрСоединить(М, ","));
+                """));
+    }
+
+    @Test
+    void readsInputUntilUndefined() {
+        assertEquals("5\n\n", run("""
+                А = Число(Консоль.ПрочитатьСтроку());
+                Б = Число(Консоль.ПрочитатьСтроку());
+                Сообщить(А + Б);
+                Сообщить(Консоль.ПрочитатьСтроку());
+                """, "2\n3\n"));
+    }
+
+    @Test
+    void syntaxErrorAndUnknownTypesGoToOscript() {
+        assertReason(Unsupported.Reason.UNSUPPORTED, "Сообщить(1");
+        assertReason(Unsupported.Reason.UNSUPPORTED, "С = Новый Структура;");
+    }
+
+    @Test
+    void valuesWithoutExactOscriptFormGoToOscript() {
+        // 2.50 OneScript может вывести с нулём, 1/3 — с округлением decimal
+        assertReason(Unsupported.Reason.UNSUPPORTED, "Сообщить(2.50);");
+        assertReason(Unsupported.Reason.UNSUPPORTED, "Сообщить(1 / 3);");
+        assertReason(Unsupported.Reason.UNSUPPORTED, "Сообщить(1 = \"1\");");
+    }
+
+    @Test
+    void runtimeErrorsGoToOscript() {
+        assertReason(Unsupported.Reason.RUNTIME_ERROR, "Сообщить(1 / 0);");
+        assertReason(Unsupported.Reason.RUNTIME_ERROR, "М = Новый Массив; Сообщить(М[0]);");
+    }
+
+    @Test
+    void limitsGoToOscript() {
+        assertReason(Unsupported.Reason.STEP_LIMIT, "Пока Истина Цикл КонецЦикла;");
+        assertReason(Unsupported.Reason.CALL_DEPTH, """
+                Процедура Ф()
+                    Ф();
+                КонецПроцедуры
+                Ф();
+                """);
+        assertReason(Unsupported.Reason.OUTPUT_LIMIT, """
+                Для К = 1 По 100000 Цикл
+                    Сообщить("строка вывода");
+                КонецЦикла;
+                """);
+    }
+
+    /**
+     * Программа укладывается в max-steps, но oscript не успел бы выполнить её за таймаут теста:
+     * интерпретатор её не засчитывает, и вердикт (таймаут) выносит oscript.
+     */
+    @Test
+    void programSlowerThanTimeoutInOscriptGoesToOscript() {
+        ReflectionTestUtils.setField(interpreter, "timeoutSeconds", 1);
+        ReflectionTestUtils.setField(interpreter, "oscriptStepsPerSecond", 20_000L);
+        assertEquals(10_000, interpreter.stepBudget());
+
+        assertReason(Unsupported.Reason.STEP_LIMIT, """
+                Сумма = 0;
+                Для К = 1 По 20000 Цикл
+                    Сумма = Сумма + К;
+                КонецЦикла;
+                Сообщить(Сумма);
+                """);
+        assertEquals("500500\n", run("""
+                Сумма = 0;
+                Для К = 1 По 1000 Цикл
+                    Сумма = Сумма + К;
+                КонецЦикла;
+                Сообщить(Сумма);
+                """));
+
+        // Без оценки скорости oscript остаётся только max-steps
+        ReflectionTestUtils.setField(interpreter, "oscriptStepsPerSecond", 0L);
+        assertEquals(100_000, interpreter.stepBudget());
+    }
+
+    private String run(String code) {
+        return run(code, "");
+    }
+
+    private String run(String code, String input) {
+        return interpreter.execute(interpreter.compile(code), input, MAX_OUTPUT);
+    }
+
+    private void assertReason(Unsupported.Reason reason, String code) {
+        Unsupported e = assertThrows(Unsupported.class, () -> run(code));
+        assertEquals(reason, e.getReason(), e.getMessage());
+    }
+}
@@ -0,0 +1,96 @@
+package ru.chelper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.chelper.entity.Task;
+import ru.chelper.entity.TestCase;
+import ru.chelper.service.CodeExecutionService.ResourceUsage;
+import ru.chelper.service.CodeExecutionService.RunResult;
+import ru.chelper.service.CodeExecutionService.TestRunResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Наблюдения для оценки стоимости задачи строятся по времени отдельных тестов, а не всей проверки. */
+class CodeExecutionServiceTest {
+
+    private static final long TASK_ID = 5L;
+
+    private CodeRunner runner;
+    private TaskCostEstimator costEstimator;
+    private CodeExecutionService service;
+
+    @BeforeEach
+    void setUp() {
+        runner = mock(CodeRunner.class);
+        when(runner.name()).thenReturn("local");
+        costEstimator = mock(TaskCostEstimator.class);
+        service = new CodeExecutionService(List.of(runner), mock(VerdictCache.class), costEstimator);
+        ReflectionTestUtils.setField(service, "useRealRunner", true);
+        ReflectionTestUtils.setField(service, "runnerName", "local");
+        ReflectionTestUtils.setField(service, "timeoutSeconds", 10);
+        service.init();
+    }
+
+    @Test
+    void recordsSumOfTestTimesWithoutDuplicatesAndSkipped() {
+        TestSuite suite = suite("1", "2", "1", "3");
+        List<TestRunResult> tests = new ArrayList<>();
+        tests.add(passed(300));
+        tests.add(passed(500));
+        // Повтор первого теста: не выполнялся, замеров нет
+        tests.add(new TestRunResult(true, "OK"));
+        tests.add(TestRunResult.skipped());
+        when(runner.run(any(), any(), any())).thenReturn(new RunResult(false, 3, 4, "", tests));
+
+        service.runTests(TASK_ID, suite, "Сообщить(1);", Task.EvaluationMode.FULL);
+
+        verify(costEstimator).record(TASK_ID, 2, 800);
+    }
+
+    @Test
+    void timeoutCostsTimeoutPerDistinctTest() {
+        TestSuite suite = suite("1", "2", "1");
+        when(runner.run(any(), any(), any()))
+                .thenReturn(new RunResult(false, 0, 3, "таймаут", new ArrayList<>(), true, false));
+
+        service.runTests(TASK_ID, suite, "Пока Истина Цикл КонецЦикла;", Task.EvaluationMode.FULL);
+
+        verify(costEstimator).record(TASK_ID, 2, 20_000);
+    }
+
+    @Test
+    void interpretedRunsAreNotRecorded() {
+        TestSuite suite = suite("1", "2");
+        List<TestRunResult> tests = List.of(passed(0), passed(1));
+        when(runner.run(any(), any(), any())).thenReturn(new RunResult(true, 2, 2, "", tests, false, true));
+
+        service.runTests(TASK_ID, suite, "Сообщить(1);", Task.EvaluationMode.FULL);
+
+        verify(costEstimator, never()).record(anyLong(), anyInt(), anyLong());
+    }
+
+    private static TestRunResult passed(long wallMillis) {
+        return new TestRunResult(true, "OK", null, false, new ResourceUsage(wallMillis, null, null));
+    }
+
+    private static TestSuite suite(String... inputs) {
+        List<TestCase> cases = new ArrayList<>();
+        for (String input : inputs) {
+            TestCase tc = new TestCase();
+            tc.setInput(input);
+            tc.setExpectedOutput(input);
+            cases.add(tc);
+        }
+        return TestSuite.compile(TASK_ID, 0, cases);
+    }
+}
@@ -0,0 +1,147 @@
+package ru.chelper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyStoreTest {
+
+    private static final String REQUEST = "POST /api/tasks/1/attempts";
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private IdempotencyStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new IdempotencyStore(new JudgeMetrics(new SimpleMeterRegistry()), new ObjectMapper());
+        ReflectionTestUtils.setField(store, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(store, "maxSize", 100);
+        store.init();
+    }
+
+    @Test
+    void repeatedRequestGetsSavedResponse() {
+        ResponseEntity<?> first = store.execute(1L, "k", REQUEST, Map.of("code", "А = 1;"), created());
+        ResponseEntity<?> second = store.execute(1L, "k", REQUEST, Map.of("code", "А = 1;"), created());
+
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void keysAreSeparatePerUser() {
+        store.execute(1L, "k", REQUEST, Map.of(), created());
+        store.execute(2L, "k", REQUEST, Map.of(), created());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void sameKeyWithOtherBodyIsRejected() {
+        store.execute(1L, "k", REQUEST, Map.of("code", "А = 1;"), created());
+        ResponseEntity<?> other = store.execute(1L, "k", REQUEST, Map.of("code", "А = 2;"), created());
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, other.getStatusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void failedResponseIsExecutedAgain() {
+        Supplier<ResponseEntity<?>> busy = () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        };
+        store.execute(1L, "k", REQUEST, Map.of(), busy);
+        ResponseEntity<?> retry = store.execute(1L, "k", REQUEST, Map.of(), created());
+
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void exceptionIsNotSaved() {
+        assertThrows(IllegalStateException.class, () -> store.execute(1L, "k", REQUEST, Map.of(), () -> {
+            throw new IllegalStateException("сбой");
+        }));
+        assertEquals(HttpStatus.CREATED, store.execute(1L, "k", REQUEST, Map.of(), created()).getStatusCode());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void concurrentRepeatWaitsForOriginalResponse() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<?>> original = CompletableFuture.supplyAsync(
+                () -> store.execute(1L, "k", REQUEST, Map.of(), blocking(started, release)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ResponseEntity<?>> repeat = CompletableFuture.supplyAsync(
+                () -> store.execute(1L, "k", REQUEST, Map.of(), created()));
+
+        release.countDown();
+
+        assertSame(original.get(5, TimeUnit.SECONDS), repeat.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void repeatThatStopsWaitingGetsConflict() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<?>> original = CompletableFuture.supplyAsync(
+                () -> store.execute(1L, "k", REQUEST, Map.of(), blocking(started, release)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Прерванное ожидание ведёт себя как истёкшее: повтор не дожидается исходного запроса
+        Thread.currentThread().interrupt();
+        ResponseEntity<?> repeat;
+        try {
+            repeat = store.execute(1L, "k", REQUEST, Map.of(), created());
+        } finally {
+            Thread.interrupted();
+        }
+        release.countDown();
+
+        assertEquals(HttpStatus.CONFLICT, repeat.getStatusCode());
+        assertEquals(HttpStatus.CREATED, original.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void requestWithoutKeyIsAlwaysExecuted() {
+        store.execute(1L, null, REQUEST, Map.of(), created());
+        store.execute(1L, " ", REQUEST, Map.of(), created());
+        assertEquals(2, calls.get());
+        assertEquals(0, store.size());
+    }
+
+    private Supplier<ResponseEntity<?>> created() {
+        return () -> ResponseEntity.status(HttpStatus.CREATED).body(Map.of("attemptId", calls.incrementAndGet()));
+    }
+
+    private Supplier<ResponseEntity<?>> blocking(CountDownLatch started, CountDownLatch release) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return created().get();
+        };
+    }
+}
@@ -0,0 +1,165 @@
+package ru.chelper.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import ru.chelper.entity.Attempt;
+import ru.chelper.entity.Task;
+import ru.chelper.entity.TestCase;
+import ru.chelper.entity.Topic;
+import ru.chelper.entity.User;
+import ru.chelper.repository.AttemptRepository;
+import ru.chelper.repository.TaskRepository;
+import ru.chelper.repository.TopicRepository;
+import ru.chelper.repository.UserRepository;
+import ru.chelper.service.CodeExecutionService.RunResult;
+import ru.chelper.service.CodeExecutionService.TestRunResult;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка в три фазы на настоящей базе: пока выполняется код пользователя, число активных соединений
+ * пула Hikari остаётся нулевым. Нужна база из {@code spring.datasource} (как для запуска приложения),
+ * поэтому тест помечен {@code postgres} и запускается только с профилем: {@code mvn -Ppostgres-tests test}.
+ */
+@Tag("postgres")
+@SpringBootTest(properties = {
+        "code-runner.runner=slow",
+        "code-runner.judge.workers=0",
+        "code-runner.judge.lease-seconds=3600",
+        // Тесту не нужны файлы хранилища, а в общей базе могут быть ссылки на файлы другого узла
+        "code-runner.test-data.verify-on-startup=false"
+})
+class JudgeQueueServicePostgresTest {
+
+    /** Сколько раз замерять активные соединения пула во время выполнения тестов. */
+    private static final int SAMPLES = 10;
+    private static final long SAMPLE_MILLIS = 50;
+
+    @Autowired
+    private JudgeQueueService judgeQueueService;
+
+    @Autowired
+    private SlowCodeRunner slowCodeRunner;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TopicRepository topicRepository;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private AttemptRepository attemptRepository;
+
+    private User user;
+    private Topic topic;
+    private Task task;
+    private Attempt attempt;
+
+    @AfterEach
+    void cleanUp() {
+        if (attempt != null && attempt.getId() != null) attemptRepository.deleteById(attempt.getId());
+        if (task != null && task.getId() != null) taskRepository.deleteById(task.getId());
+        if (topic != null && topic.getId() != null) topicRepository.deleteById(topic.getId());
+        if (user != null && user.getId() != null) userRepository.deleteById(user.getId());
+    }
+
+    @Test
+    void processHoldsNoConnectionWhileTestsRun() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        user = new User();
+        user.setUsername("judge-test-" + suffix);
+        user.setEmail("judge-test-" + suffix + "@test.invalid");
+        user.setPasswordHash("-");
+        user = userRepository.save(user);
+
+        topic = new Topic();
+        topic.setTitle("Тема проверки " + suffix);
+        topic = topicRepository.save(topic);
+
+        task = new Task();
+        task.setTitle("Задача проверки " + suffix);
+        task.setCondition("Вывести 42");
+        task.setTopic(topic);
+        TestCase test = new TestCase();
+        test.setInput("");
+        test.setExpectedOutput("42");
+        test.setTask(task);
+        task.getTestCases().add(test);
+        task = taskRepository.save(task);
+
+        attempt = new Attempt();
+        attempt.setUser(user);
+        attempt.setTask(task);
+        // Уникальный код — чтобы вердикт не пришёл из кэша мимо исполнителя
+        attempt.setCode("Сообщить(42); // " + suffix);
+        attempt.setPassed(false);
+        attempt.setPassedTests(0);
+        attempt.setTotalTests(1);
+        attempt = attemptRepository.save(attempt);
+
+        judgeQueueService.process(attempt.getId());
+
+        List<Integer> samples = slowCodeRunner.activeConnections;
+        assertFalse(samples.isEmpty(), "Исполнитель тестов не вызывался");
+        assertTrue(samples.stream().allMatch(active -> active == 0),
+                "Во время выполнения тестов заняты соединения: " + samples);
+        Attempt done = attemptRepository.findById(attempt.getId()).orElseThrow();
+        assertEquals(Attempt.Status.DONE, done.getStatus());
+        assertTrue(done.getPassed());
+    }
+
+    @TestConfiguration
+    static class SlowRunnerConfig {
+        @Bean
+        SlowCodeRunner slowCodeRunner(DataSource dataSource) {
+            return new SlowCodeRunner(((HikariDataSource) dataSource).getHikariPoolMXBean());
+        }
+    }
+
+    /** Исполнитель, который выполняет тесты долго и замеряет в это время активные соединения пула Hikari. */
+    static class SlowCodeRunner implements CodeRunner {
+        private final HikariPoolMXBean pool;
+        final List<Integer> activeConnections = new CopyOnWriteArrayList<>();
+
+        SlowCodeRunner(HikariPoolMXBean pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public String name() {
+            return "slow";
+        }
+
+        @Override
+        public RunResult run(TestSuite suite, String code, Task.EvaluationMode evaluationMode) {
+            for (int i = 0; i < SAMPLES; i++) {
+                activeConnections.add(pool.getActiveConnections());
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            List<TestRunResult> results = suite.getTests().stream().map(test -> new TestRunResult(true, "OK")).toList();
+            return new RunResult(true, results.size(), results.size(), "Все тесты пройдены.", results);
+        }
+    }
+}
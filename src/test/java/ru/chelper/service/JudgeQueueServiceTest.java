@@ -0,0 +1,218 @@
+package ru.chelper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.chelper.entity.Attempt;
+import ru.chelper.entity.Task;
+import ru.chelper.entity.TestCase;
+import ru.chelper.entity.User;
+import ru.chelper.repository.AttemptRepository;
+import ru.chelper.repository.SubmissionJobRepository;
+import ru.chelper.service.CodeExecutionService.RunResult;
+import ru.chelper.service.CodeExecutionService.TestRunResult;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверка в три фазы: пока выполняется код пользователя, воркер не держит соединение с БД.
+ * {@link JudgeService} и сама очередь обёрнуты в транзакционные прокси Spring, как в контексте приложения;
+ * менеджер транзакций берёт соединения из источника, который считает открытые соединения.
+ * Тот же сценарий на настоящей базе — {@link JudgeQueueServicePostgresTest}.
+ */
+class JudgeQueueServiceTest {
+
+    private static final long ATTEMPT_ID = 7L;
+    private static final long TASK_ID = 3L;
+
+    private final CountingDataSource dataSource = new CountingDataSource();
+    private final PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+    private final JudgeMetrics metrics = new JudgeMetrics(new SimpleMeterRegistry());
+    private AttemptRepository attemptRepository;
+    private SubmissionJobRepository jobRepository;
+    private CodeExecutionService codeExecutionService;
+    private JudgeService judgeService;
+    private JudgeQueueService queue;
+    private Attempt attempt;
+
+    @BeforeEach
+    void setUp() {
+        attemptRepository = mock(AttemptRepository.class);
+        jobRepository = mock(SubmissionJobRepository.class);
+        codeExecutionService = mock(CodeExecutionService.class);
+        TestSuiteCache testSuiteCache = new TestSuiteCache(metrics);
+        ReflectionTestUtils.setField(testSuiteCache, "maxSize", 10);
+        testSuiteCache.init();
+        judgeService = transactional(new JudgeService(attemptRepository, jobRepository, metrics, testSuiteCache));
+        queue = queue(mock(AdmissionControlService.class));
+        attempt = attempt();
+        when(attemptRepository.findById(ATTEMPT_ID)).thenReturn(Optional.of(attempt));
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.shutdown();
+    }
+
+    @Test
+    void processHoldsNoConnectionWhileTestsRun() {
+        List<Integer> activeWhileRunning = new ArrayList<>();
+        List<Integer> activeInDatabasePhases = new ArrayList<>();
+        when(attemptRepository.save(attempt)).thenAnswer(inv -> {
+            activeInDatabasePhases.add(dataSource.active.get());
+            return attempt;
+        });
+        when(codeExecutionService.runTests(eq(TASK_ID), any(), anyString(), any())).thenAnswer(inv -> {
+            activeWhileRunning.add(dataSource.active.get());
+            return new RunResult(true, 1, 1, "Все тесты пройдены.", List.of(new TestRunResult(true, "OK")));
+        });
+
+        queue.process(ATTEMPT_ID);
+
+        // Фазы start и complete — по соединению на каждую; тесты выполняются без соединения
+        assertEquals(List.of(1, 1), activeInDatabasePhases);
+        assertEquals(List.of(0), activeWhileRunning);
+        assertEquals(2, dataSource.opened.get());
+        assertEquals(0, dataSource.active.get());
+        assertEquals(Attempt.Status.DONE, attempt.getStatus());
+        assertEquals(true, attempt.getPassed());
+    }
+
+    @Test
+    void alreadySolvedTaskIsNotRun() {
+        when(attemptRepository.existsByTaskIdAndUserIdAndPassedTrue(TASK_ID, 1L)).thenReturn(true);
+
+        queue.process(ATTEMPT_ID);
+
+        verify(codeExecutionService, never()).runTests(anyLong(), any(), anyString(), any());
+        assertEquals(Attempt.Status.DONE, attempt.getStatus());
+        assertEquals(false, attempt.getPassed());
+    }
+
+    /** Фазы, обращающиеся к БД, — отдельные транзакции, а сама проверка транзакцию не открывает. */
+    @Test
+    void onlyDatabasePhasesAreTransactional() throws Exception {
+        assertFalse(JudgeQueueService.class.getDeclaredMethod("process", Long.class).isAnnotationPresent(Transactional.class));
+        assertFalse(JudgeQueueService.class.isAnnotationPresent(Transactional.class));
+        assertNotNull(JudgeService.class.getMethod("start", Long.class).getAnnotation(Transactional.class));
+        assertNotNull(JudgeService.class.getMethod("complete", Long.class, RunResult.class).getAnnotation(Transactional.class));
+    }
+
+    /**
+     * Статистика для контроля нагрузки читается при отправке, внутри её транзакции. Если запрос упал,
+     * отправка всё равно принимается: транзакция отправки не помечена для отката и фиксируется.
+     */
+    @Test
+    void submissionGoesThroughWhenLatencyQueryFails() {
+        when(attemptRepository.recentRuns(anyInt())).thenThrow(new DataAccessResourceFailureException("нет соединения"));
+        AdmissionControlService admission = new AdmissionControlService(mock(LocalProcessCodeRunner.class), judgeService);
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "latencyTargetSeconds", 60);
+        ReflectionTestUtils.setField(admission, "fleetWorkers", 4);
+        JudgeQueueService submitQueue = queue(admission);
+        try {
+            assertDoesNotThrow(() -> new TransactionTemplate(transactionManager)
+                    .executeWithoutResult(status -> submitQueue.enqueue(ATTEMPT_ID, 1L, TASK_ID, 4)));
+            verify(jobRepository).save(any());
+            assertEquals(0, dataSource.active.get());
+        } finally {
+            submitQueue.shutdown();
+        }
+    }
+
+    private JudgeQueueService queue(AdmissionControlService admission) {
+        return transactional(new JudgeQueueService(judgeService, codeExecutionService, jobRepository, admission,
+                mock(TaskCostEstimator.class), metrics, 0, 100, 2, 5, 120, 1000, 3, "test-node"));
+    }
+
+    private static Attempt attempt() {
+        User user = new User();
+        user.setId(1L);
+        Task task = new Task();
+        task.setId(TASK_ID);
+        TestCase test = new TestCase();
+        test.setInput("");
+        test.setExpectedOutput("42");
+        task.getTestCases().add(test);
+        Attempt attempt = new Attempt();
+        attempt.setId(ATTEMPT_ID);
+        attempt.setUser(user);
+        attempt.setTask(task);
+        attempt.setCode("Сообщить(42);");
+        return attempt;
+    }
+
+    /**
+     * Прокси с транзакциями по аннотациям {@link Transactional}, как у бина в контексте Spring. Учитываются
+     * и непубличные методы: иначе аннотация на {@code JudgeQueueService.process} осталась бы незамеченной.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T transactional(T target) {
+        ProxyFactory factory = new ProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource(false)));
+        return (T) factory.getProxy();
+    }
+
+    /** Источник соединений-заглушек для менеджера транзакций: считает открытые и выданные соединения. */
+    private static final class CountingDataSource extends AbstractDataSource {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger opened = new AtomicInteger();
+
+        @Override
+        public Connection getConnection() {
+            active.incrementAndGet();
+            opened.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "close" -> {
+                            if (closed.compareAndSet(false, true)) active.decrementAndGet();
+                            yield null;
+                        }
+                        case "isClosed" -> closed.get();
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "Connection@" + System.identityHashCode(proxy);
+                        default -> method.getReturnType() == boolean.class ? Boolean.FALSE
+                                : method.getReturnType() == int.class ? 0 : null;
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) {
+            return getConnection();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package ru.chelper.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Потоковое сравнение должно совпадать с {@link LocalProcessCodeRunner#normalizeOutput}: процесс останавливается
+ * только при выводе, который после нормализации точно не равен ожидаемому.
+ */
+class StreamingOutputComparatorTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "42|42",
+            "42|'  42  '",
+            "а\\nб|'а\\r\\nб\\r\\n'",
+            "а\\nб|'а\\rб'",
+            "1\\n\\n2|'\\n1\\r\\r\\n2\\n\\n'",
+            "привет|'\\tпривет\\t'",
+    })
+    void acceptsOutputEqualAfterNormalization(String expected, String actual) {
+        String normalized = LocalProcessCodeRunner.normalizeOutput(unescape(expected));
+        assertEquals(normalized, LocalProcessCodeRunner.normalizeOutput(unescape(actual)));
+        StreamingOutputComparator comparator = new StreamingOutputComparator(normalized);
+        assertTrue(feed(comparator, unescape(actual), 1));
+        assertFalse(comparator.isAborted());
+    }
+
+    @Test
+    void stopsAtFirstDifferenceAndReportsPosition() {
+        StreamingOutputComparator comparator = new StreamingOutputComparator("ab\ncd");
+        assertFalse(feed(comparator, "ab\ncx", 1));
+        assertFalse(comparator.isTooLong());
+        assertEquals(4, comparator.mismatchOffset());
+        assertEquals("строка 2, символ 2", comparator.describeMismatch());
+    }
+
+    @Test
+    void reportsOutputLongerThanExpected() {
+        StreamingOutputComparator comparator = new StreamingOutputComparator("42");
+        assertFalse(feed(comparator, "42\n43", 1));
+        assertTrue(comparator.isTooLong());
+    }
+
+    @Test
+    void trailingWhitespaceIsNotTooLong() {
+        StreamingOutputComparator comparator = new StreamingOutputComparator("42");
+        assertTrue(feed(comparator, "42\r\n\r\n   \n", 1));
+    }
+
+    @Test
+    void mismatchInsideMultibyteCharacterCountsFromItsStart() {
+        StreamingOutputComparator comparator = new StreamingOutputComparator("аб");
+        // «в» и «б» в UTF-8 различаются только вторым байтом
+        assertFalse(feed(comparator, "ав", 1));
+        assertEquals(1, comparator.mismatchOffset());
+    }
+
+    /** Ожидаемый вывод из файла нормализуется при чтении: сравнение то же, что с нормализованной строкой. */
+    @Test
+    void rawExpectedStreamIsNormalizedWhileReading() {
+        StreamingOutputComparator comparator = fromStream("\r\n  а\r\nб\rв  \r\n");
+        assertTrue(feed(comparator, "а\nб\nв", 1));
+        assertTrue(comparator.isComplete());
+
+        StreamingOutputComparator prefix = fromStream("аб\r\nвг\n");
+        assertTrue(feed(prefix, "аб\nв", 1));
+        assertFalse(prefix.isComplete());
+        assertEquals(4, prefix.mismatchOffset());
+
+        StreamingOutputComparator differs = fromStream("ab\r\ncd");
+        assertFalse(feed(differs, "ab\ncx", 1));
+        assertEquals("строка 2, символ 2", differs.describeMismatch());
+    }
+
+    /** Длинный ожидаемый вывод: сверенная часть отбрасывается, место расхождения считается без неё. */
+    @Test
+    void longExpectedStreamReportsMismatchPosition() {
+        String expected = "строка\r\n".repeat(10_000) + "конец";
+        StreamingOutputComparator comparator = fromStream(expected);
+        assertFalse(feed(comparator, "строка\n".repeat(10_000) + "конЕц", 4096));
+        assertEquals(10_000 * 7 + 3, comparator.mismatchOffset());
+        assertEquals("строка 10001, символ 4", comparator.describeMismatch());
+    }
+
+    /** Случайные выводы из пробелов, переводов строк и многобайтовых символов, разбитые на случайные куски. */
+    @Test
+    void agreesWithNormalizeOutputOnRandomOutputs() {
+        Random random = new Random(20240917);
+        String alphabet = "ab я\n\r\t";
+        for (int i = 0; i < 20000; i++) {
+            String expected = LocalProcessCodeRunner.normalizeOutput(randomString(random, alphabet, 6));
+            String actual = random.nextInt(4) == 0 ? mangleWhitespace(random, expected) : randomString(random, alphabet, 8);
+            String normalizedActual = LocalProcessCodeRunner.normalizeOutput(actual);
+            // Ожидаемый вывод из файла — как записан, с теми же искажениями пробельных символов
+            boolean fromFile = random.nextBoolean();
+            StreamingOutputComparator comparator = fromFile
+                    ? fromStream(mangleWhitespace(random, expected))
+                    : new StreamingOutputComparator(expected);
+            boolean accepted = feed(comparator, actual, 1 + random.nextInt(4));
+            String context = "expected=" + escape(expected) + " actual=" + escape(actual) + " fromFile=" + fromFile;
+            if (expected.equals(normalizedActual)) {
+                assertTrue(accepted, context);
+            }
+            if (accepted && actual.equals(normalizedActual)) {
+                assertEquals(expected.equals(normalizedActual), comparator.isComplete(), context);
+            } else if (!accepted) {
+                assertNotEquals(expected, normalizedActual, context);
+                if (!comparator.isTooLong()) {
+                    assertEquals(commonPrefix(expected, normalizedActual), comparator.mismatchOffset(), context);
+                }
+            }
+        }
+    }
+
+    private static StreamingOutputComparator fromStream(String rawExpected) {
+        return new StreamingOutputComparator(new ByteArrayInputStream(rawExpected.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static boolean feed(StreamingOutputComparator comparator, String output, int chunkSize) {
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        for (int off = 0; off < bytes.length; off += chunkSize) {
+            if (!comparator.accept(bytes, off, Math.min(chunkSize, bytes.length - off))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String randomString(Random random, String alphabet, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    /** Тот же вывод с другими переводами строк и пробелами по краям. */
+    private static String mangleWhitespace(Random random, String s) {
+        String body = switch (random.nextInt(3)) {
+            case 0 -> s.replace("\n", "\r\n");
+            case 1 -> s.replace("\n", "\r");
+            default -> s;
+        };
+        return " \n".repeat(random.nextInt(2)) + body + "\r\n\t ".repeat(random.nextInt(2));
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    private static String unescape(String s) {
+        return s.replace("\\r", "\r").replace("\\n", "\n").replace("\\t", "\t");
+    }
+
+    private static String escape(String s) {
+        return "'" + s.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t") + "'";
+    }
+}
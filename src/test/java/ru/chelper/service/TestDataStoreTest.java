@@ -0,0 +1,99 @@
+package ru.chelper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.chelper.entity.TestCase;
+import ru.chelper.repository.TestCaseRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Файлы без ссылок из тестов удаляются только после срока; ожидаемый вывод из файла сравнивается без чтения целиком. */
+class TestDataStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private TestCaseRepository repository;
+    private TestDataStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = mock(TestCaseRepository.class);
+        store = new TestDataStore(repository);
+        ReflectionTestUtils.setField(store, "dirPath", dir.toString());
+        ReflectionTestUtils.setField(store, "inlineMaxBytes", 16);
+        ReflectionTestUtils.setField(store, "verifyOnStartup", true);
+        ReflectionTestUtils.setField(store, "orphanGraceHours", 24);
+        store.init();
+    }
+
+    @Test
+    void sweepRemovesOnlyOldFilesWithoutReferences() throws Exception {
+        TestCase kept = stored("вход, на который ссылается тест", "вывод, на который ссылается тест");
+        TestCase orphan = stored("вход после повторной загрузки", "вывод после повторной загрузки");
+        TestCase recent = stored("вход ещё не зафиксированной загрузки", "вывод ещё не зафиксированной загрузки");
+        age(kept.getInputPath(), kept.getExpectedOutputPath(), orphan.getInputPath(), orphan.getExpectedOutputPath());
+        when(repository.findStoredDataPaths()).thenReturn(List.of(kept.getInputPath(), kept.getExpectedOutputPath()));
+
+        assertEquals(2, store.sweepOrphans());
+
+        assertTrue(Files.exists(dir.resolve(kept.getInputPath())));
+        assertTrue(Files.exists(dir.resolve(kept.getExpectedOutputPath())));
+        assertFalse(Files.exists(dir.resolve(orphan.getInputPath())));
+        assertFalse(Files.exists(dir.resolve(orphan.getExpectedOutputPath())));
+        assertTrue(Files.exists(dir.resolve(recent.getInputPath())));
+        assertTrue(Files.exists(dir.resolve(recent.getExpectedOutputPath())));
+    }
+
+    /** Повторная загрузка тех же данных продлевает срок старого файла: до фиксации на него ещё нет ссылок. */
+    @Test
+    void reusedFileIsNotSwept() throws Exception {
+        TestCase first = stored("одни и те же данные входа", "одни и те же данные вывода");
+        age(first.getInputPath(), first.getExpectedOutputPath());
+        stored("одни и те же данные входа", "одни и те же данные вывода");
+        when(repository.findStoredDataPaths()).thenReturn(List.of());
+
+        assertEquals(0, store.sweepOrphans());
+        assertTrue(Files.exists(dir.resolve(first.getInputPath())));
+    }
+
+    @Test
+    void expectedOutputFromFileIsComparedAsNormalized() throws Exception {
+        TestCase tc = stored("вход", "строка один\r\nстрока два\r\n");
+        TestSuite.Test test = TestSuite.compile(1L, 0, List.of(tc)).getTests().get(0);
+        byte[] actual = "строка один\nстрока два".getBytes(StandardCharsets.UTF_8);
+
+        try (StreamingOutputComparator comparator = store.expectedComparator(test)) {
+            assertTrue(comparator.accept(actual, 0, actual.length));
+            assertTrue(comparator.isComplete());
+        }
+        assertEquals("строка", store.expectedOutputStart(test, 12));
+    }
+
+    private TestCase stored(String input, String expectedOutput) {
+        TestCase tc = new TestCase();
+        store.put(tc, input, expectedOutput);
+        return tc;
+    }
+
+    private void age(String... paths) throws Exception {
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofHours(48)));
+        for (String path : paths) {
+            Files.setLastModifiedTime(dir.resolve(path), old);
+        }
+    }
+}
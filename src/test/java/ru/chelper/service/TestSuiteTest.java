@@ -0,0 +1,98 @@
+package ru.chelper.service;
+
+import org.junit.jupiter.api.Test;
+import ru.chelper.entity.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestSuiteTest {
+
+    @Test
+    void marksRepeatedTestsAsDuplicatesOfTheFirst() {
+        TestSuite suite = TestSuite.compile(1L, 0, List.of(
+                inline("1", "2"), inline("5", "10"), inline("1", "2"), inline("1", "2")));
+
+        assertTrue(suite.hasDuplicates());
+        assertEquals(4, suite.size());
+        assertEquals(List.of(0, 1), suite.getDistinctTests().stream().map(TestSuite.Test::index).toList());
+        assertEquals(List.of(0, 1, 0, 0), suite.getTests().stream().map(TestSuite.Test::sameAs).toList());
+        assertFalse(suite.getTests().get(1).isDuplicate());
+        assertTrue(suite.getTests().get(3).isDuplicate());
+    }
+
+    @Test
+    void comparesExpectedOutputAfterNormalization() {
+        TestSuite suite = TestSuite.compile(1L, 0, List.of(inline("", "а\nб"), inline("", "  а\r\nб\r\n")));
+        assertTrue(suite.getTests().get(1).isDuplicate());
+    }
+
+    @Test
+    void differentInputOrIsolationIsNotADuplicate() {
+        TestCase isolated = inline("1", "2");
+        isolated.setIsolated(true);
+        TestSuite suite = TestSuite.compile(1L, 0, List.of(inline("1", "2"), inline("1 ", "2"), isolated));
+
+        assertFalse(suite.hasDuplicates());
+        assertEquals(suite.getTests(), suite.getDistinctTests());
+    }
+
+    @Test
+    void storedFilesAreComparedByChecksum() {
+        TestSuite suite = TestSuite.compile(1L, 0, List.of(
+                stored("aa", "bb"), stored("aa", "bb"), stored("aa", "cc")));
+
+        assertEquals(List.of(0, 0, 2), suite.getTests().stream().map(TestSuite.Test::sameAs).toList());
+    }
+
+    @Test
+    void keepsDataOnceWithoutTheEntity() {
+        TestCase tc = inline("вход", " ответ \r\n");
+        tc.setId(42L);
+        TestSuite.Test test = TestSuite.compile(1L, 0, List.of(tc, stored("aa", "bb"))).getTests().get(0);
+
+        assertEquals(42L, test.testCaseId());
+        assertArrayEquals("вход".getBytes(StandardCharsets.UTF_8), test.input());
+        assertEquals("ответ", test.expectedText());
+        assertFalse(test.inFiles());
+
+        TestSuite.Test inFiles = TestSuite.compile(1L, 0, List.of(stored("aa", "bb"))).getTests().get(0);
+        assertTrue(inFiles.inFiles());
+        assertEquals(0, inFiles.input().length);
+        assertNull(inFiles.expected());
+        assertEquals("aa/aa.txt", inFiles.inputPath());
+        assertEquals("bb", inFiles.expectedChecksum());
+    }
+
+    @Test
+    void hashDependsOnOrderAndContent() {
+        String hash = TestSuite.compile(1L, 0, List.of(inline("1", "2"), inline("3", "4"))).getHash();
+        assertEquals(hash, TestSuite.compile(2L, 5, List.of(inline("1", "2"), inline("3", "4"))).getHash());
+        assertNotEquals(hash, TestSuite.compile(1L, 0, List.of(inline("3", "4"), inline("1", "2"))).getHash());
+        assertNotEquals(hash, TestSuite.compile(1L, 0, List.of(inline("1", "2"), inline("3", "5"))).getHash());
+    }
+
+    private static TestCase inline(String input, String expected) {
+        TestCase tc = new TestCase();
+        tc.setInput(input);
+        tc.setExpectedOutput(expected);
+        return tc;
+    }
+
+    private static TestCase stored(String inputChecksum, String expectedChecksum) {
+        TestCase tc = new TestCase();
+        tc.setInputPath(inputChecksum + "/" + inputChecksum + ".txt");
+        tc.setInputChecksum(inputChecksum);
+        tc.setExpectedOutput("");
+        tc.setExpectedOutputPath(expectedChecksum + "/" + expectedChecksum + ".txt");
+        tc.setExpectedOutputChecksum(expectedChecksum);
+        return tc;
+    }
+}
@@ -0,0 +1,104 @@
+package ru.chelper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.chelper.entity.Task;
+import ru.chelper.service.CodeExecutionService.ResourceUsage;
+import ru.chelper.service.CodeExecutionService.RunResult;
+import ru.chelper.service.CodeExecutionService.TestRunResult;
+
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerdictCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void normalizeCodeDropsIndentTrailingSpacesAndLineEndings() {
+        String code = "Процедура Тест()\r\n    Сообщить(1);   \r\n  \r\n\tВозврат;\nКонецПроцедуры\n\n \n";
+        assertEquals("Процедура Тест()\nСообщить(1);\n\nВозврат;\nКонецПроцедуры\n", VerdictCache.normalizeCode(code));
+    }
+
+    /** Пустая строка сдвигает номера следующих строк — а их видят программа и тексты ошибок. */
+    @Test
+    void normalizeCodeKeepsLineNumbers() {
+        String code = "Попытка\n    ВызватьИсключение \"ошибка\";\nИсключение\n    Сообщить(ИнформацияОбОшибке().НомерСтроки);\nКонецПопытки;";
+        String shifted = "\n" + code;
+        assertNotEquals(VerdictCache.normalizeCode(code), VerdictCache.normalizeCode(shifted));
+        assertNotEquals(VerdictCache.key(1L, Task.EvaluationMode.FULL, "suite", code),
+                VerdictCache.key(1L, Task.EvaluationMode.FULL, "suite", shifted));
+        assertEquals(VerdictCache.normalizeCode(code), VerdictCache.normalizeCode(code.replace("\n", "\r\n\t") + "\r\n\r\n"));
+    }
+
+    @Test
+    void normalizeCodeKeepsTrailingSpacesOfStringLiterals() {
+        assertEquals("Сообщить(\"а \n|б  \n", VerdictCache.normalizeCode("  Сообщить(\"а \n  |б  \n"));
+        assertNotEquals(VerdictCache.normalizeCode("Сообщить(\"а \");"), VerdictCache.normalizeCode("Сообщить(\"а\");"));
+    }
+
+    @Test
+    void keyIgnoresFormattingButNotTaskModeOrSuite() {
+        String key = VerdictCache.key(1L, Task.EvaluationMode.FULL, "suite", "Сообщить(1);");
+        assertEquals(key, VerdictCache.key(1L, Task.EvaluationMode.FULL, "suite", "  Сообщить(1);\r\n\r\n"));
+        assertNotEquals(key, VerdictCache.key(2L, Task.EvaluationMode.FULL, "suite", "Сообщить(1);"));
+        assertNotEquals(key, VerdictCache.key(1L, Task.EvaluationMode.FAIL_FAST, "suite", "Сообщить(1);"));
+        assertNotEquals(key, VerdictCache.key(1L, Task.EvaluationMode.FULL, "other", "Сообщить(1);"));
+        assertNotEquals(key, VerdictCache.key(1L, Task.EvaluationMode.FULL, "suite", "Сообщить(2);"));
+    }
+
+    @Test
+    void persistsEntriesAsJson() throws Exception {
+        Path file = dir.resolve("verdicts.json");
+        VerdictCache cache = newCache(file);
+        List<TestRunResult> tests = List.of(
+                new TestRunResult(true, "OK", null, false, new ResourceUsage(12L, 8L, 2048L)),
+                new TestRunResult(false, "Неверный ответ", 3));
+        cache.put("1:FULL:s:c", new RunResult(false, 1, 2, "Пройдено 1 из 2", tests));
+        cache.save();
+        assertTrue(Files.readString(file).contains("\"Неверный ответ\""));
+
+        RunResult loaded = newCache(file).get("1:FULL:s:c");
+        assertNotNull(loaded);
+        assertEquals(1, loaded.getPassedCount());
+        assertEquals(2, loaded.getTotalCount());
+        assertEquals("Пройдено 1 из 2", loaded.getMessage());
+        assertEquals(2, loaded.getTestResults().size());
+        assertEquals(new ResourceUsage(12L, 8L, 2048L), loaded.getTestResults().get(0).getUsage());
+        assertEquals(3, loaded.getTestResults().get(1).getMismatchOffset());
+    }
+
+    @Test
+    void ignoresJavaSerializedFile() throws Exception {
+        Path file = dir.resolve("verdicts.bin");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject(new HashMap<>(Map.of("k", new ArrayList<>())));
+        }
+        VerdictCache cache = newCache(file);
+        assertNull(cache.get("k"));
+        assertEquals(0, cache.getStats().get("size"));
+    }
+
+    private static VerdictCache newCache(Path file) {
+        VerdictCache cache = new VerdictCache(new JudgeMetrics(new SimpleMeterRegistry()), new ObjectMapper());
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "persistFile", file.toString());
+        cache.init();
+        return cache;
+    }
+}
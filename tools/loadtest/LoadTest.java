@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный прогон отправки решений: много синтетических пользователей одновременно отправляют код
+ * в {@code POST /api/tasks/{taskId}/submit} и опрашивают {@code /api/attempts/{id}/status} до результата.
+ * В конце печатает пропускную способность и перцентили задержек.
+ * <p>
+ * Запуск без сборки (Java 17+; кодировку нужно указать, иначе исходник с кириллицей прочитается в кодировке локали):
+ * <pre>
+ * java -Dfile.encoding=UTF-8 tools/loadtest/LoadTest.java --task-id 7 --users 50 --duration 60
+ * </pre>
+ * Пользователи {@code load-0001}… с паролем {@code loadtest} создаёт {@code tools/loadtest/users.sql}.
+ * К каждой отправке дописывается уникальный комментарий, чтобы кэш вердиктов не отвечал вместо проверки
+ * (выключается {@code --same-code}).
+ */
+public class LoadTest {
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern ATTEMPT_ID = Pattern.compile("\"attemptId\"\\s*:\\s*(\\d+)");
+    private static final Pattern STATUS = Pattern.compile("\"status\"\\s*:\\s*\"(\\w+)\"");
+    private static final Pattern PASSED = Pattern.compile("\"passed\"\\s*:\\s*(true|false)");
+    private static final Pattern ERROR = Pattern.compile("\"error\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private final String baseUrl;
+    private final long taskId;
+    private final int users;
+    private final String userPrefix;
+    private final String password;
+    private final long durationMillis;
+    private final int maxSubmissions;
+    private final String code;
+    private final boolean sameCode;
+    private final long pollMillis;
+    private final long attemptTimeoutMillis;
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    private final AtomicInteger submissions = new AtomicInteger();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger passed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger unfinished = new AtomicInteger();
+    private final AtomicLong retryAfterWaitMillis = new AtomicLong();
+    private final List<Long> submitLatencies = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> endToEndLatencies = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, AtomicInteger> errorMessages = new ConcurrentHashMap<>();
+
+    private volatile long deadline;
+
+    LoadTest(Map<String, String> options) throws IOException {
+        baseUrl = options.getOrDefault("base-url", "http://localhost:8080").replaceAll("/+$", "");
+        taskId = Long.parseLong(required(options, "task-id"));
+        users = Integer.parseInt(options.getOrDefault("users", "10"));
+        userPrefix = options.getOrDefault("user-prefix", "load-");
+        password = options.getOrDefault("password", "loadtest");
+        durationMillis = Long.parseLong(options.getOrDefault("duration", "60")) * 1000;
+        maxSubmissions = Integer.parseInt(options.getOrDefault("submissions", "0"));
+        code = options.containsKey("code-file")
+                ? Files.readString(Path.of(options.get("code-file")), StandardCharsets.UTF_8)
+                : options.getOrDefault("code", "Сообщить(Консоль.ПрочитатьСтроку());");
+        sameCode = options.containsKey("same-code");
+        pollMillis = Long.parseLong(options.getOrDefault("poll-ms", "200"));
+        attemptTimeoutMillis = Long.parseLong(options.getOrDefault("attempt-timeout", "300")) * 1000;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                usage("Неизвестный аргумент: " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (key.equals("help")) usage(null);
+            if (key.equals("same-code")) {
+                options.put(key, "true");
+            } else if (i + 1 < args.length) {
+                options.put(key, args[++i]);
+            } else {
+                usage("Нет значения для --" + key);
+            }
+        }
+        new LoadTest(options).run();
+    }
+
+    private static void usage(String error) {
+        if (error != null) System.err.println(error);
+        System.err.println("""
+                Использование: java -Dfile.encoding=UTF-8 tools/loadtest/LoadTest.java --task-id N [параметры]
+                  --base-url URL         адрес приложения (http://localhost:8080)
+                  --users N              число одновременных пользователей (10)
+                  --user-prefix P        имена пользователей P0001, P0002… (load-)
+                  --password P           пароль пользователей (loadtest)
+                  --duration S           длительность прогона, секунд (60)
+                  --submissions N        остановиться после N отправок (0 — без ограничения)
+                  --code TEXT            код решения (Сообщить(Консоль.ПрочитатьСтроку());)
+                  --code-file PATH       код решения из файла
+                  --same-code            отправлять код без уникального комментария (проверка кэша вердиктов)
+                  --poll-ms N            интервал опроса статуса, мс (200)
+                  --attempt-timeout S    сколько ждать результата одной попытки, секунд (300)""");
+        System.exit(error == null ? 0 : 2);
+    }
+
+    private static String required(Map<String, String> options, String key) {
+        String value = options.get(key);
+        if (value == null) usage("Не задан --" + key);
+        return value;
+    }
+
+    private void run() throws InterruptedException {
+        Map<String, String> tokens = login();
+        System.out.printf("Вошли %d пользователей, задача %d, %s%n", tokens.size(), taskId,
+                maxSubmissions > 0 ? "до " + maxSubmissions + " отправок" : durationMillis / 1000 + " с");
+
+        long started = System.nanoTime();
+        deadline = System.currentTimeMillis() + durationMillis;
+        ExecutorService pool = Executors.newFixedThreadPool(tokens.size());
+        tokens.forEach((user, token) -> pool.submit(() -> userLoop(user, token)));
+        pool.shutdown();
+        while (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+            System.out.printf("… отправлено %d, проверено %d%n", accepted.get(), passed.get() + failed.get());
+        }
+        report((System.nanoTime() - started) / 1_000_000);
+    }
+
+    /** Входит под каждым пользователем; возвращает токены по именам. */
+    private Map<String, String> login() throws InterruptedException {
+        Map<String, String> tokens = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(users, 16));
+        for (int i = 1; i <= users; i++) {
+            String user = userPrefix + String.format("%04d", i);
+            pool.submit(() -> {
+                try {
+                    HttpResponse<String> response = post("/api/auth/login", null,
+                            "{\"username\":" + json(user) + ",\"password\":" + json(password) + "}");
+                    String token = find(TOKEN, response.body());
+                    if (response.statusCode() == 200 && token != null) {
+                        tokens.put(user, token);
+                    } else {
+                        System.err.printf("Не удалось войти как %s: HTTP %d %s%n", user, response.statusCode(), response.body());
+                    }
+                } catch (IOException e) {
+                    System.err.printf("Не удалось войти как %s: %s%n", user, e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        if (tokens.isEmpty()) {
+            System.err.println("Ни один пользователь не вошёл — загрузите tools/loadtest/users.sql");
+            System.exit(1);
+        }
+        return tokens;
+    }
+
+    /** Отправляет решения одно за другим, пока не истечёт время или лимит отправок. */
+    private void userLoop(String user, String token) {
+        int sequence = 0;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                if (maxSubmissions > 0 && submissions.incrementAndGet() > maxSubmissions) return;
+                String body = sameCode ? code : code + "\n// " + user + " " + (++sequence);
+                long sent = System.nanoTime();
+                HttpResponse<String> response = post("/api/tasks/" + taskId + "/submit", token,
+                        "{\"taskId\":" + taskId + ",\"code\":" + json(body) + "}");
+                long submitMillis = (System.nanoTime() - sent) / 1_000_000;
+
+                String attemptId = find(ATTEMPT_ID, response.body());
+                if (response.statusCode() == 202 && attemptId != null) {
+                    accepted.incrementAndGet();
+                    submitLatencies.add(submitMillis);
+                    awaitResult(Long.parseLong(attemptId), token, sent);
+                } else if (response.statusCode() == 429 || response.statusCode() == 503) {
+                    rejected.incrementAndGet();
+                    long wait = response.headers().firstValue("Retry-After").map(Long::parseLong).orElse(1L) * 1000;
+                    wait = Math.max(0, Math.min(wait, deadline - System.currentTimeMillis()));
+                    retryAfterWaitMillis.addAndGet(wait);
+                    Thread.sleep(wait);
+                } else {
+                    errors.incrementAndGet();
+                    String message = find(ERROR, response.body());
+                    errorMessages.computeIfAbsent("HTTP " + response.statusCode() + (message != null ? ": " + message : ""),
+                            k -> new AtomicInteger()).incrementAndGet();
+                    Thread.sleep(1000);
+                }
+            }
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            errorMessages.computeIfAbsent(e.getClass().getSimpleName() + ": " + e.getMessage(), k -> new AtomicInteger())
+                    .incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitResult(long attemptId, String token, long sent) throws IOException, InterruptedException {
+        long giveUp = System.currentTimeMillis() + attemptTimeoutMillis;
+        while (System.currentTimeMillis() < giveUp) {
+            Thread.sleep(pollMillis);
+            HttpResponse<String> response = get("/api/attempts/" + attemptId + "/status", token);
+            if (response.statusCode() != 200) continue;
+            if ("DONE".equals(find(STATUS, response.body()))) {
+                endToEndLatencies.add((System.nanoTime() - sent) / 1_000_000);
+                if ("true".equals(find(PASSED, response.body()))) {
+                    passed.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+                return;
+            }
+        }
+        unfinished.incrementAndGet();
+    }
+
+    private void report(long elapsedMillis) {
+        double seconds = elapsedMillis / 1000.0;
+        int completed = passed.get() + failed.get();
+        System.out.println();
+        System.out.printf("Длительность:        %.1f с%n", seconds);
+        System.out.printf("Принято отправок:    %d (%.2f/с)%n", accepted.get(), accepted.get() / seconds);
+        System.out.printf("Проверено:           %d (%.2f/с): прошли %d, не прошли %d%n",
+                completed, completed / seconds, passed.get(), failed.get());
+        System.out.printf("Не дождались:        %d%n", unfinished.get());
+        System.out.printf("Отклонено (429/503): %d, ожидание по Retry-After %.1f с%n",
+                rejected.get(), retryAfterWaitMillis.get() / 1000.0);
+        System.out.printf("Ошибки:              %d%n", errors.get());
+        errorMessages.forEach((message, count) -> System.out.printf("  %5d × %s%n", count.get(), message));
+        System.out.println();
+        printLatencies("Ответ на отправку", submitLatencies);
+        printLatencies("До результата", endToEndLatencies);
+    }
+
+    private static void printLatencies(String title, List<Long> latencies) {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        if (sorted.isEmpty()) {
+            System.out.printf("%-18s нет данных%n", title + ":");
+            return;
+        }
+        Collections.sort(sorted);
+        System.out.printf("%-18s p50 %d мс, p90 %d мс, p95 %d мс, p99 %d мс, max %d мс (n=%d)%n", title + ":",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 95), percentile(sorted, 99),
+                sorted.get(sorted.size() - 1), sorted.size());
+    }
+
+    /** Перцентиль методом ближайшего ранга по отсортированному списку. */
+    private static long percentile(List<Long> sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private HttpResponse<String> post(String path, String token, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        if (token != null) request.header("Authorization", "Bearer " + token);
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private HttpResponse<String> get(String path, String token) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private static String find(Pattern pattern, String text) {
+        Matcher m = pattern.matcher(text);
+        return m.find() ? m.group(1) : null;
+    }
+
+    private static String json(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,17 @@
+-- Синтетические пользователи для нагрузочного прогона: load-0001 … load-0200, пароль «loadtest», email подтверждён.
+-- Повторный запуск ничего не меняет. Удаление: DELETE FROM users WHERE username LIKE 'load-%'
+-- (сначала попытки и роли этих пользователей).
+
+INSERT INTO users (username, email, password_hash, email_verified, created_at, updated_at)
+SELECT format('load-%s', lpad(n::text, 4, '0')),
+       format('load-%s@loadtest.invalid', lpad(n::text, 4, '0')),
+       '$2a$10$B1gkWFEN/DNJ0cutdvxDPOs7oKFrjNJOZCAik3boG3URmhbHkfH2W',
+       true, now(), now()
+FROM generate_series(1, 200) AS n
+ON CONFLICT DO NOTHING;
+
+INSERT INTO user_roles (user_id, role)
+SELECT u.id, 'USER'
+FROM users u
+WHERE u.username LIKE 'load-%'
+  AND NOT EXISTS (SELECT 1 FROM user_roles r WHERE r.user_id = u.id);